@@ -0,0 +1,80 @@
+package com.danielgomez.archiver;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ZipArchiver#compress(CompressionOptions)} on synthetic trees. Run with
+ * {@code gradle :benchmarks:jmh}; the GC profiler adds the allocation rate to the results.
+ * <p>
+ * The archiver runs its parallel work on a pool of the given number of threads, see
+ * {@link IOOptionsBuilder#parallelism(int)}.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Fork( 1 )
+@Warmup( iterations = 2, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+public class CompressBenchmark {
+
+    @Param( { "TINY", "HUGE", "MIXED" } )
+    private SyntheticTree.Shape shape;
+
+    @Param( { "COMPRESSIBLE", "INCOMPRESSIBLE" } )
+    private SyntheticTree.Content content;
+
+    @Param( { "8192", "1048576" } )
+    private int bufferSize;
+
+    @Param( { "-1", "16777216" } )
+    private long maxFileSize;
+
+    @Param( { "1", "4" } )
+    private int threads;
+
+    private SyntheticTree tree;
+
+    private CompressionOptions options;
+
+    private final ZipArchiver archiver = new ZipArchiver();
+
+    @Setup( Level.Trial )
+    public void setUp() throws IOException {
+        tree = SyntheticTree.generate( shape, content );
+        Path output = tree.getRoot().resolveSibling( "output" );
+        options = CompressionOptionsBuilder.create()
+                .input( tree.getRoot() )
+                .output( output )
+                .bufferSize( bufferSize )
+                .maxFileSize( maxFileSize )
+                .parallelism( threads )
+                .build();
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+        tree.delete();
+    }
+
+    @Benchmark
+    public void compress( Megabytes megabytes ) throws IOException {
+        archiver.compress( options );
+        megabytes.add( tree.getSize() );
+    }
+}
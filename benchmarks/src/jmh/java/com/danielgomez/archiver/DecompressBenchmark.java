@@ -0,0 +1,92 @@
+package com.danielgomez.archiver;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ZipArchiver#decompress(DecompressionOptions)} in parallel mode on the zip files of synthetic trees.
+ * The zip files are written once per trial with the same buffer and max file size, and the output is deleted before
+ * each invocation. MB/s counts the restored bytes.
+ * <p>
+ * The archiver runs its parallel work on a pool of the given number of threads, see
+ * {@link IOOptionsBuilder#parallelism(int)}.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Fork( 1 )
+@Warmup( iterations = 2, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+public class DecompressBenchmark {
+
+    @Param( { "TINY", "HUGE", "MIXED" } )
+    private SyntheticTree.Shape shape;
+
+    @Param( { "COMPRESSIBLE", "INCOMPRESSIBLE" } )
+    private SyntheticTree.Content content;
+
+    @Param( { "8192", "1048576" } )
+    private int bufferSize;
+
+    @Param( { "-1", "16777216" } )
+    private long maxFileSize;
+
+    @Param( { "1", "4" } )
+    private int threads;
+
+    private SyntheticTree tree;
+
+    private DecompressionOptions options;
+
+    private final ZipArchiver archiver = new ZipArchiver();
+
+    @Setup( Level.Trial )
+    public void setUp() throws IOException {
+        tree = SyntheticTree.generate( shape, content );
+        Path compressed = tree.getRoot().resolveSibling( "compressed" );
+        archiver.compress( CompressionOptionsBuilder.create()
+                .input( tree.getRoot() )
+                .output( compressed )
+                .bufferSize( bufferSize )
+                .maxFileSize( maxFileSize )
+                .build() );
+        options = DecompressionOptionsBuilder.create()
+                .input( compressed )
+                .output( tree.getRoot().resolveSibling( "output" ) )
+                .bufferSize( bufferSize )
+                .parallel( true )
+                .parallelism( threads )
+                .build();
+    }
+
+    @Setup( Level.Invocation )
+    public void clearOutput() throws IOException {
+        SyntheticTree.delete( options.getOutput() );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+        tree.delete();
+    }
+
+    @Benchmark
+    public void decompress( Megabytes megabytes ) throws IOException {
+        archiver.decompress( options );
+        megabytes.add( tree.getSize() );
+    }
+}
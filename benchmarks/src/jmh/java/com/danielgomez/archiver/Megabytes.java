@@ -0,0 +1,28 @@
+package com.danielgomez.archiver;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the uncompressed megabytes a benchmark goes through, which JMH reports as MB/s next to ops/s
+ */
+@State( Scope.Thread )
+@AuxCounters( AuxCounters.Type.OPERATIONS )
+public class Megabytes {
+
+    private static final double MB = 1024 * 1024;
+
+    public double megabytes;
+
+    @Setup( Level.Iteration )
+    public void reset() {
+        megabytes = 0;
+    }
+
+    void add( long bytes ) {
+        megabytes += bytes / MB;
+    }
+}
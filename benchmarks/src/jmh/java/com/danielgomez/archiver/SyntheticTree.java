@@ -0,0 +1,172 @@
+package com.danielgomez.archiver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+/**
+ * Generates directory trees to benchmark archivers with. Trees are generated from a fixed seed so every run compresses
+ * the same bytes.
+ */
+public final class SyntheticTree {
+
+    private static final int KB = 1024;
+
+    private static final int MB = 1024 * KB;
+
+    /**
+     * How the bytes of a tree are spread over files
+     */
+    public enum Shape {
+        /**
+         * 20000 files of 1 KB in 100 directories
+         */
+        TINY,
+        /**
+         * 3 files of 64 MB
+         */
+        HUGE,
+        /**
+         * 2000 files from 1 KB to 256 KB in 20 directories and 2 files of 32 MB
+         */
+        MIXED
+    }
+
+    /**
+     * What the files contain
+     */
+    public enum Content {
+        /**
+         * Text made of a small vocabulary, which deflates well
+         */
+        COMPRESSIBLE,
+        /**
+         * Random bytes, which do not deflate
+         */
+        INCOMPRESSIBLE
+    }
+
+    private static final String[] WORDS = { "archive", "zip", "part", "chunk", "entry", "deflate", "buffer", "file",
+            "directory", "size", "offset", "central", "header", "stream", "channel", "the", "of", "and", "to", "a" };
+
+    private final Path root;
+
+    private final Random random = new Random( 42 );
+
+    private final Content content;
+
+    private long size;
+
+    private SyntheticTree( Path root, Content content ) {
+        this.root = root;
+        this.content = content;
+    }
+
+    /**
+     * Generates a tree in a new temporary directory
+     *
+     * @return the tree, whose root is named 'input'
+     */
+    static SyntheticTree generate( Shape shape, Content content ) throws IOException {
+        SyntheticTree tree = new SyntheticTree( Files.createTempDirectory( "archiver-bench" ).resolve( "input" ),
+                content );
+        Files.createDirectories( tree.root );
+        switch ( shape ) {
+            case TINY:
+                for ( int i = 0; i < 20000; i++ )
+                    tree.write( "dir" + i % 100 + "/file" + i + ".txt", KB );
+                break;
+            case HUGE:
+                for ( int i = 0; i < 3; i++ )
+                    tree.write( "file" + i + ".bin", 64 * MB );
+                break;
+            case MIXED:
+                for ( int i = 0; i < 2000; i++ )
+                    tree.write( "dir" + i % 20 + "/file" + i + ".txt", KB + tree.random.nextInt( 255 * KB ) );
+                for ( int i = 0; i < 2; i++ )
+                    tree.write( "file" + i + ".bin", 32 * MB );
+                break;
+            default:
+                throw new IllegalArgumentException( "Unknown shape " + shape );
+        }
+        return tree;
+    }
+
+    /**
+     * @return the root directory of the tree
+     */
+    Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the total size of the files of the tree
+     */
+    long getSize() {
+        return size;
+    }
+
+    private void write( String name, int length ) throws IOException {
+        Path file = root.resolve( name );
+        Files.createDirectories( file.getParent() );
+        byte[] buffer = new byte[64 * KB];
+        try ( OutputStream out = Files.newOutputStream( file ) ) {
+            for ( int written = 0; written < length; ) {
+                int count = Math.min( buffer.length, length - written );
+                fill( buffer, count );
+                out.write( buffer, 0, count );
+                written += count;
+            }
+        }
+        size += length;
+    }
+
+    private void fill( byte[] buffer, int count ) {
+        if ( content == Content.INCOMPRESSIBLE ) {
+            random.nextBytes( buffer );
+            return;
+        }
+        for ( int i = 0; i < count; ) {
+            String word = WORDS[random.nextInt( WORDS.length )];
+            for ( int j = 0; j < word.length() && i < count; j++ )
+                buffer[i++] = ( byte ) word.charAt( j );
+            if ( i < count )
+                buffer[i++] = ( byte ) ( random.nextInt( 12 ) == 0 ? '\n' : ' ' );
+        }
+    }
+
+    /**
+     * Deletes the tree and the temporary directory it is in
+     */
+    void delete() throws IOException {
+        delete( root.getParent() );
+    }
+
+    /**
+     * Deletes a directory and everything in it
+     */
+    static void delete( Path dir ) throws IOException {
+        if ( Files.notExists( dir ) )
+            return;
+        Files.walkFileTree( dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) throws IOException {
+                Files.delete( file );
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory( Path dir, IOException e ) throws IOException {
+                if ( e != null )
+                    throw e;
+                Files.delete( dir );
+                return FileVisitResult.CONTINUE;
+            }
+        } );
+    }
+}
@@ -10,6 +10,17 @@ public class ArchiverArgs {
     @Parameter( names = { "-a", "--archiver" }, description = "The archiver to use")
     private String archiver = "zip";
 
+    @Parameter( names = { "--no-progress" }, description = "Do not print a progress bar")
+    private boolean noProgress;
+
+    @Parameter( names = { "-t", "--threads" },
+            description = "How many files are compressed or decompressed at the same time. 0 uses the common pool.")
+    private int threads;
+
+    @Parameter( names = { "--virtual-threads" },
+            description = "Run each task on its own virtual thread. Requires Java 21 or later.")
+    private boolean virtualThreads;
+
     public boolean isHelp() {
         return help;
     }
@@ -17,4 +28,16 @@ public class ArchiverArgs {
     public String getArchiver() {
         return archiver;
     }
+
+    public boolean isProgress() {
+        return !noProgress;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
 }
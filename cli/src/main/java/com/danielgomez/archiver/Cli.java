@@ -1,7 +1,12 @@
 package com.danielgomez.archiver;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
+import java.util.List;
 import java.util.ServiceLoader;
 
 import com.beust.jcommander.JCommander;
@@ -12,10 +17,16 @@ public final class Cli {
         ArchiverArgs archiverArgs = new ArchiverArgs();
         CompressionArgs compressionArgs = new CompressionArgs();
         DecompressionArgs decompressionArgs = new DecompressionArgs();
+        ExtractionArgs extractionArgs = new ExtractionArgs();
+        VerificationArgs verificationArgs = new VerificationArgs();
+        ListingArgs listingArgs = new ListingArgs();
         JCommander commander = JCommander.newBuilder()
                 .addObject( archiverArgs )
                 .addCommand( "compress", compressionArgs )
                 .addCommand( "decompress", decompressionArgs )
+                .addCommand( "extract", extractionArgs )
+                .addCommand( "verify", verificationArgs )
+                .addCommand( "list", listingArgs )
                 .build();
 
         commander.parse( args );
@@ -25,10 +36,17 @@ public final class Cli {
         }
 
         Archiver archiver = loadArchiver(archiverArgs.getArchiver());
+        ArchiveListener listener = archiverArgs.isProgress() ? new ProgressBar( System.err ) : ArchiveListener.NONE;
         if ( "compress".equals( commander.getParsedCommand() ) )
-            compress( archiver, compressionArgs );
+            compress( archiver, compressionArgs, archiverArgs, listener );
         else if ( "decompress".equals( commander.getParsedCommand() ) )
-            decompress( archiver, decompressionArgs );
+            decompress( archiver, decompressionArgs, archiverArgs, listener );
+        else if ( "extract".equals( commander.getParsedCommand() ) )
+            extract( archiver, extractionArgs, archiverArgs, listener );
+        else if ( "verify".equals( commander.getParsedCommand() ) )
+            verify( archiver, verificationArgs, archiverArgs, listener );
+        else if ( "list".equals( commander.getParsedCommand() ) )
+            list( archiver, listingArgs, archiverArgs );
     }
 
     private static Archiver loadArchiver( String archiver ) {
@@ -46,23 +64,147 @@ public final class Cli {
         throw new IllegalArgumentException( "Unable to find '" + archiver + "' archiver" );
     }
 
-    private static void compress( Archiver archiver, CompressionArgs args ) throws IOException {
+    private static void compress( Archiver archiver, CompressionArgs args, ArchiverArgs archiverArgs,
+            ArchiveListener listener ) throws IOException {
         archiver.compress( CompressionOptionsBuilder.create()
                 .input( args.getInput() )
                 .output( args.getOutput() )
                 .maxFileSize( args.getMaxFileSize() )
                 .bufferSize( args.getBufferSize() )
+                .chunkPlanner( args.getChunkPlanner() )
+                .parallelDeflate( args.isParallelDeflate() )
+                .compressionLevel( args.getCompressionLevel() )
+                .compressionPolicy( args.getCompressionPolicy() )
+                .splitOnOutputSize( args.isSplitOnOutputSize() )
+                .incremental( args.isIncremental() )
+                .memoryMapThreshold( args.getMemoryMapThreshold() )
+                .deduplicate( args.isDeduplicate() )
+                .resume( args.isResume() )
+                .solidBlockSize( args.getSolidBlockSize() )
+                .presetDictionary( args.isPresetDictionary() )
+                .parallelism( archiverArgs.getThreads() )
+                .virtualThreads( archiverArgs.isVirtualThreads() )
+                .listener( listener )
                 .build()
         );
     }
 
-    private static void decompress( Archiver archiver, DecompressionArgs args ) throws IOException {
+    private static void decompress( Archiver archiver, DecompressionArgs args, ArchiverArgs archiverArgs,
+            ArchiveListener listener ) throws IOException {
         archiver.decompress( DecompressionOptionsBuilder.create()
                 .input( args.getInput() )
                 .output( args.getOutput() )
                 .bufferSize( args.getBufferSize() )
+                .parallel( args.isParallel() )
+                .parallelism( archiverArgs.getThreads() )
+                .virtualThreads( archiverArgs.isVirtualThreads() )
+                .listener( listener )
                 .build()
         );
     }
 
+    private static void extract( Archiver archiver, ExtractionArgs args, ArchiverArgs archiverArgs,
+            ArchiveListener listener ) throws IOException {
+        archiver.extract( ExtractionOptionsBuilder.create()
+                .input( args.getInput() )
+                .output( args.getOutput() )
+                .bufferSize( args.getBufferSize() )
+                .patterns( args.getPatterns() )
+                .parallelism( archiverArgs.getThreads() )
+                .virtualThreads( archiverArgs.isVirtualThreads() )
+                .listener( listener )
+                .build()
+        );
+    }
+
+    /**
+     * Verifies compressed files, printing the problems found and the throughput. Exits with status 1 if there are
+     * problems.
+     */
+    private static void verify( Archiver archiver, VerificationArgs args, ArchiverArgs archiverArgs,
+            ArchiveListener listener ) throws IOException {
+        Throughput[] last = new Throughput[1];
+        List<String> problems = archiver.verify( IOOptionsBuilder.create()
+                .input( args.getInput() )
+                .bufferSize( args.getBufferSize() )
+                .parallelism( archiverArgs.getThreads() )
+                .virtualThreads( archiverArgs.isVirtualThreads() )
+                .listener( new ArchiveListener() {
+                    @Override
+                    public void throughput( Throughput throughput ) {
+                        if ( throughput.isDone() )
+                            last[0] = throughput;
+                        listener.throughput( throughput );
+                    }
+                } )
+                .build()
+        );
+        for ( String problem : problems )
+            System.err.println( problem );
+        if ( last[0] != null ) {
+            double mb = 1024 * 1024;
+            System.err.println( String.format( "Verified %.1f MB (%.1f MB inflated) at %.1f MB/s",
+                    last[0].getInputBytes() / mb, last[0].getOutputBytes() / mb, last[0].getBytesPerSecond() / mb ) );
+        }
+        if ( !problems.isEmpty() ) {
+            System.err.println( problems.size() + " problems found" );
+            System.exit( 1 );
+        }
+    }
+
+    /**
+     * Prints the files of compressed files to standard output, one per line with their sizes and pieces followed by
+     * a total, or as a JSON array of objects
+     */
+    private static void list( Archiver archiver, ListingArgs args, ArchiverArgs archiverArgs ) throws IOException {
+        List<ArchiveEntry> entries = archiver.list( IOOptionsBuilder.create()
+                .input( args.getInput() )
+                .parallelism( archiverArgs.getThreads() )
+                .virtualThreads( archiverArgs.isVirtualThreads() )
+                .build()
+        );
+        Writer out = new BufferedWriter( new OutputStreamWriter( System.out, StandardCharsets.UTF_8 ), 1 << 16 );
+        if ( args.isJson() ) {
+            out.write( '[' );
+            for ( int i = 0; i < entries.size(); i++ ) {
+                ArchiveEntry entry = entries.get( i );
+                out.write( i == 0 ? "\n" : ",\n" );
+                out.write( "{\"name\":\"" + json( entry.getName() ) + "\",\"directory\":" + entry.isDirectory()
+                        + ",\"size\":" + entry.getSize() + ",\"compressedSize\":" + entry.getCompressedSize()
+                        + ",\"pieces\":" + entry.getPieces() + "}" );
+            }
+            out.write( "\n]\n" );
+        } else {
+            long size = 0;
+            long compressedSize = 0;
+            int files = 0;
+            for ( ArchiveEntry entry : entries ) {
+                out.write( String.format( "%14d %14d %4d %s%n", entry.getSize(), entry.getCompressedSize(),
+                        entry.getPieces(), entry.getName() ) );
+                size += entry.getSize();
+                compressedSize += entry.getCompressedSize();
+                if ( !entry.isDirectory() )
+                    files++;
+            }
+            out.write( String.format( "%14d %14d      %d files%n", size, compressedSize, files ) );
+        }
+        out.flush();
+    }
+
+    /**
+     * @return a string escaped to be quoted in JSON
+     */
+    private static String json( String value ) {
+        StringBuilder escaped = new StringBuilder( value.length() );
+        for ( char c : value.toCharArray() ) {
+            if ( c == '"' || c == '\\' )
+                escaped.append( '\\' ).append( c );
+            else if ( c < 0x20 )
+                escaped.append( String.format( "\\u%04x", ( int ) c ) );
+            else
+                escaped.append( c );
+        }
+        return escaped.toString();
+    }
+
 }
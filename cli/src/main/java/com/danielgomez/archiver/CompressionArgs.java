@@ -22,6 +22,61 @@ public class CompressionArgs {
             "--buffer-size" }, description = "The buffer size when writing files during compression." )
     private int bufferSize = 1024;
 
+    @Parameter( names = { "-c",
+            "--chunk-planner" }, description = "How files are grouped into compressed files: 'sequential' or "
+                    + "'balanced'." )
+    private String chunkPlanner = "sequential";
+
+    @Parameter( names = { "-p",
+            "--parallel-deflate" }, description = "Deflate files in parallel blocks when there is a single compressed "
+                    + "file." )
+    private boolean parallelDeflate;
+
+    @Parameter( names = { "-l",
+            "--level" }, description = "The compression level from 0 (none) to 9 (best), or up to 22 with zstd. -1 "
+                    + "uses the default level." )
+    private int compressionLevel = -1;
+
+    @Parameter( names = {
+            "--policy" }, description = "Which files are deflated: 'always' or 'adaptive' to store incompressible "
+                    + "files." )
+    private String compressionPolicy = "always";
+
+    @Parameter( names = {
+            "--split-on-output-size" }, description = "Apply the maximum file size to the compressed files rather "
+                    + "than to their input." )
+    private boolean splitOnOutputSize;
+
+    @Parameter( names = {
+            "--incremental" }, description = "Keep a manifest next to the compressed files and only compress files "
+                    + "that changed since the last run." )
+    private boolean incremental;
+
+    @Parameter( names = {
+            "--mmap-threshold" }, description = "Read files of at least this many bytes through memory mapping. -1 "
+                    + "never maps files." )
+    private long memoryMapThreshold = -1;
+
+    @Parameter( names = {
+            "--dedup" }, description = "Store files with identical content once and restore the copies from an index "
+                    + "when decompressing." )
+    private boolean deduplicate;
+
+    @Parameter( names = {
+            "--resume" }, description = "Record each finished compressed file in a journal, and keep those that a "
+                    + "failed run with --resume into the same output finished, writing only the rest." )
+    private boolean resume;
+
+    @Parameter( names = {
+            "--solid" }, description = "Pack files of at most 1/16 of this many bytes into solid blocks of this size. "
+                    + "0 disables solid blocks." )
+    private int solidBlockSize;
+
+    @Parameter( names = {
+            "--dictionary" }, description = "Sample small files into a preset dictionary that every compressed file "
+                    + "stores once and deflates with, or train a zstd dictionary with zstd." )
+    private boolean presetDictionary;
+
     public Path getInput() {
         return input;
     }
@@ -38,4 +93,62 @@ public class CompressionArgs {
         return bufferSize;
     }
 
+    public boolean isParallelDeflate() {
+        return parallelDeflate;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public boolean isSplitOnOutputSize() {
+        return splitOnOutputSize;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public long getMemoryMapThreshold() {
+        return memoryMapThreshold;
+    }
+
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    public int getSolidBlockSize() {
+        return solidBlockSize;
+    }
+
+    public boolean isPresetDictionary() {
+        return presetDictionary;
+    }
+
+    public CompressionPolicy getCompressionPolicy() {
+        switch ( compressionPolicy ) {
+            case "always":
+                return CompressionPolicy.always();
+            case "adaptive":
+                return CompressionPolicy.adaptive();
+            default:
+                throw new IllegalArgumentException( "Unknown compression policy '" + compressionPolicy + "'" );
+        }
+    }
+
+    public ChunkPlanner getChunkPlanner() {
+        switch ( chunkPlanner ) {
+            case "sequential":
+                return ChunkPlanner.sequential();
+            case "balanced":
+                return ChunkPlanner.balanced();
+            default:
+                throw new IllegalArgumentException( "Unknown chunk planner '" + chunkPlanner + "'" );
+        }
+    }
+
 }
\ No newline at end of file
@@ -18,6 +18,10 @@ public class DecompressionArgs {
             "--buffer-size" }, description = "The buffer size when writing files during decompression." )
     private int bufferSize = 1024;
 
+    @Parameter( names = { "-p",
+            "--parallel" }, description = "Extract entries concurrently, even from a single compressed file." )
+    private boolean parallel;
+
     public Path getInput() {
         return input;
     }
@@ -30,4 +34,8 @@ public class DecompressionArgs {
         return bufferSize;
     }
 
+    public boolean isParallel() {
+        return parallel;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package com.danielgomez.archiver;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.beust.jcommander.Parameter;
+
+public class ExtractionArgs {
+
+    @Parameter( description = "Glob patterns of the paths to extract, e.g. 'config/*.yml'", required = true )
+    private List<String> patterns = new ArrayList<>();
+
+    @Parameter( names = { "-i",
+            "--input" }, description = "Input directory where compressed files are found", required = true )
+    private Path input;
+
+    @Parameter( names = { "-o",
+            "--output" }, description = "Output directory where extracted files are generated", required = true )
+    private Path output;
+
+    @Parameter( names = { "-b",
+            "--buffer-size" }, description = "The buffer size when writing files during extraction." )
+    private int bufferSize = 1024;
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    public Path getInput() {
+        return input;
+    }
+
+    public Path getOutput() {
+        return output;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+}
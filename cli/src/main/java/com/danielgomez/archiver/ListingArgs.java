@@ -0,0 +1,24 @@
+package com.danielgomez.archiver;
+
+import java.nio.file.Path;
+
+import com.beust.jcommander.Parameter;
+
+public class ListingArgs {
+
+    @Parameter( names = { "-i",
+            "--input" }, description = "Input directory where files to list are found", required = true )
+    private Path input;
+
+    @Parameter( names = "--json", description = "Print the files as a JSON array instead of a table." )
+    private boolean json;
+
+    public Path getInput() {
+        return input;
+    }
+
+    public boolean isJson() {
+        return json;
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.danielgomez.archiver;
+
+import java.io.PrintStream;
+
+/**
+ * Prints a progress bar with the throughput of an archive operation, redrawn in place on the same line
+ */
+public class ProgressBar implements ArchiveListener {
+
+    private static final int WIDTH = 30;
+
+    private static final double MB = 1024 * 1024;
+
+    private final PrintStream out;
+
+    private int lastLength;
+
+    public ProgressBar( PrintStream out ) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void throughput( Throughput throughput ) {
+        StringBuilder line = new StringBuilder( "\r" );
+        double fraction = throughput.getFraction();
+        if ( fraction >= 0 ) {
+            int filled = ( int ) ( fraction * WIDTH );
+            line.append( '[' );
+            for ( int i = 0; i < WIDTH; i++ )
+                line.append( i < filled ? '#' : ' ' );
+            line.append( String.format( "] %3d%%", ( int ) ( fraction * 100 ) ) );
+        } else {
+            line.append( String.format( "%.1f MB", throughput.getInputBytes() / MB ) );
+        }
+        line.append( String.format( " %.1f MB/s, %.1f MB written", throughput.getBytesPerSecond() / MB,
+                throughput.getOutputBytes() / MB ) );
+        int length = line.length();
+        // Clears what is left of a longer previous line
+        for ( int i = length; i < lastLength; i++ )
+            line.append( ' ' );
+        lastLength = length;
+        if ( throughput.isDone() )
+            line.append( System.lineSeparator() );
+        out.print( line );
+        out.flush();
+    }
+}
@@ -0,0 +1,25 @@
+package com.danielgomez.archiver;
+
+import java.nio.file.Path;
+
+import com.beust.jcommander.Parameter;
+
+public class VerificationArgs {
+
+    @Parameter( names = { "-i",
+            "--input" }, description = "Input directory where files to verify are found", required = true )
+    private Path input;
+
+    @Parameter( names = { "-b",
+            "--buffer-size" }, description = "The buffer size when reading files during verification." )
+    private int bufferSize = 1024;
+
+    public Path getInput() {
+        return input;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+}
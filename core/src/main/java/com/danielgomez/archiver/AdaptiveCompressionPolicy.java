@@ -0,0 +1,78 @@
+package com.danielgomez.archiver;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores entries that are unlikely to compress. An entry is considered incompressible when its file has an extension
+ * of a known compressed format, or when the Shannon entropy of its first bytes is close to 8 bits per byte. Entries too
+ * small to sample reliably are always deflated.
+ */
+class AdaptiveCompressionPolicy implements CompressionPolicy {
+
+    private static Logger LOGGER = LoggerFactory.getLogger( AdaptiveCompressionPolicy.class );
+
+    static final Set<String> INCOMPRESSIBLE_EXTENSIONS = new HashSet<>( Arrays.asList(
+            "7z", "aac", "apk", "avi", "avif", "br", "bz2", "deb", "docx", "flac", "gif", "gz", "heic", "jar", "jpeg",
+            "jpg", "lz", "lz4", "lzma", "m4a", "m4v", "mkv", "mov", "mp3", "mp4", "odt", "ogg", "opus", "png", "pptx",
+            "rar", "rpm", "tgz", "war", "webm", "webp", "woff2", "xlsx", "xz", "zip", "zst" ) );
+
+    static final int SAMPLE_SIZE = 4 * 1024;
+
+    private static final int MIN_SAMPLE_SIZE = 256;
+
+    /**
+     * Bits per byte above which a sample is considered random. Deflate gains less than about 5% above it.
+     */
+    private static final double ENTROPY_THRESHOLD = 7.6;
+
+    @Override
+    public boolean shouldDeflate( ChunkEntry entry ) throws IOException {
+        if ( entry.getLength() < MIN_SAMPLE_SIZE )
+            return true;
+        if ( INCOMPRESSIBLE_EXTENSIONS.contains( extension( entry.getSource().getFileName().toString() ) ) )
+            return false;
+
+        ByteBuffer sample = ByteBuffer.allocate( ( int ) Math.min( SAMPLE_SIZE, entry.getLength() ) );
+        try ( FileChannel channel = FileChannel.open( entry.getSource(), READ ) ) {
+            while ( sample.hasRemaining() ) {
+                if ( channel.read( sample, entry.getOffset() + sample.position() ) < 0 )
+                    break;
+            }
+        }
+        if ( sample.position() < MIN_SAMPLE_SIZE )
+            return true;
+        double entropy = entropy( sample.array(), sample.position() );
+        LOGGER.trace( "Entropy of '{}' is {} bits per byte", entry, entropy );
+        return entropy < ENTROPY_THRESHOLD;
+    }
+
+    static double entropy( byte[] bytes, int length ) {
+        int[] counts = new int[256];
+        for ( int i = 0; i < length; i++ )
+            counts[bytes[i] & 0xFF]++;
+        double entropy = 0;
+        for ( int count : counts ) {
+            if ( count == 0 )
+                continue;
+            double probability = ( double ) count / length;
+            entropy -= probability * Math.log( probability );
+        }
+        return entropy / Math.log( 2 );
+    }
+
+    private static String extension( String fileName ) {
+        int index = fileName.lastIndexOf( '.' );
+        return index < 0 ? "" : fileName.substring( index + 1 ).toLowerCase( Locale.ROOT );
+    }
+}
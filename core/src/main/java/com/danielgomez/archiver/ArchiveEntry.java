@@ -0,0 +1,61 @@
+package com.danielgomez.archiver;
+
+/**
+ * A file or directory of compressed files, as listed by {@link Archiver#list(IOOptions)}. A file split into pieces
+ * over several entries is a single archive entry whose sizes add up those of its pieces.
+ */
+public final class ArchiveEntry {
+
+    private final String name;
+
+    private final long size;
+
+    private final long compressedSize;
+
+    private final int pieces;
+
+    ArchiveEntry( String name, long size, long compressedSize, int pieces ) {
+        this.name = name;
+        this.size = size;
+        this.compressedSize = compressedSize;
+        this.pieces = pieces;
+    }
+
+    /**
+     * @return The path of the file relative to the compressed directory, ending with '/' for a directory
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The uncompressed size of the file
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return The compressed size of the file. A file packed into a solid block gets its share of the block by size,
+     * and a duplicate costs nothing.
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * @return The number of pieces the file is split into, 1 if it is not split
+     */
+    public int getPieces() {
+        return pieces;
+    }
+
+    public boolean isDirectory() {
+        return name.endsWith( "/" );
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,60 @@
+package com.danielgomez.archiver;
+
+/**
+ * Receives progress of an archive operation. Register one with {@link IOOptionsBuilder#listener(ArchiveListener)}.
+ * <p>
+ * Callbacks are made on the threads doing the work, possibly several at once, so implementations must be thread safe
+ * and should return quickly. Every method does nothing by default.
+ */
+public interface ArchiveListener {
+
+    /**
+     * A listener that ignores everything
+     */
+    ArchiveListener NONE = new ArchiveListener() {};
+
+    /**
+     * Called once the input is known. When compressing, chunks may already be written while the input is scanned,
+     * see {@link #chunkPlanned(int, int, long)}.
+     *
+     * @param files the number of files to process, the compressed files when decompressing
+     * @param bytes the total size of those files, -1 if unknown
+     */
+    default void scanCompleted( int files, long bytes ) {}
+
+    /**
+     * Called for each chunk of files that goes to its own compressed file, before the chunk is written. Chunks
+     * filled in visiting order are planned and written while the input is scanned, so earlier chunks may already be
+     * written at that point.
+     *
+     * @param chunk   the number of the chunk, starting at 0
+     * @param entries the number of entries of the chunk
+     * @param bytes   the uncompressed size of the chunk
+     */
+    default void chunkPlanned( int chunk, int entries, long bytes ) {}
+
+    /**
+     * @param name the name of the entry, which is a piece of a file if it was split
+     */
+    default void entryStarted( String name ) {}
+
+    /**
+     * @param name            the name of the entry
+     * @param rawBytes        the uncompressed size of the entry
+     * @param compressedBytes the compressed size of the entry, -1 if unknown because the archive is compressed as a
+     *                        whole rather than entry by entry
+     * @param elapsedNanos    the time spent on the entry
+     */
+    default void entryFinished( String name, long rawBytes, long compressedBytes, long elapsedNanos ) {}
+
+    /**
+     * @param name  the name of the compressed file
+     * @param bytes the size of the compressed file
+     */
+    default void partFinished( String name, long bytes ) {}
+
+    /**
+     * Called at most a few times per second while the operation runs and once more when it ends
+     */
+    default void throughput( Throughput throughput ) {}
+}
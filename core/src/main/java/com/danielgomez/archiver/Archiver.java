@@ -1,6 +1,12 @@
 package com.danielgomez.archiver;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Responsible for compressing and decompressing a file
@@ -18,6 +24,53 @@ public interface Archiver {
      */
     void compress( CompressionOptions options ) throws IOException;
 
+    /**
+     * Runs {@link #compress(CompressionOptions)} on a thread of its own, so that several archive operations can
+     * overlap. The parallel work of the compression runs on the executor of the options, see
+     * {@link IOOptions#getExecutor()}.
+     *
+     * @param options compression configuration
+     * @return completed once the compressed files are written, exceptionally with the failure of the compression
+     */
+    default CompletableFuture<Void> compressAsync( CompressionOptions options ) {
+        return Workers.async( "archiver-compress", () -> compress( options ) );
+    }
+
+    /**
+     * Compresses an input directory into a single compressed file written to a channel. The output path of the options
+     * is not used and the channel is left open.
+     *
+     * @param options compression configuration without a maximum file size
+     * @param output  where the compressed file is written
+     * @throws IllegalArgumentException      when the options require multiple compressed files
+     * @throws UnsupportedOperationException when the archiver cannot write to a channel
+     * @throws IOException                   for other errors during compression
+     */
+    default void compress( CompressionOptions options, WritableByteChannel output ) throws IOException {
+        throw new UnsupportedOperationException( getClass().getSimpleName() + " does not support streaming" );
+    }
+
+    /**
+     * Compresses an input directory into a single compressed file written to a stream, see
+     * {@link #compress(CompressionOptions, WritableByteChannel)}
+     */
+    default void compress( CompressionOptions options, OutputStream output ) throws IOException {
+        compress( options, Channels.newChannel( output ) );
+    }
+
+    /**
+     * Compresses an input directory into as many compressed files as the options require, each written to a channel
+     * opened by a sink. The output path of the options is not used.
+     *
+     * @param options compression configuration
+     * @param sink    opens a channel for each compressed file
+     * @throws UnsupportedOperationException when the archiver cannot write to a channel
+     * @throws IOException                   for other errors during compression
+     */
+    default void compress( CompressionOptions options, PartSink sink ) throws IOException {
+        throw new UnsupportedOperationException( getClass().getSimpleName() + " does not support streaming" );
+    }
+
     /**
      * Returns back the original files that was used for {@link #compress(CompressionOptions)}.
      *
@@ -27,4 +80,72 @@ public interface Archiver {
      * @throws IOException                         for other errors during decompression
      */
     void decompress( DecompressionOptions options ) throws IOException;
+
+    /**
+     * Runs {@link #decompress(DecompressionOptions)} on a thread of its own, so that several archive operations can
+     * overlap. The parallel work of the decompression runs on the executor of the options, see
+     * {@link IOOptions#getExecutor()}.
+     *
+     * @param options decompression configuration
+     * @return completed once the files are restored, exceptionally with the failure of the decompression
+     */
+    default CompletableFuture<Void> decompressAsync( DecompressionOptions options ) {
+        return Workers.async( "archiver-decompress", () -> decompress( options ) );
+    }
+
+    /**
+     * Decompresses compressed files read from channels into the output directory of the options. The input path of the
+     * options is not used. Channels are read until their end but are not closed.
+     *
+     * @param options decompression configuration
+     * @param inputs  the compressed files in part order
+     * @throws UnsupportedOperationException when the archiver cannot read from a channel
+     * @throws IOException                   for other errors during decompression
+     */
+    default void decompress( DecompressionOptions options, List<? extends ReadableByteChannel> inputs )
+            throws IOException {
+        throw new UnsupportedOperationException( getClass().getSimpleName() + " does not support streaming" );
+    }
+
+    /**
+     * Restores only the files that match given patterns from the output of {@link #compress(CompressionOptions)},
+     * without going through the rest of the compressed files.
+     *
+     * @param options extraction configuration
+     * @throws java.nio.file.NoSuchFileException   when the input path does not exist or no file matches
+     * @throws java.nio.file.NotDirectoryException when the input/output path is not a directory
+     * @throws UnsupportedOperationException      when the archiver cannot read single files
+     * @throws IOException                         for other errors during extraction
+     */
+    default void extract( ExtractionOptions options ) throws IOException {
+        throw new UnsupportedOperationException( getClass().getSimpleName() + " does not support extraction" );
+    }
+
+    /**
+     * Checks that the output of {@link #compress(CompressionOptions)} can be decompressed, without writing anything.
+     * The output path of the options is not used.
+     *
+     * @param options verification configuration, whose input is the directory of the compressed files
+     * @return the problems found, empty if the compressed files are intact
+     * @throws java.nio.file.NoSuchFileException when the input path does not exist
+     * @throws UnsupportedOperationException    when the archiver cannot verify compressed files
+     * @throws IOException                       for errors other than corrupt compressed files
+     */
+    default List<String> verify( IOOptions options ) throws IOException {
+        throw new UnsupportedOperationException( getClass().getSimpleName() + " does not support verification" );
+    }
+
+    /**
+     * Lists the files of the output of {@link #compress(CompressionOptions)} from its metadata, without decompressing
+     * them. The output path of the options is not used.
+     *
+     * @param options listing configuration, whose input is the directory of the compressed files
+     * @return the files and directories, sorted by name
+     * @throws java.nio.file.NoSuchFileException when the input path does not exist
+     * @throws UnsupportedOperationException    when the archiver cannot list compressed files
+     * @throws IOException                       for other errors during listing
+     */
+    default List<ArchiveEntry> list( IOOptions options ) throws IOException {
+        throw new UnsupportedOperationException( getClass().getSimpleName() + " does not support listing" );
+    }
 }
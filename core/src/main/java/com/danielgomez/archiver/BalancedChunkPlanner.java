@@ -0,0 +1,106 @@
+package com.danielgomez.archiver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plans chunks of similar size so that writing them in parallel does not wait on a single oversized chunk.
+ * <p>
+ * The planner starts with the least number of chunks that can hold all entries and places entries from the largest
+ * to the smallest in the chunk with the least total size. When an entry does not fit there, it goes to the first chunk
+ * it fits in, or a new chunk when there is none. Entries keep their visiting order within a chunk and directories are
+ * all placed in the first chunk.
+ * <p>
+ * Pieces of a split file all have the maximum size except the last one. They fill their chunks completely and are
+ * placed first, so they always end up in increasing chunk order.
+ */
+class BalancedChunkPlanner implements ChunkPlanner {
+
+    private static Logger LOGGER = LoggerFactory.getLogger( BalancedChunkPlanner.class );
+
+    @Override
+    public List<List<ChunkEntry>> plan( List<ChunkEntry> entries, long maxFileSize ) {
+        if ( maxFileSize <= 0 )
+            return new SequentialChunkPlanner().plan( entries, maxFileSize );
+
+        Map<ChunkEntry, Integer> order = new IdentityHashMap<>();
+        List<ChunkEntry> files = new ArrayList<>();
+        List<ChunkEntry> directories = new ArrayList<>();
+        long totalSize = 0;
+        for ( ChunkEntry entry : entries ) {
+            order.put( entry, order.size() );
+            if ( entry.isDirectory() ) {
+                directories.add( entry );
+            } else {
+                files.add( entry );
+                totalSize += entry.getLength();
+            }
+        }
+        files.sort( Comparator.comparingLong( ChunkEntry::getLength ).reversed() );
+
+        List<Bin> bins = new ArrayList<>();
+        PriorityQueue<Bin> byLoad = new PriorityQueue<>(
+                Comparator.comparingLong( ( Bin bin ) -> bin.size ).thenComparingInt( bin -> bin.index ) );
+        long initialBins = Math.max( 1, ( totalSize + maxFileSize - 1 ) / maxFileSize );
+        for ( int i = 0; i < initialBins; i++ ) {
+            Bin bin = new Bin( i );
+            bins.add( bin );
+            byLoad.add( bin );
+        }
+        bins.get( 0 ).entries.addAll( directories );
+
+        for ( ChunkEntry file : files ) {
+            long size = file.getLength();
+            Bin target = byLoad.peek();
+            if ( target.size + size > maxFileSize ) {
+                target = null;
+                for ( Bin bin : bins ) {
+                    if ( bin.size + size <= maxFileSize ) {
+                        target = bin;
+                        break;
+                    }
+                }
+                if ( target == null ) {
+                    target = new Bin( bins.size() );
+                    bins.add( target );
+                    byLoad.add( target );
+                }
+            }
+            byLoad.remove( target );
+            target.entries.add( file );
+            target.size += size;
+            byLoad.add( target );
+        }
+
+        List<List<ChunkEntry>> chunks = new ArrayList<>();
+        for ( Bin bin : bins ) {
+            if ( bin.entries.isEmpty() )
+                continue;
+            bin.entries.sort( Comparator.comparingInt( order::get ) );
+            LOGGER.trace( "Chunk '{}' planned with {} entries and {} bytes", chunks.size(), bin.entries.size(),
+                    bin.size );
+            chunks.add( bin.entries );
+        }
+        return chunks;
+    }
+
+    private static class Bin {
+
+        private final int index;
+
+        private final List<ChunkEntry> entries = new ArrayList<>();
+
+        private long size;
+
+        private Bin( int index ) {
+            this.index = index;
+        }
+    }
+}
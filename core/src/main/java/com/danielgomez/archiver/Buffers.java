@@ -0,0 +1,46 @@
+package com.danielgomez.archiver;
+
+/**
+ * Copy buffers kept per thread, so that copying, deflating or inflating an entry allocates nothing once the thread has
+ * handled an entry with the same buffer size.
+ * <p>
+ * Each thread has an input buffer, for bytes read from a source, and an output buffer, for bytes produced from them. A
+ * buffer is only valid until the next call that asks for the same kind on the same thread, so a method must not hold
+ * one while calling another method that uses that kind. Buffers only grow and may be larger than asked for, so their
+ * length must not be used as the size to read or write.
+ * <p>
+ * Since a buffer lives as long as its thread, only sizes bounded by the buffer size or the parallel deflate block size
+ * should be asked for. Larger data, such as a solid block, gets an array of its own.
+ */
+final class Buffers {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final ThreadLocal<Buffers> LOCAL = ThreadLocal.withInitial( Buffers::new );
+
+    private byte[] input = EMPTY;
+
+    private byte[] output = EMPTY;
+
+    private Buffers() {}
+
+    /**
+     * @return a buffer of at least {@code size} bytes for data read from a source
+     */
+    static byte[] input( int size ) {
+        Buffers buffers = LOCAL.get();
+        if ( buffers.input.length < size )
+            buffers.input = new byte[size];
+        return buffers.input;
+    }
+
+    /**
+     * @return a buffer of at least {@code size} bytes for data produced from the input buffer
+     */
+    static byte[] output( int size ) {
+        Buffers buffers = LOCAL.get();
+        if ( buffers.output.length < size )
+            buffers.output = new byte[size];
+        return buffers.output;
+    }
+}
@@ -0,0 +1,65 @@
+package com.danielgomez.archiver;
+
+/**
+ * CRC-32 helpers not offered by {@link java.util.zip.CRC32}
+ */
+final class Checksums {
+
+    private static final int GF2_DIM = 32;
+
+    private Checksums() {}
+
+    /**
+     * Combines the CRC-32 of two consecutive byte sequences into the CRC-32 of their concatenation, as done by zlib's
+     * crc32_combine. This allows checksums of blocks to be computed in parallel.
+     *
+     * @param crc1    CRC-32 of the first sequence
+     * @param crc2    CRC-32 of the second sequence
+     * @param length2 length of the second sequence
+     * @return CRC-32 of both sequences
+     */
+    static long combine( long crc1, long crc2, long length2 ) {
+        if ( length2 <= 0 )
+            return crc1;
+
+        long[] even = new long[GF2_DIM];
+        long[] odd = new long[GF2_DIM];
+        odd[0] = 0xedb88320L;
+        long row = 1;
+        for ( int n = 1; n < GF2_DIM; n++ ) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        square( even, odd );
+        square( odd, even );
+
+        do {
+            square( even, odd );
+            if ( ( length2 & 1 ) != 0 )
+                crc1 = times( even, crc1 );
+            length2 >>= 1;
+            if ( length2 == 0 )
+                break;
+
+            square( odd, even );
+            if ( ( length2 & 1 ) != 0 )
+                crc1 = times( odd, crc1 );
+            length2 >>= 1;
+        } while ( length2 != 0 );
+        return crc1 ^ crc2;
+    }
+
+    private static long times( long[] matrix, long vector ) {
+        long sum = 0;
+        for ( int i = 0; vector != 0; i++, vector >>>= 1 ) {
+            if ( ( vector & 1 ) != 0 )
+                sum ^= matrix[i];
+        }
+        return sum;
+    }
+
+    private static void square( long[] square, long[] matrix ) {
+        for ( int n = 0; n < GF2_DIM; n++ )
+            square[n] = times( matrix, matrix[n] );
+    }
+}
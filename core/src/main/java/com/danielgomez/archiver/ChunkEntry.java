@@ -0,0 +1,188 @@
+package com.danielgomez.archiver;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A single item of a chunk. An item is either a directory, a whole file or a byte range of a file that exceeds the
+ * maximum file size. Byte ranges are read directly from their source file when written, so splitting a file does not
+ * require copying it anywhere first. The archiver may also add small entries of its own, whose content is held in
+ * memory, like the index of duplicate files, and solid blocks that pack small files together, see
+ * {@link SolidBlocks}.
+ */
+public final class ChunkEntry {
+
+    private final Path source;
+
+    private final String name;
+
+    private final long offset;
+
+    private final long length;
+
+    private final boolean directory;
+
+    private final boolean range;
+
+    private final long fileSize;
+
+    private final long lastModified;
+
+    private final Manifest.Entry previous;
+
+    private final byte[] content;
+
+    private final List<ChunkEntry> members;
+
+    private ChunkEntry( Path source, String name, long offset, long length, boolean directory, boolean range,
+            long fileSize, long lastModified, Manifest.Entry previous, byte[] content, List<ChunkEntry> members ) {
+        this.source = source;
+        this.name = name;
+        this.offset = offset;
+        this.length = length;
+        this.directory = directory;
+        this.range = range;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.previous = previous;
+        this.content = content;
+        this.members = members;
+    }
+
+    static ChunkEntry directory( Path source, String name ) {
+        return new ChunkEntry( source, name, 0, 0, true, false, -1, -1, null, null, null );
+    }
+
+    /**
+     * Creates the entry of a whole file, e.g. to test a custom {@link CompressionPolicy} with
+     *
+     * @param source the file
+     * @param name   the name of the entry, relative to the compressed directory with '/' as separator
+     * @param size   the size of the file
+     */
+    public static ChunkEntry file( Path source, String name, long size ) {
+        return file( source, name, size, -1 );
+    }
+
+    /**
+     * @param lastModified the last modified time of the file when it was visited, in milliseconds
+     */
+    static ChunkEntry file( Path source, String name, long size, long lastModified ) {
+        return new ChunkEntry( source, name, 0, size, false, false, size, lastModified, null, null, null );
+    }
+
+    /**
+     * Creates the entry of a byte range of a file, as split files are written, see {@link #file(Path, String, long)}
+     *
+     * @param source the file
+     * @param name   the name of the entry, which is usually the name of the file with a part suffix
+     * @param offset where the range starts in the file
+     * @param length the length of the range
+     */
+    public static ChunkEntry range( Path source, String name, long offset, long length ) {
+        return range( source, name, offset, length, -1, -1 );
+    }
+
+    /**
+     * @param fileSize     the size of the whole file when it was visited
+     * @param lastModified the last modified time of the file when it was visited, in milliseconds
+     */
+    static ChunkEntry range( Path source, String name, long offset, long length, long fileSize, long lastModified ) {
+        return new ChunkEntry( source, name, offset, length, false, true, fileSize, lastModified, null, null, null );
+    }
+
+    static ChunkEntry content( String name, byte[] content ) {
+        return new ChunkEntry( null, name, 0, content.length, false, false, -1, -1, null, content, null );
+    }
+
+    static ChunkEntry solid( String name, List<ChunkEntry> members, long length ) {
+        return new ChunkEntry( null, name, 0, length, false, false, -1, -1, null, null, members );
+    }
+
+    /**
+     * @return a copy of this entry that is copied from a previous compression instead of being compressed again
+     */
+    ChunkEntry reusing( Manifest.Entry previous ) {
+        return new ChunkEntry( source, name, offset, length, directory, range, fileSize, lastModified, previous,
+                content, members );
+    }
+
+    /**
+     * @return The file or directory this entry was created from, null for entries added by the archiver
+     */
+    public Path getSource() {
+        return source;
+    }
+
+    /**
+     * @return The name of the entry inside the archive, relative to the input directory
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The position in the source file where the entry starts. Always 0 for whole files.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return The number of bytes of this entry. For whole files, this is the size at the time it was visited.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return true if this entry is only a part of its source file
+     */
+    public boolean isRange() {
+        return range;
+    }
+
+    /**
+     * @return The size of the whole source file when it was visited, which is the length of a whole file, -1 if unknown
+     */
+    long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return The last modified time in milliseconds of the source file when it was visited, -1 if unknown
+     */
+    long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return The same entry in a previous compression if it can be copied from there, null otherwise
+     */
+    Manifest.Entry getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return The content of an entry added by the archiver, which has no source, null for any other entry
+     */
+    byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * @return The files packed into a solid block, in the order they are packed, null for any other entry
+     */
+    List<ChunkEntry> getMembers() {
+        return members;
+    }
+
+    @Override
+    public String toString() {
+        return range ? name + "[" + offset + ".." + ( offset + length ) + ")" : name;
+    }
+}
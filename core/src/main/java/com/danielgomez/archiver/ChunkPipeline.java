@@ -0,0 +1,146 @@
+package com.danielgomez.archiver;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes chunks while the input is still being scanned. The scanning thread adds each chunk as soon as it is closed
+ * and chunks are written on an executor. At most a fixed number of chunks are added and not yet written; adding
+ * more blocks the scanning thread until a writer is done, so the entries held in memory stay bounded however large
+ * the input is.
+ * <p>
+ * Each chunk is held until the next one is added, or until the scan is done, since a zip file is named after its
+ * part number only when there is more than one and the last zip file records how many there are.
+ */
+final class ChunkPipeline {
+
+    /**
+     * Writes a chunk to its own compressed file
+     */
+    interface ChunkWriter {
+
+        /**
+         * @param chunk   the number of the chunk, starting at 0
+         * @param entries the entries of the chunk
+         * @param last    true if this is the last chunk, which is the only one if its number is 0
+         */
+        void write( int chunk, List<ChunkEntry> entries, boolean last ) throws IOException;
+    }
+
+    private final ChunkWriter writer;
+
+    private final ArchiveListener listener;
+
+    private final int capacity;
+
+    private final Executor executor;
+
+    private final Semaphore pending;
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private List<ChunkEntry> held;
+
+    private int chunkCount;
+
+    /**
+     * Creates a pipeline writing chunks with workers and holding up to twice as many chunks as their parallelism
+     */
+    ChunkPipeline( ChunkWriter writer, ArchiveListener listener, Workers workers ) {
+        this( writer, listener, 2 * workers.getParallelism(), workers.getExecutor() );
+    }
+
+    /**
+     * @param capacity the most chunks added and not yet written
+     * @param executor where chunks are written
+     */
+    ChunkPipeline( ChunkWriter writer, ArchiveListener listener, int capacity, Executor executor ) {
+        this.writer = writer;
+        this.listener = listener;
+        this.capacity = capacity;
+        this.executor = executor;
+        this.pending = new Semaphore( capacity );
+    }
+
+    /**
+     * Adds a closed chunk, waiting while the pipeline is full
+     *
+     * @throws IOException the failure of a chunk written before, in which case nothing more is written
+     */
+    void add( List<ChunkEntry> chunk ) throws IOException {
+        rethrowFailure();
+        int index = chunkCount++;
+        listener.chunkPlanned( index, chunk.size(), chunk.stream().mapToLong( ChunkEntry::getLength ).sum() );
+        if ( held != null )
+            submit( index - 1, held, false );
+        held = chunk;
+    }
+
+    private void submit( int index, List<ChunkEntry> chunk, boolean last ) throws IOException {
+        try {
+            pending.acquire();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting for chunks to be written" );
+        }
+        CompletableFuture.runAsync( () -> {
+            try {
+                if ( failure.get() == null )
+                    writer.write( index, chunk, last );
+            } catch ( Throwable e ) {
+                failure.compareAndSet( null, e );
+            } finally {
+                pending.release();
+            }
+        }, executor );
+    }
+
+    /**
+     * Writes the last chunk, on the calling thread if it is the only one, then waits until every chunk is written
+     *
+     * @return the number of chunks
+     */
+    int finish() throws IOException {
+        try {
+            if ( chunkCount == 1 )
+                writer.write( 0, held, true );
+            else if ( held != null )
+                submit( chunkCount - 1, held, true );
+            held = null;
+        } finally {
+            await();
+        }
+        rethrowFailure();
+        return chunkCount;
+    }
+
+    /**
+     * Waits until the chunks being written are done, without writing any more. Used when scanning fails so that
+     * nothing is still written once the failure is reported.
+     */
+    void abort() {
+        held = null;
+        failure.compareAndSet( null, new IllegalStateException( "Aborted" ) );
+        await();
+    }
+
+    private void await() {
+        pending.acquireUninterruptibly( capacity );
+        pending.release( capacity );
+    }
+
+    private void rethrowFailure() throws IOException {
+        Throwable e = failure.get();
+        if ( e instanceof IOException )
+            throw ( IOException ) e;
+        if ( e instanceof RuntimeException )
+            throw ( RuntimeException ) e;
+        if ( e instanceof Error )
+            throw ( Error ) e;
+    }
+}
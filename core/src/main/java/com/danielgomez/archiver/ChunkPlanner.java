@@ -0,0 +1,35 @@
+package com.danielgomez.archiver;
+
+import java.util.List;
+
+/**
+ * Groups the entries found in an input directory into chunks. Each chunk is written to its own compressed file, so
+ * the way entries are grouped decides how much work each file gets when chunks are written in parallel.
+ * <p>
+ * Implementations must keep every chunk within the maximum file size, must not drop or duplicate entries and must keep
+ * the pieces of a split file in increasing chunk order.
+ */
+public interface ChunkPlanner {
+
+    /**
+     * @param entries     entries in the order they were visited. None of them exceeds the maximum file size.
+     * @param maxFileSize the maximum total size of a chunk, value <= 0 means no limit
+     * @return the chunks, in part order
+     */
+    List<List<ChunkEntry>> plan( List<ChunkEntry> entries, long maxFileSize );
+
+    /**
+     * @return a planner that fills chunks one after another in the order entries were visited
+     */
+    static ChunkPlanner sequential() {
+        return new SequentialChunkPlanner();
+    }
+
+    /**
+     * @return a planner that spreads entries over as few chunks as possible while keeping their sizes close to each
+     * other
+     */
+    static ChunkPlanner balanced() {
+        return new BalancedChunkPlanner();
+    }
+}
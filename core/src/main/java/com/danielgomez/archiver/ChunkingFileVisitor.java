@@ -0,0 +1,196 @@
+package com.danielgomez.archiver;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A file visitor that collects the entries to compress in visiting order. A file that exceeds max file size on its
+ * own is split into byte ranges named with a '.part.{n}' suffix so that every entry fits in a chunk. When writing
+ * to a pipeline, entries are filled into chunks as they are visited and handed over instead of being collected.
+ * Small files are sampled for a preset dictionary if the options ask for one, see {@link PresetDictionary}.
+ */
+final class ChunkingFileVisitor extends SimpleFileVisitor<Path> {
+
+    private List<ChunkEntry> entries = new ArrayList<>();
+
+    private Map<String, BasicFileAttributes> attributes = new HashMap<>();
+
+    private int fileCount;
+
+    private long totalSize;
+
+    private CompressionOptions options;
+
+    private Manifest previous;
+
+    private ChunkPipeline pipeline;
+
+    private SequentialChunkPlanner.Filler filler;
+
+    private PresetDictionary dictionary;
+
+    public ChunkingFileVisitor( CompressionOptions options, Manifest previous ) {
+        this.options = options;
+        this.previous = previous;
+        if ( options.isPresetDictionary() )
+            this.dictionary = new PresetDictionary( options );
+    }
+
+    /**
+     * @return the attributes a file had when it was visited, null if it was not visited
+     */
+    public BasicFileAttributes getAttributes( String path ) {
+        return attributes.get( path );
+    }
+
+    public List<ChunkEntry> getEntries() {
+        return entries;
+    }
+
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return the total size of the visited files
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Hands chunks over to a pipeline while visiting, see {@link SequentialChunkPlanner.Filler}
+     */
+    public void writeTo( ChunkPipeline pipeline ) {
+        this.pipeline = pipeline;
+        this.filler = new SequentialChunkPlanner.Filler( getMaxFileSize() );
+    }
+
+    /**
+     * Hands the last chunk over to the pipeline once everything is visited
+     */
+    public void finish() throws IOException {
+        List<ChunkEntry> last = filler.finish();
+        if ( last != null )
+            pipeline.add( last );
+    }
+
+    private void add( ChunkEntry entry ) throws IOException {
+        if ( pipeline == null ) {
+            entries.add( entry );
+            return;
+        }
+        List<ChunkEntry> closed = filler.add( entry );
+        if ( closed != null )
+            pipeline.add( closed );
+    }
+
+    /**
+     * Leaves out files that duplicate a file visited before them, see {@link Duplicates}
+     */
+    public void deduplicate( Workers workers ) throws IOException {
+        entries = Duplicates.remove( entries, options, workers );
+    }
+
+    /**
+     * @return the preset dictionary sampled from the visited files, null if none was asked for or no file was small
+     * enough
+     */
+    public byte[] getDictionary() {
+        return dictionary != null ? dictionary.build() : null;
+    }
+
+    public List<List<ChunkEntry>> getChunks() {
+        return options.getChunkPlanner().plan( entries, getMaxFileSize() );
+    }
+
+    private long getMaxFileSize() {
+        return options.getMaxFileSize();
+    }
+
+    private String nameOf( Path path ) {
+        return options.getInput().relativize( path ).toString();
+    }
+
+    @Override
+    public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) throws IOException {
+        if ( file.getFileName().toString().equals( ".DS_Store" ) )
+            return FileVisitResult.CONTINUE;
+        super.visitFile( file, attrs );
+        // Links are visited with their own attributes but compressed with the content of their target
+        long size = attrs.isSymbolicLink() ? Files.size( file ) : attrs.size();
+        long lastModified = ( attrs.isSymbolicLink() ? Files.getLastModifiedTime( file ) : attrs.lastModifiedTime() )
+                .toMillis();
+        fileCount++;
+        totalSize += size;
+        if ( dictionary != null )
+            dictionary.sample( file, size );
+        List<ChunkEntry> fileEntries;
+        if ( getMaxFileSize() > 0 && size > getMaxFileSize() && !options.isSplitOnOutputSize() )
+            fileEntries = refine( file, size, lastModified );
+        else
+            fileEntries = Collections.singletonList( ChunkEntry.file( file, nameOf( file ), size, lastModified ) );
+        if ( previous != null ) {
+            String path = nameOf( file );
+            attributes.put( path, attrs );
+            for ( ChunkEntry entry : fileEntries )
+                add( reuse( entry, path, attrs.size(), attrs.lastModifiedTime().toMillis() ) );
+        } else {
+            for ( ChunkEntry entry : fileEntries )
+                add( entry );
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+    /**
+     * Marks an entry to be copied from the previous compression if its file has the same size and last modified
+     * time as it had back then
+     */
+    private ChunkEntry reuse( ChunkEntry entry, String path, long size, long lastModified ) {
+        Manifest.Entry previousEntry = previous.get( entry.getName() );
+        if ( previousEntry != null && previousEntry.matches( entry, path, size, lastModified ) )
+            return entry.reusing( previousEntry );
+        return entry;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes attrs ) throws IOException {
+        if ( dir.equals( options.getInput() ) )
+            return FileVisitResult.CONTINUE;
+
+        super.preVisitDirectory( dir, attrs );
+        add( ChunkEntry.directory( dir, nameOf( dir ) ) );
+        return FileVisitResult.CONTINUE;
+    }
+
+    /**
+     * Splits a file into byte ranges such that each part of the file does not exceed max file size. Nothing is
+     * read or copied here; the ranges are streamed from the file when the zip is written.
+     *
+     * @param path         the file to split
+     * @param size         the size of the file
+     * @param lastModified the last modified time of the file
+     * @return list of parts of the file
+     */
+    private List<ChunkEntry> refine( Path path, long size, long lastModified ) {
+        List<ChunkEntry> parts = new ArrayList<>();
+        long sizePerPart = getMaxFileSize();
+        int partNumber = 0;
+        for ( long offset = 0; offset < size; offset += sizePerPart ) {
+            String name = nameOf( ZipArchiver.partFile( path, "" + partNumber++ ) );
+            parts.add( ChunkEntry.range( path, name, offset, Math.min( sizePerPart, size - offset ), size,
+                    lastModified ) );
+        }
+        return parts;
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.danielgomez.archiver;
 
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
 
 /**
  * Contains configuration for compression
@@ -11,9 +13,71 @@ public class CompressionOptions extends IOOptions {
 
     private long maxFileSize;
 
+    private ChunkPlanner chunkPlanner;
+
+    private boolean parallelDeflate;
+
+    private int compressionLevel;
+
+    private CompressionPolicy compressionPolicy;
+
+    private boolean splitOnOutputSize;
+
+    private boolean incremental;
+
+    private long memoryMapThreshold;
+
+    private boolean deduplicate;
+
+    private boolean resume;
+
+    private int solidBlockSize;
+
+    private boolean presetDictionary;
+
     public CompressionOptions( Path input, Path output, int bufferSize, long maxFileSize ) {
-        super( input, output, bufferSize );
+        this( input, output, bufferSize, maxFileSize, ChunkPlanner.sequential(), false, Deflater.DEFAULT_COMPRESSION,
+                CompressionPolicy.always(), false, false, -1, false, false, 0, false, null, 0, false,
+                ArchiveListener.NONE );
+    }
+
+    /**
+     * Takes every option, see {@link CompressionOptionsBuilder}. It grows with each new option, so it is not public.
+     */
+    CompressionOptions( Path input, Path output, int bufferSize, long maxFileSize, ChunkPlanner chunkPlanner,
+            boolean parallelDeflate, int compressionLevel, CompressionPolicy compressionPolicy,
+            boolean splitOnOutputSize, boolean incremental, long memoryMapThreshold, boolean deduplicate,
+            boolean resume, int solidBlockSize, boolean presetDictionary, Executor executor, int parallelism,
+            boolean virtualThreads, ArchiveListener listener ) {
+        super( input, output, bufferSize, executor, parallelism, virtualThreads, listener );
         this.maxFileSize = maxFileSize;
+        this.chunkPlanner = chunkPlanner;
+        this.parallelDeflate = parallelDeflate;
+        this.compressionLevel = compressionLevel;
+        this.compressionPolicy = compressionPolicy;
+        this.splitOnOutputSize = splitOnOutputSize;
+        this.incremental = incremental;
+        this.memoryMapThreshold = memoryMapThreshold;
+        this.deduplicate = deduplicate;
+        this.resume = resume;
+        this.solidBlockSize = solidBlockSize;
+        this.presetDictionary = presetDictionary;
+        if ( this.chunkPlanner == null )
+            throw new IllegalArgumentException( "Chunk planner must not be null" );
+        // The best level depends on the archiver, which checks it
+        if ( this.compressionLevel < Deflater.DEFAULT_COMPRESSION )
+            throw new IllegalArgumentException( "Compression level must not be below -1" );
+        if ( this.compressionPolicy == null )
+            throw new IllegalArgumentException( "Compression policy must not be null" );
+        if ( this.resume && ( this.incremental || this.splitOnOutputSize && this.maxFileSize > 0 ) )
+            throw new IllegalArgumentException(
+                    "Resuming must not be used together with incremental compression or splitting on output size" );
+        if ( this.solidBlockSize > 0 && ( this.incremental || this.splitOnOutputSize && this.maxFileSize > 0 ) )
+            throw new IllegalArgumentException( "Solid blocks must not be used together with incremental compression "
+                    + "or splitting on output size" );
+        if ( this.presetDictionary && this.incremental )
+            throw new IllegalArgumentException( "A preset dictionary must not be used together with incremental "
+                    + "compression" );
     }
 
     /**
@@ -23,4 +87,101 @@ public class CompressionOptions extends IOOptions {
         return this.maxFileSize;
     }
 
+    /**
+     * @return The strategy that groups input files into compression outputs. Never null.
+     */
+    public ChunkPlanner getChunkPlanner() {
+        return chunkPlanner;
+    }
+
+    /**
+     * @return true if files of a single compression output should be deflated in parallel blocks. Has no effect when
+     * there are multiple outputs since those are already written in parallel.
+     */
+    public boolean isParallelDeflate() {
+        return parallelDeflate;
+    }
+
+    /**
+     * @return The compression level, from 0 (no compression) to 9 (best compression) for deflate and up to 22 for
+     * {@link ZstdArchiver}. Value -1 means the default level.
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @return The policy that decides which files are deflated and which are stored as is. Never null.
+     */
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+
+    /**
+     * @return true if the maximum file size applies to the compressed size of each output rather than to the size of
+     * its input files. Files are then split while being written, whenever the output is full, and the chunk planner is
+     * not used.
+     */
+    public boolean isSplitOnOutputSize() {
+        return splitOnOutputSize;
+    }
+
+    /**
+     * @return true if a manifest is kept next to the compression outputs so that files which did not change since the
+     * previous compression are copied from its outputs instead of being compressed again. Copied files keep the
+     * compression level and method they were written with.
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * @return The size (in bytes) from which files are read through memory mapped windows instead of read calls, which
+     * saves a system call per buffer on very large files. Value <= 0 means files are never mapped.
+     */
+    public long getMemoryMapThreshold() {
+        return memoryMapThreshold;
+    }
+
+    /**
+     * @return true if files with the same content as a file visited before them are left out of the outputs and
+     * listed in an index entry instead, from which decompression restores them as hard links or copies. Files of the
+     * same size are hashed to find them once the whole input is scanned.
+     */
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    /**
+     * @return true if the outputs that a failed resumable compression of the same input into the same directory
+     * finished are kept instead of being written again. A journal next to the outputs records each output once it is
+     * flushed to disk, with the entries it holds, and outputs are only kept if they still have the size and trailing
+     * bytes it records and would hold the same entries. Only compressions with this set keep a journal, so the run
+     * that fails must have it set too.
+     */
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * @return The size (in bytes) of the solid blocks that small files are packed into, see {@link SolidBlocks}. Files
+     * of at most a sixteenth of this size cost no entry of their own and deflate with the files before them as context,
+     * while extracting one of them inflates its whole block. Blocks are always deflated, whatever the compression
+     * policy. Value <= 0 means files are not packed.
+     */
+    public int getSolidBlockSize() {
+        return solidBlockSize;
+    }
+
+    /**
+     * @return true if small files are sampled while scanning to build a preset dictionary, see
+     * {@link PresetDictionary}, which every output stores once and deflates its entries with. Files much alike, like
+     * documents sharing a structure, then compress well even though each entry starts a new deflate stream. Outputs
+     * with a dictionary can only be decompressed by this library. {@link ZstdArchiver} trains a zstd dictionary from
+     * the small files instead, see {@link ZstdArchiver#ZstdArchiver(int)}.
+     */
+    public boolean isPresetDictionary() {
+        return presetDictionary;
+    }
+
 }
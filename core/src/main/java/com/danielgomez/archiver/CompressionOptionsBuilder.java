@@ -1,5 +1,7 @@
 package com.danielgomez.archiver;
 
+import java.util.zip.Deflater;
+
 /**
  * Fluent interface for building {@link CompressionOptions}
  */
@@ -9,6 +11,28 @@ public class CompressionOptionsBuilder extends IOOptionsBuilder<CompressionOptio
 
     private long maxFileSize = -1;
 
+    private ChunkPlanner chunkPlanner = ChunkPlanner.sequential();
+
+    private boolean parallelDeflate = false;
+
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    private CompressionPolicy compressionPolicy = CompressionPolicy.always();
+
+    private boolean splitOnOutputSize = false;
+
+    private boolean incremental = false;
+
+    private long memoryMapThreshold = -1;
+
+    private boolean deduplicate = false;
+
+    private boolean resume = false;
+
+    private int solidBlockSize = 0;
+
+    private boolean presetDictionary = false;
+
     private CompressionOptionsBuilder() { super();}
 
     public static CompressionOptionsBuilder create() {
@@ -25,9 +49,67 @@ public class CompressionOptionsBuilder extends IOOptionsBuilder<CompressionOptio
         return this;
     }
 
+    public CompressionOptionsBuilder chunkPlanner( ChunkPlanner chunkPlanner ) {
+        this.chunkPlanner = chunkPlanner;
+        return this;
+    }
+
+    public CompressionOptionsBuilder parallelDeflate( boolean parallelDeflate ) {
+        this.parallelDeflate = parallelDeflate;
+        return this;
+    }
+
+    public CompressionOptionsBuilder compressionLevel( int compressionLevel ) {
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public CompressionOptionsBuilder compressionPolicy( CompressionPolicy compressionPolicy ) {
+        this.compressionPolicy = compressionPolicy;
+        return this;
+    }
+
+    public CompressionOptionsBuilder splitOnOutputSize( boolean splitOnOutputSize ) {
+        this.splitOnOutputSize = splitOnOutputSize;
+        return this;
+    }
+
+    public CompressionOptionsBuilder incremental( boolean incremental ) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    public CompressionOptionsBuilder memoryMapThreshold( long memoryMapThreshold ) {
+        this.memoryMapThreshold = memoryMapThreshold;
+        return this;
+    }
+
+    public CompressionOptionsBuilder deduplicate( boolean deduplicate ) {
+        this.deduplicate = deduplicate;
+        return this;
+    }
+
+    public CompressionOptionsBuilder resume( boolean resume ) {
+        this.resume = resume;
+        return this;
+    }
+
+    public CompressionOptionsBuilder solidBlockSize( int solidBlockSize ) {
+        this.solidBlockSize = solidBlockSize;
+        return this;
+    }
+
+    public CompressionOptionsBuilder presetDictionary( boolean presetDictionary ) {
+        this.presetDictionary = presetDictionary;
+        return this;
+    }
+
     @Override
     public CompressionOptions build() {
-        return new CompressionOptions( input, output, bufferSize, maxFileSize );
+        return new CompressionOptions( input, output, bufferSize, maxFileSize, chunkPlanner, parallelDeflate,
+                compressionLevel, compressionPolicy, splitOnOutputSize,
+                incremental, memoryMapThreshold, deduplicate, resume, solidBlockSize, presetDictionary, executor,
+                parallelism, virtualThreads, listener );
     }
 
 }
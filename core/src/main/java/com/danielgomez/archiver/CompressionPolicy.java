@@ -0,0 +1,32 @@
+package com.danielgomez.archiver;
+
+import java.io.IOException;
+
+/**
+ * Decides whether an entry is worth deflating. Entries that are not are written as stored entries, which saves the
+ * CPU time of deflating data that would shrink by almost nothing, like images, videos or already compressed files.
+ */
+public interface CompressionPolicy {
+
+    /**
+     * @param entry the file or piece of a file to write
+     * @return true to deflate the entry, false to store it as is
+     * @throws IOException when the entry cannot be inspected
+     */
+    boolean shouldDeflate( ChunkEntry entry ) throws IOException;
+
+    /**
+     * @return a policy that deflates every entry
+     */
+    static CompressionPolicy always() {
+        return entry -> true;
+    }
+
+    /**
+     * @return a policy that stores files with a known compressed format extension and files whose first few kilobytes
+     * look random
+     */
+    static CompressionPolicy adaptive() {
+        return new AdaptiveCompressionPolicy();
+    }
+}
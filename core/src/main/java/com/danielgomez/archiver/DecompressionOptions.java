@@ -1,6 +1,7 @@
 package com.danielgomez.archiver;
 
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
 
 /**
  * Contains configuration for decompression
@@ -9,7 +10,28 @@ import java.nio.file.Path;
  */
 public class DecompressionOptions extends IOOptions {
 
+    private boolean parallel;
+
     protected DecompressionOptions( Path input, Path output, int bufferSize ) {
-        super( input, output, bufferSize );
+        this( input, output, bufferSize, false, null, 0, false, ArchiveListener.NONE );
+    }
+
+    /**
+     * Takes every option, see {@link DecompressionOptionsBuilder}. It grows with each new option, so it is not
+     * public.
+     */
+    DecompressionOptions( Path input, Path output, int bufferSize, boolean parallel, Executor executor,
+            int parallelism, boolean virtualThreads, ArchiveListener listener ) {
+        super( input, output, bufferSize, executor, parallelism, virtualThreads, listener );
+        this.parallel = parallel;
+    }
+
+    /**
+     * @return true if entries should be extracted concurrently, even those of a single zip file. The directory tree is
+     * created up front from the central directories and pieces of a split file are written directly to their final
+     * position instead of being appended one after another.
+     */
+    public boolean isParallel() {
+        return parallel;
     }
 }
@@ -5,15 +5,23 @@ package com.danielgomez.archiver;
  */
 public class DecompressionOptionsBuilder extends IOOptionsBuilder<DecompressionOptionsBuilder> {
 
+    private boolean parallel = false;
+
     private DecompressionOptionsBuilder() { super();}
 
     public static DecompressionOptionsBuilder create() {
         return new DecompressionOptionsBuilder();
     }
 
+    public DecompressionOptionsBuilder parallel( boolean parallel ) {
+        this.parallel = parallel;
+        return this;
+    }
+
     @Override
     public DecompressionOptions build() {
-        return new DecompressionOptions( input, output, bufferSize );
+        return new DecompressionOptions( input, output, bufferSize, parallel, executor, parallelism, virtualThreads,
+                listener );
     }
 
 }
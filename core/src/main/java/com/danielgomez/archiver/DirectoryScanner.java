@@ -0,0 +1,198 @@
+package com.danielgomez.archiver;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Walks a directory tree like {@link Files#walkFileTree(Path, FileVisitor)}, but lists directories and reads the
+ * attributes of their children in parallel on a fork/join pool. Subdirectories are listed concurrently and large
+ * directories have their attributes read in batches, which matters on network file systems where each call waits on
+ * a round trip.
+ * <p>
+ * The visitor itself is called from the calling thread, depth first with the children of each directory in name
+ * order. The visiting order therefore only depends on the tree, not on the order in which the file system lists
+ * directories or in which listings finish. Like the default walk, symbolic links are not followed and are visited with
+ * their own attributes.
+ * <p>
+ * Visiting starts as soon as the first directory is listed. While the children of a directory are visited, at most
+ * {@link #LOOKAHEAD} of its subdirectories are listed ahead, so the scan never holds more than a few listings per
+ * level of the tree however large the tree is, and a slow visitor slows the scan down instead of piling up listings.
+ */
+final class DirectoryScanner {
+
+    /**
+     * Most children whose attributes are read by one task
+     */
+    private static final int ATTRIBUTES_BATCH = 256;
+
+    /**
+     * Most subdirectories of a directory listed before they are visited
+     */
+    private static final int LOOKAHEAD = 16;
+
+    private static final Comparator<Node> NAME_ORDER = Comparator.comparing( node -> node.path.getFileName()
+            .toString() );
+
+    private DirectoryScanner() {}
+
+    /**
+     * Scans a directory tree on a pool and visits it
+     *
+     * @param start   the directory to walk
+     * @param visitor called for every directory and file of the tree
+     * @param pool    where directories are listed, see {@link Workers#getForkJoinPool()}
+     * @throws IOException when a directory cannot be listed or an attribute cannot be read, or thrown by the visitor
+     */
+    static void walk( Path start, FileVisitor<? super Path> visitor, ForkJoinPool pool ) throws IOException {
+        Node root = new Node( start, Files.readAttributes( start, BasicFileAttributes.class ) );
+        visit( root, list( root, pool ), visitor, pool );
+    }
+
+    private static ListTask list( Node directory, ForkJoinPool pool ) {
+        ListTask task = new ListTask( directory );
+        pool.execute( task );
+        return task;
+    }
+
+    private static FileVisitResult visit( Node directory, ListTask listing, FileVisitor<? super Path> visitor,
+            ForkJoinPool pool ) throws IOException {
+        FileVisitResult result = visitor.preVisitDirectory( directory.path, directory.attributes );
+        if ( result != FileVisitResult.CONTINUE ) {
+            listing.cancel( false );
+            return result == FileVisitResult.SKIP_SUBTREE ? FileVisitResult.CONTINUE : result;
+        }
+        List<Node> children;
+        try {
+            children = listing.join();
+        } catch ( UncheckedIOException e ) {
+            throw e.getCause();
+        }
+
+        ListTask[] listings = new ListTask[children.size()];
+        int listed = 0;
+        int ahead = 0;
+        try {
+            for ( int i = 0; i < children.size(); i++ ) {
+                for ( ; listed < children.size() && ahead < LOOKAHEAD; listed++ ) {
+                    if ( children.get( listed ).attributes.isDirectory() ) {
+                        listings[listed] = list( children.get( listed ), pool );
+                        ahead++;
+                    }
+                }
+                Node child = children.get( i );
+                if ( child.attributes.isDirectory() ) {
+                    ahead--;
+                    result = visit( child, listings[i], visitor, pool );
+                    listings[i] = null;
+                } else {
+                    result = visitor.visitFile( child.path, child.attributes );
+                }
+                if ( result == FileVisitResult.TERMINATE )
+                    return result;
+                if ( result == FileVisitResult.SKIP_SIBLINGS )
+                    break;
+            }
+        } finally {
+            // Listings ahead of an early exit are not needed anymore
+            for ( ListTask task : listings ) {
+                if ( task != null )
+                    task.cancel( false );
+            }
+        }
+        return visitor.postVisitDirectory( directory.path, null );
+    }
+
+    /**
+     * A directory or file of the tree. Attributes are read by the task listing the parent directory.
+     */
+    private static class Node {
+
+        private final Path path;
+
+        private BasicFileAttributes attributes;
+
+        private Node( Path path, BasicFileAttributes attributes ) {
+            this.path = path;
+            this.attributes = attributes;
+        }
+    }
+
+    /**
+     * Lists a directory and reads the attributes of its children
+     */
+    private static class ListTask extends RecursiveTask<List<Node>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Node directory;
+
+        private ListTask( Node directory ) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected List<Node> compute() {
+            List<Node> children = new ArrayList<>();
+            try ( DirectoryStream<Path> stream = Files.newDirectoryStream( directory.path ) ) {
+                for ( Path child : stream )
+                    children.add( new Node( child, null ) );
+            } catch ( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+            children.sort( NAME_ORDER );
+            new AttributesTask( children, 0, children.size() ).invoke();
+            return children;
+        }
+    }
+
+    /**
+     * Reads the attributes of a range of children, splitting the range until it is small enough
+     */
+    private static class AttributesTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<Node> nodes;
+
+        private final int from;
+
+        private final int to;
+
+        private AttributesTask( List<Node> nodes, int from, int to ) {
+            this.nodes = nodes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ( to - from > ATTRIBUTES_BATCH ) {
+                int middle = ( from + to ) >>> 1;
+                invokeAll( new AttributesTask( nodes, from, middle ), new AttributesTask( nodes, middle, to ) );
+                return;
+            }
+            try {
+                for ( int i = from; i < to; i++ ) {
+                    Node node = nodes.get( i );
+                    node.attributes = Files.readAttributes( node.path, BasicFileAttributes.class, NOFOLLOW_LINKS );
+                }
+            } catch ( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.danielgomez.archiver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Files of an archive whose content is the same as a file visited before them. Only that first file is compressed;
+ * the others are listed in an index entry named {@link #INDEX_NAME}, one line per duplicate holding its name and the
+ * name of the file with its content, separated by a tab and escaped like the names of a {@link Manifest}.
+ * <p>
+ * Files are first grouped by size, which is already known from the scan, and only files sharing their size with
+ * another file are hashed with SHA-256, in parallel.
+ */
+final class Duplicates {
+
+    private static Logger LOGGER = LoggerFactory.getLogger( Duplicates.class );
+
+    /**
+     * Name of the index entry, at the root of the archive
+     */
+    static final String INDEX_NAME = ".archiver-duplicates";
+
+    private static final String HEADER = "# archiver duplicates 2";
+
+    /**
+     * Header of indexes written before names were escaped, which are still read
+     */
+    private static final String UNESCAPED_HEADER = "# archiver duplicates 1";
+
+    private final Map<String, String> originals = new LinkedHashMap<>();
+
+    /**
+     * Leaves out the files of a list of entries that duplicate a file before them and adds the index of those files
+     * at the end
+     *
+     * @param entries entries in visiting order
+     * @param options compression options, whose input the names are relative to
+     * @param workers where files are hashed
+     * @return the entries without duplicates, the same list if there are none
+     * @throws IOException when a file cannot be read
+     */
+    static List<ChunkEntry> remove( List<ChunkEntry> entries, CompressionOptions options, Workers workers )
+            throws IOException {
+        Map<Path, Long> sizes = new LinkedHashMap<>();
+        for ( ChunkEntry entry : entries ) {
+            if ( !entry.isDirectory() && entry.getContent() == null )
+                sizes.merge( entry.getSource(), entry.getLength(), Long::sum );
+        }
+        Map<Long, List<Path>> sameSize = new HashMap<>();
+        sizes.forEach( ( path, size ) -> {
+            if ( size > 0 )
+                sameSize.computeIfAbsent( size, key -> new ArrayList<>() ).add( path );
+        } );
+        List<Path> candidates = sameSize.values().stream()
+                .filter( paths -> paths.size() > 1 )
+                .flatMap( List::stream )
+                .collect( Collectors.toList() );
+        if ( candidates.isEmpty() )
+            return entries;
+
+        Map<Path, String> hashes = new ConcurrentHashMap<>();
+        workers.forEach( candidates.size(), i -> hashes.put( candidates.get( i ), hash( candidates.get( i ),
+                options ) ) );
+
+        Duplicates duplicates = new Duplicates();
+        Map<String, Path> firsts = new HashMap<>();
+        for ( Map.Entry<Path, Long> file : sizes.entrySet() ) {
+            String hash = hashes.get( file.getKey() );
+            if ( hash == null )
+                continue;
+            Path first = firsts.putIfAbsent( file.getValue() + "/" + hash, file.getKey() );
+            if ( first != null )
+                duplicates.originals.put( nameOf( file.getKey(), options ), nameOf( first, options ) );
+        }
+        if ( duplicates.originals.isEmpty() )
+            return entries;
+
+        List<ChunkEntry> kept = new ArrayList<>();
+        for ( ChunkEntry entry : entries ) {
+            if ( entry.isDirectory() || entry.getContent() != null
+                    || !duplicates.originals.containsKey( nameOf( entry.getSource(), options ) ) )
+                kept.add( entry );
+        }
+        kept.add( ChunkEntry.content( INDEX_NAME, duplicates.format() ) );
+        LOGGER.debug( "Found {} duplicate files out of {} hashed", duplicates.originals.size(), candidates.size() );
+        return kept;
+    }
+
+    private static String nameOf( Path path, CompressionOptions options ) {
+        return options.getInput().relativize( path ).toString();
+    }
+
+    private static String hash( Path path, CompressionOptions options ) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance( "SHA-256" );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException( "SHA-256 is not available", e );
+        }
+        int bufferSize = options.getBufferSize();
+        byte[] buffer = Buffers.input( bufferSize );
+        try ( SourceReader reader = SourceReader.open( path, options ) ) {
+            long position = 0;
+            int read;
+            while ( ( read = reader.read( buffer, 0, bufferSize, position ) ) >= 0 ) {
+                digest.update( buffer, 0, read );
+                position += read;
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for ( byte b : digest.digest() )
+            hex.append( String.format( "%02x", b ) );
+        return hex.toString();
+    }
+
+    private byte[] format() {
+        StringBuilder index = new StringBuilder( HEADER ).append( '\n' );
+        originals.forEach( ( duplicate, original ) -> index.append( Manifest.escape( duplicate ) ).append( '\t' )
+                .append( Manifest.escape( original ) ).append( '\n' ) );
+        return index.toString().getBytes( StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Adds the duplicates listed in an index entry
+     *
+     * @param in the content of the index entry, read until its end and left open
+     */
+    synchronized void read( InputStream in ) throws IOException {
+        BufferedReader reader = new BufferedReader( new InputStreamReader( in, StandardCharsets.UTF_8 ) );
+        String header = reader.readLine();
+        boolean escaped = HEADER.equals( header );
+        if ( !escaped && !UNESCAPED_HEADER.equals( header ) )
+            throw new IOException( "Entry '" + INDEX_NAME + "' is not an index of duplicates" );
+        String line;
+        while ( ( line = reader.readLine() ) != null ) {
+            if ( line.isEmpty() )
+                continue;
+            String[] fields = line.split( "\t", -1 );
+            if ( fields.length != 2 )
+                throw new IOException( "Invalid duplicate index line '" + line + "'" );
+            originals.put( escaped ? Manifest.unescape( fields[0] ) : fields[0],
+                    escaped ? Manifest.unescape( fields[1] ) : fields[1] );
+        }
+    }
+
+    /**
+     * @return the name of the file with the content of each duplicate, by name of the duplicate
+     */
+    synchronized Map<String, String> getOriginals() {
+        return Collections.unmodifiableMap( new LinkedHashMap<>( originals ) );
+    }
+
+    /**
+     * @return the duplicates whose name is accepted by a filter
+     */
+    synchronized Duplicates filter( Predicate<String> names ) {
+        Duplicates filtered = new Duplicates();
+        originals.forEach( ( duplicate, original ) -> {
+            if ( names.test( duplicate ) )
+                filtered.originals.put( duplicate, original );
+        } );
+        return filtered;
+    }
+
+    /**
+     * Recreates the duplicates from their extracted originals, as hard links when the file system supports them and
+     * as copies otherwise
+     *
+     * @param outputDir where the originals were extracted
+     */
+    synchronized void restore( Path outputDir ) throws IOException {
+        for ( Map.Entry<String, String> duplicate : originals.entrySet() ) {
+            Path link = outputDir.resolve( duplicate.getKey() );
+            Path original = outputDir.resolve( duplicate.getValue() );
+            Files.createDirectories( link.getParent() );
+            Files.deleteIfExists( link );
+            try {
+                Files.createLink( link, original );
+            } catch ( UnsupportedOperationException | FileSystemException e ) {
+                LOGGER.trace( "Unable to link '{}' to '{}', copying it", link, original, e );
+                Files.copy( original, link );
+            }
+        }
+        LOGGER.debug( "Restored {} duplicate files", originals.size() );
+    }
+}
@@ -0,0 +1,40 @@
+package com.danielgomez.archiver;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Contains configuration for extracting selected files of compressed files
+ * <p>
+ * See {@link ExtractionOptionsBuilder} for fluent building
+ */
+public class ExtractionOptions extends IOOptions {
+
+    private List<String> patterns;
+
+    protected ExtractionOptions( Path input, Path output, int bufferSize, List<String> patterns ) {
+        this( input, output, bufferSize, patterns, null, 0, false, ArchiveListener.NONE );
+    }
+
+    /**
+     * Takes every option, see {@link ExtractionOptionsBuilder}. It grows with each new option, so it is not public.
+     */
+    ExtractionOptions( Path input, Path output, int bufferSize, List<String> patterns, Executor executor,
+            int parallelism, boolean virtualThreads, ArchiveListener listener ) {
+        super( input, output, bufferSize, executor, parallelism, virtualThreads, listener );
+        this.patterns = Collections.unmodifiableList( new ArrayList<>( patterns ) );
+        if ( this.patterns.isEmpty() )
+            throw new IllegalArgumentException( "At least one pattern is required" );
+    }
+
+    /**
+     * @return Glob patterns, see {@link java.nio.file.FileSystem#getPathMatcher(String)}, of the paths to extract
+     * relative to the compressed directory. A file is extracted if any of the patterns matches. Never empty.
+     */
+    public List<String> getPatterns() {
+        return patterns;
+    }
+}
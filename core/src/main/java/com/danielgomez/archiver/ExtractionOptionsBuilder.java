@@ -0,0 +1,36 @@
+package com.danielgomez.archiver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fluent interface for building {@link ExtractionOptions}
+ */
+public class ExtractionOptionsBuilder extends IOOptionsBuilder<ExtractionOptionsBuilder> {
+
+    private List<String> patterns = new ArrayList<>();
+
+    private ExtractionOptionsBuilder() { super();}
+
+    public static ExtractionOptionsBuilder create() {
+        return new ExtractionOptionsBuilder();
+    }
+
+    public ExtractionOptionsBuilder pattern( String... patterns ) {
+        this.patterns.addAll( Arrays.asList( patterns ) );
+        return this;
+    }
+
+    public ExtractionOptionsBuilder patterns( List<String> patterns ) {
+        this.patterns.addAll( patterns );
+        return this;
+    }
+
+    @Override
+    public ExtractionOptions build() {
+        return new ExtractionOptions( input, output, bufferSize, patterns, executor, parallelism, virtualThreads,
+                listener );
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.danielgomez.archiver;
 
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
 
 /**
  * Basic archiving options
@@ -15,12 +16,40 @@ public class IOOptions implements Options {
 
     private int bufferSize;
 
+    private Executor executor;
+
+    private int parallelism;
+
+    private boolean virtualThreads;
+
+    private ArchiveListener listener;
+
     protected IOOptions( Path input, Path output, int bufferSize ) {
+        this( input, output, bufferSize, null, 0, false, ArchiveListener.NONE );
+    }
+
+    /**
+     * Takes every option, see {@link IOOptionsBuilder}. It grows with each new option, so it is not public.
+     */
+    IOOptions( Path input, Path output, int bufferSize, Executor executor, int parallelism,
+            boolean virtualThreads, ArchiveListener listener ) {
         this.input = input;
         this.output = output;
         this.bufferSize = bufferSize;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.virtualThreads = virtualThreads;
+        this.listener = listener;
         if ( this.bufferSize <= 0 )
             throw new IllegalArgumentException( "Buffer size must not be <= 0" );
+        if ( this.parallelism < 0 )
+            throw new IllegalArgumentException( "Parallelism must not be < 0" );
+        if ( this.virtualThreads && this.executor != null )
+            throw new IllegalArgumentException( "Virtual threads and an executor must not be used together" );
+        if ( this.virtualThreads && !Workers.hasVirtualThreads() )
+            throw new IllegalArgumentException( "Virtual threads require Java 21 or later" );
+        if ( this.listener == null )
+            throw new IllegalArgumentException( "Listener must not be null" );
     }
 
     /**
@@ -43,4 +72,36 @@ public class IOOptions implements Options {
     public int getBufferSize() {
         return bufferSize;
     }
+
+    /**
+     * @return The executor running the parallel work of an archive operation, like writing or reading compressed files
+     * at the same time. Value null means the common pool, or a pool of {@link #getParallelism()} threads created for
+     * the operation if a parallelism is set.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return How many tasks of an archive operation run at the same time, which also bounds the work held in memory.
+     * Value 0 means the parallelism of the executor, or of the common pool without executor.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return true if every task of an archive operation, like writing a compressed file, runs on a virtual thread of
+     * its own. Requires Java 21 or later.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return The listener notified of the progress of an archive operation. Never null.
+     */
+    public ArchiveListener getListener() {
+        return listener;
+    }
 }
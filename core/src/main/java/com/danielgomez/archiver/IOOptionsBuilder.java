@@ -1,6 +1,7 @@
 package com.danielgomez.archiver;
 
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
 
 /**
  * Fluent interface for building {@link IOOptions}
@@ -13,6 +14,14 @@ public class IOOptionsBuilder<T extends IOOptionsBuilder<T>> {
 
     protected int bufferSize = 1024;
 
+    protected Executor executor;
+
+    protected int parallelism = 0;
+
+    protected boolean virtualThreads = false;
+
+    protected ArchiveListener listener = ArchiveListener.NONE;
+
     protected IOOptionsBuilder() {}
 
     public static IOOptionsBuilder<?> create() { return new IOOptionsBuilder<>(); }
@@ -32,5 +41,27 @@ public class IOOptionsBuilder<T extends IOOptionsBuilder<T>> {
         return ( T ) this;
     }
 
-    public IOOptions build() { return new IOOptions( input, output, bufferSize ); }
+    public T executor( Executor executor ) {
+        this.executor = executor;
+        return ( T ) this;
+    }
+
+    public T parallelism( int parallelism ) {
+        this.parallelism = parallelism;
+        return ( T ) this;
+    }
+
+    public T virtualThreads( boolean virtualThreads ) {
+        this.virtualThreads = virtualThreads;
+        return ( T ) this;
+    }
+
+    public T listener( ArchiveListener listener ) {
+        this.listener = listener;
+        return ( T ) this;
+    }
+
+    public IOOptions build() {
+        return new IOOptions( input, output, bufferSize, executor, parallelism, virtualThreads, listener );
+    }
 }
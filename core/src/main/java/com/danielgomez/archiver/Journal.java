@@ -0,0 +1,256 @@
+package com.danielgomez.archiver;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the zip files a compression has finished, so that a failed compression can be resumed without writing them
+ * again, see {@link CompressionOptions#isResume()}. Each line holds the name of a zip file, a hash of the entries it
+ * was planned with, its size and the CRC-32 of its trailing bytes, which hold the end of its central directory. Fields
+ * are separated by tabs.
+ * <p>
+ * A zip file is flushed to disk before it is recorded and each record is flushed to disk as it is written, so a
+ * record is never found for a zip file that is not complete on disk. Since that costs a sync per zip file, the journal
+ * is only kept by compressions that ask to be resumable.
+ */
+final class Journal implements Closeable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger( Journal.class );
+
+    private static final String HEADER = "# archiver journal 1";
+
+    /**
+     * Trailing bytes of a zip file covered by the CRC-32 of its record
+     */
+    private static final int TRAILER_SIZE = 64 * 1024;
+
+    private final Path file;
+
+    private final Map<String, Record> previous;
+
+    private final FileChannel channel;
+
+    private Journal( Path file, Map<String, Record> previous, FileChannel channel ) {
+        this.file = file;
+        this.previous = previous;
+        this.channel = channel;
+    }
+
+    /**
+     * Reads the records of the compression being resumed, if any, and starts the journal of this one over them
+     *
+     * @param file the journal, which is kept next to the zip files
+     * @throws IOException when reading or writing fails
+     */
+    static Journal open( Path file ) throws IOException {
+        Map<String, Record> previous = read( file );
+        FileChannel channel = FileChannel.open( file, CREATE, WRITE, TRUNCATE_EXISTING );
+        Journal journal = new Journal( file, previous, channel );
+        try {
+            journal.append( HEADER );
+        } catch ( IOException | RuntimeException e ) {
+            channel.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    private static Map<String, Record> read( Path file ) throws IOException {
+        Map<String, Record> records = new HashMap<>();
+        if ( Files.notExists( file ) )
+            return records;
+        try ( BufferedReader reader = Files.newBufferedReader( file, StandardCharsets.UTF_8 ) ) {
+            if ( !HEADER.equals( reader.readLine() ) ) {
+                LOGGER.warn( "Ignoring '{}' since it is not a journal", file );
+                return records;
+            }
+            String line;
+            while ( ( line = reader.readLine() ) != null ) {
+                // The last line may have been cut short by the failure
+                Record record = Record.parse( line );
+                if ( record != null )
+                    records.put( record.part, record );
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Checks a zip file against the record of the compression being resumed, recording it again if it is kept
+     *
+     * @param part the name of the zip file
+     * @param plan the hash of the entries the zip file is to hold, see {@link #plan(List, String)}
+     * @return the size of the zip file if the compression being resumed finished it with the same entries and it still
+     * has the size and trailing bytes it had back then, -1 if it has to be written again
+     * @throws IOException when reading or writing fails
+     */
+    long written( String part, String plan ) throws IOException {
+        Record record = previous.get( part );
+        Path zip = file.resolveSibling( part );
+        if ( record == null || !record.plan.equals( plan ) || Files.notExists( zip ) )
+            return -1;
+        try ( FileChannel zipChannel = FileChannel.open( zip, READ ) ) {
+            if ( zipChannel.size() != record.size || trailerCrc( zipChannel ) != record.crc ) {
+                LOGGER.debug( "Writing '{}' again since it changed after it was finished", part );
+                return -1;
+            }
+        }
+        append( record.format() );
+        return record.size;
+    }
+
+    /**
+     * Flushes a written zip file to disk and records it
+     *
+     * @param part the name of the zip file
+     * @param plan the hash of the entries it holds, see {@link #plan(List, String)}
+     * @throws IOException when reading or writing fails
+     */
+    void finished( String part, String plan ) throws IOException {
+        Record record;
+        try ( FileChannel zipChannel = FileChannel.open( file.resolveSibling( part ), READ, WRITE ) ) {
+            zipChannel.force( true );
+            record = new Record( part, plan, zipChannel.size(), trailerCrc( zipChannel ) );
+        }
+        append( record.format() );
+    }
+
+    /**
+     * Hashes what a zip file is planned to hold: its comment, the names and byte ranges of its entries, and the size
+     * and last modified time their files had when they were visited so that a file changed since does not go
+     * unnoticed. Nothing is read from the files.
+     *
+     * @param entries the entries of the zip file
+     * @param comment the comment of the zip file, which tells whether it is the last one
+     * @return the hash in hex
+     */
+    static String plan( List<ChunkEntry> entries, String comment ) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance( "SHA-256" );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException( "SHA-256 is not available", e );
+        }
+        DataOutputStream out = new DataOutputStream( new DigestOutputStream( ZipArchiver.NULL_OUTPUT, digest ) );
+        out.writeUTF( comment );
+        for ( ChunkEntry entry : entries )
+            hash( entry, out );
+        StringBuilder hex = new StringBuilder();
+        for ( byte b : digest.digest() )
+            hex.append( String.format( "%02x", b ) );
+        return hex.toString();
+    }
+
+    private static void hash( ChunkEntry entry, DataOutputStream out ) throws IOException {
+        byte[] name = entry.getName().getBytes( StandardCharsets.UTF_8 );
+        out.writeInt( name.length );
+        out.write( name );
+        out.writeBoolean( entry.isDirectory() );
+        out.writeLong( entry.getOffset() );
+        out.writeLong( entry.getLength() );
+        if ( entry.getContent() != null ) {
+            out.write( entry.getContent() );
+        } else if ( entry.getMembers() != null ) {
+            for ( ChunkEntry member : entry.getMembers() )
+                hash( member, out );
+        } else if ( !entry.isDirectory() ) {
+            out.writeLong( entry.getFileSize() );
+            out.writeLong( entry.getLastModified() );
+        }
+    }
+
+    private static long trailerCrc( FileChannel zipChannel ) throws IOException {
+        long size = zipChannel.size();
+        ByteBuffer trailer = ByteBuffer.allocate( ( int ) Math.min( size, TRAILER_SIZE ) );
+        long position = size - trailer.capacity();
+        while ( trailer.hasRemaining() ) {
+            if ( zipChannel.read( trailer, position + trailer.position() ) < 0 )
+                throw new IOException( "Unexpected end of file" );
+        }
+        CRC32 crc = new CRC32();
+        crc.update( trailer.array() );
+        return crc.getValue();
+    }
+
+    private synchronized void append( String line ) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap( ( line + '\n' ).getBytes( StandardCharsets.UTF_8 ) );
+        while ( bytes.hasRemaining() )
+            channel.write( bytes );
+        channel.force( false );
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Closes and deletes the journal once the compression succeeded, since there is nothing left to resume
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists( file );
+    }
+
+    /**
+     * A finished zip file
+     */
+    private static final class Record {
+
+        private final String part;
+
+        private final String plan;
+
+        private final long size;
+
+        private final long crc;
+
+        private Record( String part, String plan, long size, long crc ) {
+            this.part = part;
+            this.plan = plan;
+            this.size = size;
+            this.crc = crc;
+        }
+
+        private String format() {
+            return Manifest.escape( part ) + '\t' + plan + '\t' + size + '\t' + Long.toHexString( crc );
+        }
+
+        /**
+         * @return the record of a line, null if the line is not a complete record
+         */
+        private static Record parse( String line ) {
+            String[] fields = line.split( "\t", -1 );
+            if ( fields.length != 4 )
+                return null;
+            try {
+                return new Record( Manifest.unescape( fields[0] ), fields[1], Long.parseLong( fields[2] ),
+                        Long.parseLong( fields[3], 16 ) );
+            } catch ( NumberFormatException e ) {
+                return null;
+            }
+        }
+    }
+}
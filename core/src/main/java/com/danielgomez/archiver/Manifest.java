@@ -0,0 +1,232 @@
+package com.danielgomez.archiver;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lists what a compression wrote, one line per file entry, so that the next compression of the same input can reuse the
+ * entries of files that did not change. Each line holds the path of the source file, the name of the entry, the byte
+ * range of the file it holds, the size and last modified time the file had when it was read, the CRC-32 of the entry
+ * and the zip file that holds it. Fields are separated by tabs.
+ */
+final class Manifest {
+
+    private static Logger LOGGER = LoggerFactory.getLogger( Manifest.class );
+
+    private static final String HEADER = "# archiver manifest 1";
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private final Set<String> parts = new LinkedHashSet<>();
+
+    /**
+     * Reads a manifest and the central directories of the zip files it refers to. Entries whose zip file is gone or
+     * no longer holds them as listed are left out, so every entry of the result can be copied.
+     *
+     * @param file the manifest, which is looked for next to the zip files
+     * @return the manifest, empty if the file does not exist or is not a manifest
+     * @throws IOException when reading fails
+     */
+    static Manifest read( Path file ) throws IOException {
+        Manifest manifest = new Manifest();
+        if ( Files.notExists( file ) )
+            return manifest;
+        List<Entry> listed = new ArrayList<>();
+        try ( BufferedReader reader = Files.newBufferedReader( file, StandardCharsets.UTF_8 ) ) {
+            if ( !HEADER.equals( reader.readLine() ) ) {
+                LOGGER.warn( "Ignoring '{}' since it is not a manifest", file );
+                return manifest;
+            }
+            String line;
+            while ( ( line = reader.readLine() ) != null ) {
+                if ( !line.isEmpty() )
+                    listed.add( Entry.parse( line ) );
+            }
+        }
+
+        Map<String, Map<String, ZipCentralDirectory.Entry>> directories = new HashMap<>();
+        for ( Entry entry : listed ) {
+            manifest.parts.add( entry.part );
+            Path zip = file.resolveSibling( entry.part );
+            Map<String, ZipCentralDirectory.Entry> directory = directories.computeIfAbsent( entry.part,
+                    part -> readDirectory( zip ) );
+            ZipCentralDirectory.Entry zipEntry = directory.get( entry.name );
+            if ( zipEntry == null || zipEntry.getCrc() != entry.crc || zipEntry.getSize() != entry.length ) {
+                LOGGER.debug( "Entry '{}' is no longer in '{}'", entry.name, entry.part );
+                continue;
+            }
+            entry.zip = zip;
+            entry.zipEntry = zipEntry;
+            manifest.entries.put( entry.name, entry );
+        }
+        return manifest;
+    }
+
+    private static Map<String, ZipCentralDirectory.Entry> readDirectory( Path zip ) {
+        Map<String, ZipCentralDirectory.Entry> directory = new HashMap<>();
+        try {
+            for ( ZipCentralDirectory.Entry entry : ZipCentralDirectory.read( zip ) )
+                directory.put( entry.getName(), entry );
+        } catch ( IOException e ) {
+            LOGGER.debug( "Unable to read '{}'", zip, e );
+        }
+        return directory;
+    }
+
+    void add( Entry entry ) {
+        entries.put( entry.name, entry );
+        parts.add( entry.part );
+    }
+
+    /**
+     * @return the entry with the given name, null if there is none
+     */
+    Entry get( String name ) {
+        return entries.get( name );
+    }
+
+    Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    /**
+     * @return the names of all zip files listed, including those whose entries were left out
+     */
+    Set<String> getParts() {
+        return parts;
+    }
+
+    void write( Path file ) throws IOException {
+        List<Entry> sorted = new ArrayList<>( entries.values() );
+        sorted.sort( ( a, b ) -> a.name.compareTo( b.name ) );
+        try ( BufferedWriter writer = Files.newBufferedWriter( file, StandardCharsets.UTF_8 ) ) {
+            writer.write( HEADER );
+            writer.newLine();
+            for ( Entry entry : sorted ) {
+                writer.write( entry.format() );
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * A file entry of a previous compression
+     */
+    static final class Entry {
+
+        private final String path;
+
+        private final String name;
+
+        private final long offset;
+
+        private final long length;
+
+        private final long fileSize;
+
+        private final long lastModified;
+
+        private final long crc;
+
+        private final String part;
+
+        private Path zip;
+
+        private ZipCentralDirectory.Entry zipEntry;
+
+        Entry( String path, String name, long offset, long length, long fileSize, long lastModified, long crc,
+                String part ) {
+            this.path = path;
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+            this.crc = crc;
+            this.part = part;
+        }
+
+        /**
+         * @return true if this entry holds the same bytes of the same file as the given chunk entry, judging by the
+         * size and last modified time of the file
+         */
+        boolean matches( ChunkEntry entry, String path, long fileSize, long lastModified ) {
+            return this.path.equals( path ) && this.name.equals( entry.getName() ) && offset == entry.getOffset()
+                    && length == entry.getLength() && this.fileSize == fileSize && this.lastModified == lastModified;
+        }
+
+        /**
+         * @return The zip file that holds this entry
+         */
+        Path getZip() {
+            return zip;
+        }
+
+        /**
+         * @return How this entry is stored in its zip file
+         */
+        ZipCentralDirectory.Entry getZipEntry() {
+            return zipEntry;
+        }
+
+        private String format() {
+            return escape( path ) + '\t' + escape( name ) + '\t' + offset + '\t' + length + '\t' + fileSize + '\t'
+                    + lastModified + '\t' + Long.toHexString( crc ) + '\t' + escape( part );
+        }
+
+        private static Entry parse( String line ) throws IOException {
+            String[] fields = line.split( "\t", -1 );
+            if ( fields.length != 8 )
+                throw new IOException( "Invalid manifest line '" + line + "'" );
+            try {
+                return new Entry( unescape( fields[0] ), unescape( fields[1] ), Long.parseLong( fields[2] ),
+                        Long.parseLong( fields[3] ), Long.parseLong( fields[4] ), Long.parseLong( fields[5] ),
+                        Long.parseLong( fields[6], 16 ), unescape( fields[7] ) );
+            } catch ( NumberFormatException e ) {
+                throw new IOException( "Invalid manifest line '" + line + "'", e );
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Escapes the characters that would break a line apart
+     */
+    static String escape( String value ) {
+        return value.replace( "\\", "\\\\" ).replace( "\t", "\\t" ).replace( "\n", "\\n" ).replace( "\r", "\\r" );
+    }
+
+    static String unescape( String value ) {
+        if ( value.indexOf( '\\' ) < 0 )
+            return value;
+        StringBuilder builder = new StringBuilder( value.length() );
+        for ( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt( i );
+            if ( c == '\\' && i + 1 < value.length() ) {
+                char next = value.charAt( ++i );
+                builder.append( next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next );
+            } else {
+                builder.append( c );
+            }
+        }
+        return builder.toString();
+    }
+}
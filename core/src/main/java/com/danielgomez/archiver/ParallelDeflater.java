@@ -0,0 +1,330 @@
+package com.danielgomez.archiver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deflates the entries of a single zip file in parallel, the way pigz does for gzip.
+ * <p>
+ * Files are cut into blocks that are deflated independently on worker threads. Every block except the first of a file
+ * is primed with the 32 KB before it as preset dictionary, so the ratio stays close to deflating the file as a whole.
+ * Blocks end on a sync flush, which leaves them byte aligned, so a single writer can append them in order to form one
+ * deflate stream per entry. The CRC-32 of each block is computed by its worker and combined by the writer.
+ * <p>
+ * Entries that the {@link CompressionPolicy} chooses to store are a single task that only computes their CRC-32. The
+ * writer then copies them as is, checking the CRC-32 again, see {@link ZipArchiver#putStored}. Solid blocks are a
+ * single task too, reading and deflating all of their files, see {@link SolidBlocks}.
+ * <p>
+ * With a preset dictionary, see {@link PresetDictionary}, the first block of every entry is primed with it, and so
+ * are later blocks as long as the 32 KB before them still reach back into it.
+ * <p>
+ * Only a bounded number of blocks is in flight at any time, so memory use does not depend on the size of the input.
+ * <p>
+ * Blocks are cut from the size found by the scan, so a file that grows or shrinks while it is deflated fails the
+ * compression instead of being cut off or mixing old and new content.
+ */
+final class ParallelDeflater {
+
+    private static Logger LOGGER = LoggerFactory.getLogger( ParallelDeflater.class );
+
+    static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final CompressionOptions options;
+
+    private final int blockSize;
+
+    private final Executor executor;
+
+    private final int maxPendingBlocks;
+
+    ParallelDeflater( CompressionOptions options, Workers workers ) {
+        this( options, DEFAULT_BLOCK_SIZE, workers );
+    }
+
+    ParallelDeflater( CompressionOptions options, int blockSize, Workers workers ) {
+        this.options = options;
+        this.blockSize = blockSize;
+        this.executor = workers.getExecutor();
+        this.maxPendingBlocks = Math.max( 2, workers.getParallelism() * 2 );
+    }
+
+    /**
+     * Deflates entries and writes them to a zip in the given order
+     *
+     * @param entries    entries to write
+     * @param dictionary the preset dictionary every deflated entry starts with, null for none
+     * @param zip        the zip to write to
+     * @throws IOException when reading an entry or writing the zip fails
+     */
+    void write( List<ChunkEntry> entries, byte[] dictionary, ZipWriter zip ) throws IOException {
+        BlockSplitter blocks = new BlockSplitter( entries );
+        Deque<CompletableFuture<Block>> pending = new ArrayDeque<>();
+        long crc = 0;
+        long compressedSize = 0;
+        long size = 0;
+        try {
+            while ( blocks.hasNext() || !pending.isEmpty() ) {
+                while ( blocks.hasNext() && pending.size() < maxPendingBlocks ) {
+                    Block next = blocks.next();
+                    if ( next.entry.isDirectory() || next.entry.getContent() != null
+                            || next.entry.getPrevious() != null )
+                        pending.add( CompletableFuture.completedFuture( next ) );
+                    else if ( next.stored )
+                        pending.add( CompletableFuture.supplyAsync( () -> checksum( next ), executor ) );
+                    else
+                        pending.add( CompletableFuture.supplyAsync( () -> deflate( next, dictionary ), executor ) );
+                }
+
+                Block block = join( pending.poll() );
+                ChunkEntry entry = block.entry;
+                if ( entry.isDirectory() ) {
+                    zip.putDirectory( entry.getName() );
+                    LOGGER.debug( "Written directory={}/", entry.getName() );
+                    continue;
+                }
+                if ( entry.getContent() != null ) {
+                    zip.putContent( entry.getName(), entry.getContent() );
+                    continue;
+                }
+                if ( entry.getPrevious() != null ) {
+                    ZipArchiver.copyEntry( entry, zip );
+                    LOGGER.debug( "Copied file={}", entry );
+                    continue;
+                }
+                if ( block.stored ) {
+                    ZipArchiver.putStored( entry.getName(), entry.getSource(), entry.getOffset(), block.length,
+                            block.crc, zip, options );
+                    LOGGER.debug( "Stored file={}", entry );
+                    continue;
+                }
+                if ( block.first ) {
+                    zip.beginEntry( entry.getName() );
+                    crc = 0;
+                    compressedSize = 0;
+                    size = 0;
+                }
+                zip.write( block.compressed, 0, block.compressed.length );
+                crc = Checksums.combine( crc, block.crc, block.length );
+                compressedSize += block.compressed.length;
+                size += block.length;
+                if ( block.last ) {
+                    zip.endEntry( crc, compressedSize, size );
+                    LOGGER.debug( "Written file={}", entry );
+                }
+            }
+        } finally {
+            pending.forEach( future -> future.cancel( false ) );
+        }
+    }
+
+    private static Block join( CompletableFuture<Block> future ) throws IOException {
+        try {
+            return future.join();
+        } catch ( CompletionException e ) {
+            if ( e.getCause() instanceof UncheckedIOException )
+                throw ( ( UncheckedIOException ) e.getCause() ).getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Computes the CRC-32 and size of a stored entry. Runs on a worker thread.
+     */
+    private Block checksum( Block block ) {
+        ChunkEntry entry = block.entry;
+        CRC32 crc = new CRC32();
+        long length = entry.isRange() ? entry.getLength() : Long.MAX_VALUE;
+        try {
+            block.length = ZipArchiver.writeRange( entry.getSource(), entry.getOffset(), length,
+                    new CheckedOutputStream( ZipArchiver.NULL_OUTPUT, crc ), options );
+        } catch ( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+        block.crc = crc.getValue();
+        return block;
+    }
+
+    /**
+     * Reads and deflates a block. Runs on a worker thread.
+     *
+     * @param preset the preset dictionary the entry starts with, null for none
+     */
+    private Block deflate( Block block, byte[] preset ) {
+        ChunkEntry entry = block.entry;
+        int dictionaryLength = ( int ) Math.min( DICTIONARY_SIZE, block.start - entry.getOffset() );
+        int inputLength = dictionaryLength + ( int ) block.length;
+        byte[] input;
+        int read;
+        try {
+            if ( entry.getMembers() != null ) {
+                input = new byte[inputLength];
+                read = SolidBlocks.load( entry, input, options );
+            } else {
+                // One more byte tells whether a whole file grew past its last block
+                input = Buffers.input( inputLength + 1 );
+                int readLength = block.last && !entry.isRange() ? inputLength + 1 : inputLength;
+                try ( SourceReader reader = SourceReader.open( entry.getSource(), options ) ) {
+                    read = readFully( reader, input, readLength, block.start - dictionaryLength );
+                }
+                if ( read != inputLength )
+                    throw new IOException( "File '" + entry.getSource() + "' changed size while being compressed" );
+            }
+        } catch ( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+        int length = Math.max( 0, read - dictionaryLength );
+        block.length = length;
+
+        CRC32 crc = new CRC32();
+        crc.update( input, dictionaryLength, length );
+        block.crc = crc.getValue();
+
+        Deflater deflater = new Deflater( options.getCompressionLevel(), true );
+        try {
+            if ( preset != null && dictionaryLength < DICTIONARY_SIZE ) {
+                // The window of the inflater still holds the end of the preset dictionary before the entry
+                int presetLength = Math.min( preset.length, DICTIONARY_SIZE - dictionaryLength );
+                byte[] window = new byte[presetLength + dictionaryLength];
+                System.arraycopy( preset, preset.length - presetLength, window, 0, presetLength );
+                System.arraycopy( input, 0, window, presetLength, dictionaryLength );
+                deflater.setDictionary( window );
+            } else if ( dictionaryLength > 0 ) {
+                deflater.setDictionary( input, 0, dictionaryLength );
+            }
+            deflater.setInput( input, dictionaryLength, length );
+            ByteArrayOutputStream out = new ByteArrayOutputStream( length / 2 + 64 );
+            byte[] buffer = Buffers.output( OUTPUT_BUFFER_SIZE );
+            if ( block.last ) {
+                deflater.finish();
+                while ( !deflater.finished() ) {
+                    int written = deflater.deflate( buffer, 0, OUTPUT_BUFFER_SIZE );
+                    out.write( buffer, 0, written );
+                }
+            } else {
+                int written;
+                do {
+                    written = deflater.deflate( buffer, 0, OUTPUT_BUFFER_SIZE, Deflater.SYNC_FLUSH );
+                    out.write( buffer, 0, written );
+                } while ( written == OUTPUT_BUFFER_SIZE );
+            }
+            block.compressed = out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+        return block;
+    }
+
+    /**
+     * Reads until {@code length} bytes are read or the end of the file is reached
+     *
+     * @return the number of bytes read
+     */
+    private static int readFully( SourceReader reader, byte[] bytes, int length, long position ) throws IOException {
+        int total = 0;
+        while ( total < length ) {
+            int read = reader.read( bytes, total, length - total, position + total );
+            if ( read < 0 )
+                break;
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * A block of an entry. Directories, entries with content in memory and entries copied from a previous compression
+     * are a single block without data.
+     */
+    private static class Block {
+
+        private final ChunkEntry entry;
+
+        private final long start;
+
+        private final boolean first;
+
+        private final boolean last;
+
+        private final boolean stored;
+
+        private long length;
+
+        private long crc;
+
+        private byte[] compressed;
+
+        private Block( ChunkEntry entry, long start, long length, boolean first, boolean last, boolean stored ) {
+            this.entry = entry;
+            this.start = start;
+            this.length = length;
+            this.first = first;
+            this.last = last;
+            this.stored = stored;
+        }
+    }
+
+    /**
+     * Cuts entries into blocks lazily so that only pending blocks are held in memory
+     */
+    private class BlockSplitter {
+
+        private final Iterator<ChunkEntry> entries;
+
+        private ChunkEntry entry;
+
+        private long position;
+
+        private long end;
+
+        private BlockSplitter( List<ChunkEntry> entries ) {
+            this.entries = entries.iterator();
+        }
+
+        private boolean hasNext() {
+            return entry != null || entries.hasNext();
+        }
+
+        private Block next() throws IOException {
+            if ( !hasNext() )
+                throw new NoSuchElementException();
+            if ( entry == null ) {
+                ChunkEntry next = entries.next();
+                if ( next.isDirectory() || next.getContent() != null || next.getPrevious() != null )
+                    return new Block( next, 0, 0, true, true, false );
+                if ( next.getMembers() != null )
+                    return new Block( next, 0, next.getLength(), true, true, false );
+                if ( !options.getCompressionPolicy().shouldDeflate( next ) )
+                    return new Block( next, next.getOffset(), next.getLength(), true, true, true );
+                entry = next;
+                position = entry.getOffset();
+                end = position + entry.getLength();
+            }
+            boolean first = position == entry.getOffset();
+            int length = ( int ) Math.min( blockSize, end - position );
+            boolean last = position + length >= end;
+            Block block = new Block( entry, position, length, first, last, false );
+            position += length;
+            if ( last )
+                entry = null;
+            return block;
+        }
+    }
+}
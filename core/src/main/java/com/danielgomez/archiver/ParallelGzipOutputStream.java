@@ -0,0 +1,219 @@
+package com.danielgomez.archiver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzips a stream in parallel, the way pigz does.
+ * <p>
+ * Written data is cut into blocks that are deflated independently on worker threads, each primed with the 32 KB before
+ * it as preset dictionary like {@link ParallelDeflater} does for zip entries. Blocks end on a sync flush, so they are
+ * appended in order to form the deflate stream of a single gzip member that any gzip reader decompresses. The CRC-32
+ * of each block is computed by its worker and combined when it is written.
+ * <p>
+ * Only a bounded number of blocks is in flight at any time, so writes wait for the oldest block once that number is
+ * reached.
+ */
+final class ParallelGzipOutputStream extends OutputStream {
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Member header without name, time or extra fields
+     */
+    private static final byte[] HEADER = { 0x1f, ( byte ) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    private final OutputStream out;
+
+    private final int level;
+
+    private final int blockSize;
+
+    private final Executor executor;
+
+    private final int maxPendingBlocks;
+
+    private final Deque<CompletableFuture<Block>> pending = new ArrayDeque<>();
+
+    private byte[] input;
+
+    private int dictionaryLength;
+
+    private int length;
+
+    private long crc;
+
+    private long size;
+
+    private boolean closed;
+
+    /**
+     * @param out     where the gzip stream is written, closed with this stream
+     * @param level   the deflate level, -1 for the default one
+     * @param workers where blocks are deflated
+     */
+    ParallelGzipOutputStream( OutputStream out, int level, Workers workers ) throws IOException {
+        this( out, level, ParallelDeflater.DEFAULT_BLOCK_SIZE, workers );
+    }
+
+    ParallelGzipOutputStream( OutputStream out, int level, int blockSize, Workers workers ) throws IOException {
+        if ( blockSize < DICTIONARY_SIZE )
+            throw new IllegalArgumentException( "Block size must be at least " + DICTIONARY_SIZE + " bytes" );
+        this.out = out;
+        this.level = level;
+        this.blockSize = blockSize;
+        this.executor = workers.getExecutor();
+        this.maxPendingBlocks = Math.max( 2, workers.getParallelism() * 2 );
+        this.input = new byte[blockSize];
+        out.write( HEADER );
+    }
+
+    @Override
+    public void write( int b ) throws IOException {
+        write( new byte[] { ( byte ) b }, 0, 1 );
+    }
+
+    @Override
+    public void write( byte[] bytes, int offset, int length ) throws IOException {
+        if ( closed )
+            throw new IOException( "Stream closed" );
+        while ( length > 0 ) {
+            int copied = Math.min( length, input.length - dictionaryLength - this.length );
+            System.arraycopy( bytes, offset, input, dictionaryLength + this.length, copied );
+            this.length += copied;
+            offset += copied;
+            length -= copied;
+            if ( dictionaryLength + this.length == input.length )
+                submit( false );
+        }
+    }
+
+    /**
+     * Flushes the underlying stream only, blocks are deflated once full
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Deflates the last block, waits for every block to be written and ends the member
+     */
+    @Override
+    public void close() throws IOException {
+        if ( closed )
+            return;
+        closed = true;
+        try {
+            submit( true );
+            while ( !pending.isEmpty() )
+                writeNext();
+            byte[] trailer = new byte[8];
+            putInt( trailer, 0, crc );
+            putInt( trailer, 4, size );
+            out.write( trailer );
+        } finally {
+            pending.forEach( future -> future.cancel( false ) );
+            out.close();
+        }
+    }
+
+    /**
+     * Hands the current block to a worker and starts the next one with the end of it as dictionary
+     */
+    private void submit( boolean last ) throws IOException {
+        Block block = new Block( input, dictionaryLength, length, last );
+        if ( !last ) {
+            input = new byte[DICTIONARY_SIZE + blockSize];
+            dictionaryLength = Math.min( DICTIONARY_SIZE, block.dictionaryLength + block.length );
+            System.arraycopy( block.input, block.dictionaryLength + block.length - dictionaryLength, input, 0,
+                    dictionaryLength );
+            length = 0;
+        }
+        pending.add( CompletableFuture.supplyAsync( () -> deflate( block ), executor ) );
+        while ( pending.size() >= maxPendingBlocks )
+            writeNext();
+    }
+
+    private void writeNext() throws IOException {
+        Block block = pending.poll().join();
+        out.write( block.compressed );
+        crc = Checksums.combine( crc, block.crc, block.length );
+        size += block.length;
+    }
+
+    /**
+     * Deflates a block. Runs on a worker thread.
+     */
+    private Block deflate( Block block ) {
+        CRC32 checksum = new CRC32();
+        checksum.update( block.input, block.dictionaryLength, block.length );
+        block.crc = checksum.getValue();
+
+        Deflater deflater = new Deflater( level, true );
+        try {
+            if ( block.dictionaryLength > 0 )
+                deflater.setDictionary( block.input, 0, block.dictionaryLength );
+            deflater.setInput( block.input, block.dictionaryLength, block.length );
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream( block.length / 2 + 64 );
+            byte[] buffer = Buffers.output( OUTPUT_BUFFER_SIZE );
+            if ( block.last ) {
+                deflater.finish();
+                while ( !deflater.finished() ) {
+                    int written = deflater.deflate( buffer, 0, OUTPUT_BUFFER_SIZE );
+                    compressed.write( buffer, 0, written );
+                }
+            } else {
+                int written;
+                do {
+                    written = deflater.deflate( buffer, 0, OUTPUT_BUFFER_SIZE, Deflater.SYNC_FLUSH );
+                    compressed.write( buffer, 0, written );
+                } while ( written == OUTPUT_BUFFER_SIZE );
+            }
+            block.compressed = compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+        block.input = null;
+        return block;
+    }
+
+    /**
+     * Writes the low 32 bits of a number in little endian order
+     */
+    private static void putInt( byte[] bytes, int offset, long value ) {
+        for ( int i = 0; i < 4; i++ )
+            bytes[offset + i] = ( byte ) ( value >>> ( i * 8 ) );
+    }
+
+    private static class Block {
+
+        private final int dictionaryLength;
+
+        private final int length;
+
+        private final boolean last;
+
+        private byte[] input;
+
+        private long crc;
+
+        private byte[] compressed;
+
+        private Block( byte[] input, int dictionaryLength, int length, boolean last ) {
+            this.input = input;
+            this.dictionaryLength = dictionaryLength;
+            this.length = length;
+            this.last = last;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.danielgomez.archiver;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Receives the compressed files of a compression instead of the output directory, e.g. to send them over a network
+ * without writing them to disk first
+ */
+@FunctionalInterface
+public interface PartSink {
+
+    /**
+     * Opens the channel a compressed file is written to. The archiver closes the channel once the file is complete.
+     * Files written in parallel are opened from several threads at once.
+     *
+     * @param part the number of the compressed file, starting at 0
+     * @param name the name the compressed file would have in the output directory
+     * @return the channel to write the compressed file to
+     * @throws IOException when the channel cannot be opened
+     */
+    WritableByteChannel open( int part, String name ) throws IOException;
+
+    /**
+     * Called after every compressed file is complete. A compression that splits on output size only knows at this
+     * point whether it wrote a single file, which it would have named without part number.
+     *
+     * @param partCount the number of compressed files written
+     * @throws IOException when finishing fails
+     */
+    default void finish( int partCount ) throws IOException {}
+}
@@ -0,0 +1,150 @@
+package com.danielgomez.archiver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A preset dictionary for deflate, sampled from the small files of the input while it is scanned, see
+ * {@link CompressionOptions#isPresetDictionary()}. Deflate starts each entry with an empty window, so a small file
+ * cannot refer to the structure it shares with the files before it. With the dictionary in the window, it can.
+ * <p>
+ * Each zip file written with a dictionary starts with a stored entry named {@link #ENTRY_NAME} holding it, and every
+ * deflated entry of that zip file is deflated with it, so it must be given to the inflater before inflating.
+ * <p>
+ * Files are sampled with a reservoir of fixed size and a fixed seed, so the same input always gives the same
+ * dictionary.
+ */
+final class PresetDictionary {
+
+    /**
+     * Name of the dictionary entry, at the root of each zip file deflated with it
+     */
+    static final String ENTRY_NAME = ".archiver-dictionary";
+
+    /**
+     * Largest dictionary, the size of the deflate window
+     */
+    static final int MAX_SIZE = 32 * 1024;
+
+    private static final int SAMPLE_COUNT = 32;
+
+    private static final int SAMPLE_SIZE = MAX_SIZE / SAMPLE_COUNT;
+
+    /**
+     * Largest file that is sampled, larger files get little out of a dictionary
+     */
+    private static final long MAX_SAMPLED_FILE_SIZE = 64 * 1024;
+
+    private final byte[][] samples = new byte[SAMPLE_COUNT][];
+
+    private final Random random = new Random( 0 );
+
+    private final CompressionOptions options;
+
+    private int sampledFiles;
+
+    PresetDictionary( CompressionOptions options ) {
+        this.options = options;
+    }
+
+    /**
+     * Offers a visited file to the sample, whose start is read if it is picked
+     *
+     * @param size the size of the file
+     */
+    void sample( Path file, long size ) throws IOException {
+        if ( size <= 0 || size > MAX_SAMPLED_FILE_SIZE )
+            return;
+        int slot = sampledFiles < SAMPLE_COUNT ? sampledFiles : random.nextInt( sampledFiles + 1 );
+        sampledFiles++;
+        if ( slot >= SAMPLE_COUNT )
+            return;
+        byte[] sample = new byte[( int ) Math.min( size, SAMPLE_SIZE )];
+        int length = 0;
+        try ( SourceReader reader = SourceReader.open( file, options ) ) {
+            while ( length < sample.length ) {
+                int read = reader.read( sample, length, sample.length - length, length );
+                if ( read < 0 )
+                    break;
+                length += read;
+            }
+        }
+        samples[slot] = length == sample.length ? sample : Arrays.copyOf( sample, length );
+    }
+
+    /**
+     * @return the samples one after another, null if no file was sampled
+     */
+    byte[] build() {
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream( MAX_SIZE );
+        for ( byte[] sample : samples ) {
+            if ( sample != null )
+                dictionary.write( sample, 0, sample.length );
+        }
+        return dictionary.size() > 0 ? dictionary.toByteArray() : null;
+    }
+
+    /**
+     * @param dictionary a dictionary, null for none
+     * @return the entries of a zip file led by a dictionary entry, the same list without a dictionary
+     */
+    static List<ChunkEntry> prepend( List<ChunkEntry> entries, byte[] dictionary ) {
+        if ( dictionary == null )
+            return entries;
+        List<ChunkEntry> withDictionary = new ArrayList<>( entries.size() + 1 );
+        withDictionary.add( ChunkEntry.content( ENTRY_NAME, dictionary ) );
+        withDictionary.addAll( entries );
+        return withDictionary;
+    }
+
+    /**
+     * @return the dictionary that leads the entries of a zip file, null if there is none
+     */
+    static byte[] of( List<ChunkEntry> entries ) {
+        if ( entries.isEmpty() )
+            return null;
+        ChunkEntry first = entries.get( 0 );
+        return first.getContent() != null && first.getName().equals( ENTRY_NAME ) ? first.getContent() : null;
+    }
+
+    /**
+     * Reads the content of a dictionary entry
+     *
+     * @param in the content of the entry, read until its end and left open
+     * @throws ZipException when the entry is larger than a dictionary can be
+     */
+    static byte[] read( InputStream in ) throws IOException {
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream( MAX_SIZE );
+        byte[] buffer = new byte[8192];
+        int read;
+        while ( ( read = in.read( buffer ) ) >= 0 ) {
+            dictionary.write( buffer, 0, read );
+            if ( dictionary.size() > MAX_SIZE )
+                throw new ZipException( "Entry '" + ENTRY_NAME + "' is larger than a preset dictionary" );
+        }
+        return dictionary.toByteArray();
+    }
+
+    /**
+     * A zip input stream whose inflater can be given a dictionary. {@link #getNextEntry()} resets the inflater, so the
+     * dictionary is set again for each entry, before reading it.
+     */
+    static final class ZipInput extends ZipInputStream {
+
+        ZipInput( InputStream in ) {
+            super( in );
+        }
+
+        void setDictionary( byte[] dictionary ) {
+            inf.setDictionary( dictionary );
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.danielgomez.archiver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the bytes of an archive operation and forwards events to its {@link ArchiveListener}. Counting is a
+ * {@link LongAdder} update, so writers on several threads do not contend, and throughput snapshots are rate limited
+ * with a single compare and set.
+ */
+final class ProgressTracker {
+
+    private static final long SNAPSHOT_INTERVAL = TimeUnit.MILLISECONDS.toNanos( 200 );
+
+    private final ArchiveListener listener;
+
+    private volatile long totalInputBytes;
+
+    private final boolean compressing;
+
+    private final long start = System.nanoTime();
+
+    private final LongAdder inputBytes = new LongAdder();
+
+    private final LongAdder outputBytes = new LongAdder();
+
+    private final AtomicLong lastSnapshot = new AtomicLong( start );
+
+    /**
+     * @param listener        where events go
+     * @param totalInputBytes the input bytes of the whole operation, -1 if unknown or not known yet, see
+     *                        {@link #scanCompleted(int, long)}
+     * @param compressing     true if the input is uncompressed, in which case the output is counted as it is
+     *                        written, otherwise the output of an entry is counted once it is finished
+     */
+    ProgressTracker( ArchiveListener listener, long totalInputBytes, boolean compressing ) {
+        this.listener = listener;
+        this.totalInputBytes = totalInputBytes;
+        this.compressing = compressing;
+    }
+
+    ArchiveListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Sets the input bytes of the whole operation once the input is scanned, which may be after writing started
+     */
+    void scanCompleted( int files, long bytes ) {
+        totalInputBytes = bytes;
+        listener.scanCompleted( files, bytes );
+    }
+
+    void entryStarted( String name ) {
+        listener.entryStarted( name );
+    }
+
+    /**
+     * Counts a finished entry as processed input. When decompressing an entry whose compressed size is unknown, -1,
+     * the input is counted with {@link #read(long)} instead.
+     */
+    void entryFinished( String name, long rawBytes, long compressedBytes, long elapsedNanos ) {
+        if ( compressing ) {
+            inputBytes.add( rawBytes );
+        } else {
+            if ( compressedBytes >= 0 )
+                inputBytes.add( compressedBytes );
+            outputBytes.add( rawBytes );
+        }
+        listener.entryFinished( name, rawBytes, compressedBytes, elapsedNanos );
+        snapshot( false );
+    }
+
+    /**
+     * Counts compressed bytes read, for input that is not split into entries
+     */
+    void read( long bytes ) {
+        inputBytes.add( bytes );
+        snapshot( false );
+    }
+
+    /**
+     * Counts bytes written
+     */
+    void written( long bytes ) {
+        outputBytes.add( bytes );
+        snapshot( false );
+    }
+
+    void partFinished( String name, long bytes ) {
+        listener.partFinished( name, bytes );
+    }
+
+    /**
+     * Sends the last throughput snapshot
+     */
+    void finish() {
+        snapshot( true );
+    }
+
+    private void snapshot( boolean done ) {
+        long now = System.nanoTime();
+        long last = lastSnapshot.get();
+        if ( !done && ( now - last < SNAPSHOT_INTERVAL || !lastSnapshot.compareAndSet( last, now ) ) )
+            return;
+        listener.throughput( new Throughput( inputBytes.sum(), outputBytes.sum(), totalInputBytes, now - start,
+                done ) );
+    }
+}
@@ -0,0 +1,75 @@
+package com.danielgomez.archiver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fills chunks greedily in visiting order. A new chunk is started as soon as the next entry does not fit in the
+ * current one.
+ */
+class SequentialChunkPlanner implements ChunkPlanner {
+
+    private static Logger LOGGER = LoggerFactory.getLogger( SequentialChunkPlanner.class );
+
+    @Override
+    public List<List<ChunkEntry>> plan( List<ChunkEntry> entries, long maxFileSize ) {
+        List<List<ChunkEntry>> chunks = new ArrayList<>();
+        Filler filler = new Filler( maxFileSize );
+        for ( ChunkEntry entry : entries ) {
+            List<ChunkEntry> closed = filler.add( entry );
+            if ( closed != null )
+                chunks.add( closed );
+        }
+        List<ChunkEntry> last = filler.finish();
+        if ( last != null )
+            chunks.add( last );
+        return chunks;
+    }
+
+    /**
+     * Fills chunks one entry at a time. Since a chunk never depends on the entries after it, each chunk is closed as
+     * soon as an entry does not fit and can be written while entries are still being visited.
+     */
+    static final class Filler {
+
+        private final long maxFileSize;
+
+        private List<ChunkEntry> currentChunk = new ArrayList<>();
+
+        private long currentChunkSize;
+
+        private int closedChunks;
+
+        Filler( long maxFileSize ) {
+            this.maxFileSize = maxFileSize;
+        }
+
+        /**
+         * @return the chunk closed to make room for the entry, null if the entry fits in the current chunk
+         */
+        List<ChunkEntry> add( ChunkEntry entry ) {
+            List<ChunkEntry> closed = null;
+            long size = entry.getLength();
+            if ( maxFileSize > 0 && size + currentChunkSize > maxFileSize && !currentChunk.isEmpty() ) {
+                closed = currentChunk;
+                closedChunks++;
+                currentChunk = new ArrayList<>();
+                currentChunkSize = 0;
+            }
+            currentChunk.add( entry );
+            currentChunkSize += size;
+            LOGGER.trace( "'{}' added on chunk '{}'", entry, closedChunks );
+            return closed;
+        }
+
+        /**
+         * @return the last chunk, null if nothing was added to it
+         */
+        List<ChunkEntry> finish() {
+            return currentChunk.isEmpty() ? null : currentChunk;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.danielgomez.archiver;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.ZipException;
+
+/**
+ * Small files of a zip file packed together into solid blocks, see {@link CompressionOptions#getSolidBlockSize()}. A
+ * block is a single deflated entry named after {@link #INDEX_NAME} with its number as extension, so files in a block
+ * cost no entry of their own and deflate with the files before them as context. Each zip file with blocks starts with
+ * an index entry named {@link #INDEX_NAME}, one line per packed file holding its name, the name of its block and its
+ * offset and length in the block, separated by tabs.
+ * <p>
+ * Blocks are deflated independently, so extracting a file only inflates its block.
+ */
+final class SolidBlocks {
+
+    /**
+     * Name of the index entry, at the root of each zip file with blocks
+     */
+    static final String INDEX_NAME = ".archiver-solid";
+
+    private static final String HEADER = "# archiver solid blocks 1";
+
+    /**
+     * Files of at most this fraction of the block size are packed, so a block holds at least that many files
+     */
+    private static final int MIN_FILES_PER_BLOCK = 16;
+
+    private final Map<String, List<Member>> blocks = new HashMap<>();
+
+    /**
+     * Packs the small files of the entries of a zip file into blocks and adds their index in front
+     *
+     * @param entries   the entries of a zip file in order
+     * @param blockSize the most bytes of files in a block
+     * @return the entries with each block in place of its files, the same list if no file is small enough
+     */
+    static List<ChunkEntry> pack( List<ChunkEntry> entries, int blockSize ) {
+        long maxFileSize = blockSize / MIN_FILES_PER_BLOCK;
+        List<ChunkEntry> packed = new ArrayList<>();
+        StringBuilder index = new StringBuilder( HEADER ).append( '\n' );
+        List<ChunkEntry> members = new ArrayList<>();
+        long length = 0;
+        int blockCount = 0;
+        for ( ChunkEntry entry : entries ) {
+            if ( entry.isDirectory() || entry.isRange() || entry.getContent() != null || entry.getPrevious() != null
+                    || entry.getLength() > maxFileSize ) {
+                packed.add( entry );
+                continue;
+            }
+            if ( length + entry.getLength() > blockSize ) {
+                packed.add( block( blockCount++, members, length, index ) );
+                members = new ArrayList<>();
+                length = 0;
+            }
+            members.add( entry );
+            length += entry.getLength();
+        }
+        if ( !members.isEmpty() )
+            packed.add( block( blockCount++, members, length, index ) );
+        if ( blockCount == 0 )
+            return entries;
+        packed.add( 0, ChunkEntry.content( INDEX_NAME, index.toString().getBytes( StandardCharsets.UTF_8 ) ) );
+        return packed;
+    }
+
+    private static ChunkEntry block( int number, List<ChunkEntry> members, long length, StringBuilder index ) {
+        String name = INDEX_NAME + "." + number;
+        long offset = 0;
+        for ( ChunkEntry member : members ) {
+            index.append( Manifest.escape( member.getName() ) ).append( '\t' ).append( name ).append( '\t' )
+                    .append( offset ).append( '\t' ).append( member.getLength() ).append( '\n' );
+            offset += member.getLength();
+        }
+        return ChunkEntry.solid( name, members, length );
+    }
+
+    /**
+     * @return true if an entry name is the name of a block
+     */
+    static boolean isBlock( String name ) {
+        return name.startsWith( INDEX_NAME + "." );
+    }
+
+    /**
+     * Reads the files of a block one after another
+     *
+     * @param block a block made by {@link #pack(List, int)}
+     * @param bytes where the files are read to, at least as long as the block
+     * @return the length of the block
+     * @throws EOFException when a file got smaller since it was visited
+     */
+    static int load( ChunkEntry block, byte[] bytes, CompressionOptions options ) throws IOException {
+        int length = 0;
+        for ( ChunkEntry member : block.getMembers() ) {
+            int end = length + ( int ) member.getLength();
+            try ( SourceReader reader = SourceReader.open( member.getSource(), options ) ) {
+                long position = 0;
+                while ( length < end ) {
+                    int read = reader.read( bytes, length, end - length, position );
+                    if ( read < 0 )
+                        throw new EOFException( "File '" + member.getSource() + "' got smaller while compressing" );
+                    length += read;
+                    position += read;
+                }
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Adds the blocks listed in an index entry
+     *
+     * @param in the content of the index entry, read until its end and left open
+     */
+    void read( InputStream in ) throws IOException {
+        BufferedReader reader = new BufferedReader( new InputStreamReader( in, StandardCharsets.UTF_8 ) );
+        if ( !HEADER.equals( reader.readLine() ) )
+            throw new IOException( "Entry '" + INDEX_NAME + "' is not an index of solid blocks" );
+        String line;
+        while ( ( line = reader.readLine() ) != null ) {
+            if ( line.isEmpty() )
+                continue;
+            String[] fields = line.split( "\t", -1 );
+            if ( fields.length != 4 )
+                throw new IOException( "Invalid solid block index line '" + line + "'" );
+            try {
+                blocks.computeIfAbsent( fields[1], block -> new ArrayList<>() ).add( new Member(
+                        Manifest.unescape( fields[0] ), Long.parseLong( fields[2] ), Long.parseLong( fields[3] ) ) );
+            } catch ( NumberFormatException e ) {
+                throw new IOException( "Invalid solid block index line '" + line + "'", e );
+            }
+        }
+    }
+
+    /**
+     * @return the files of a block in the order they are packed
+     * @throws ZipException when the index does not list the block
+     */
+    List<Member> getMembers( String block ) throws ZipException {
+        List<Member> members = blocks.get( block );
+        if ( members == null )
+            throw new ZipException( "Solid block '" + block + "' is not listed in its index" );
+        return Collections.unmodifiableList( members );
+    }
+
+    /**
+     * Writes the files of a block
+     *
+     * @param in            the content of the block, read until its end and left open
+     * @param members       the files of the block, see {@link #getMembers(String)}
+     * @param wanted        accepts the names of the files to write, the others are skipped
+     * @param createParents true to create the parent directories of the files, false if they exist
+     * @throws ZipException when the block does not have the length its index says
+     */
+    static void unpack( InputStream in, List<Member> members, Path outputDir, Predicate<String> wanted,
+            boolean createParents, int bufferSize ) throws IOException {
+        byte[] buffer = Buffers.output( bufferSize );
+        for ( Member member : members ) {
+            if ( !wanted.test( member.name ) ) {
+                copy( in, member, null, buffer, bufferSize );
+                continue;
+            }
+            Path file = outputDir.resolve( member.name );
+            if ( createParents )
+                Files.createDirectories( file.getParent() );
+            try ( OutputStream out = Files.newOutputStream( file ) ) {
+                copy( in, member, out, buffer, bufferSize );
+            }
+        }
+        if ( in.read() >= 0 )
+            throw new ZipException( "Solid block holds more than its index lists" );
+    }
+
+    private static void copy( InputStream in, Member member, OutputStream out, byte[] buffer, int bufferSize )
+            throws IOException {
+        long remaining = member.length;
+        while ( remaining > 0 ) {
+            int read = in.read( buffer, 0, ( int ) Math.min( bufferSize, remaining ) );
+            if ( read < 0 )
+                throw new ZipException( "Solid block ends before file '" + member.name + "'" );
+            if ( out != null )
+                out.write( buffer, 0, read );
+            remaining -= read;
+        }
+    }
+
+    /**
+     * A file packed into a block
+     */
+    static final class Member {
+
+        private final String name;
+
+        private final long offset;
+
+        private final long length;
+
+        private Member( String name, long offset, long length ) {
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getOffset() {
+            return offset;
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
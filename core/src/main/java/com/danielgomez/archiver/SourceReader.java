@@ -0,0 +1,168 @@
+package com.danielgomez.archiver;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a file to compress with positional reads. Files of at least {@link CompressionOptions#getMemoryMapThreshold()}
+ * bytes are read through windows mapped with {@link FileChannel#map}, so the page cache reads ahead and no read call is
+ * made per buffer. Each window is unmapped as soon as reading moves past it, so huge files never hold more than one
+ * window of address space per reader.
+ * <p>
+ * A reader is used by one thread at a time.
+ */
+abstract class SourceReader implements Closeable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger( SourceReader.class );
+
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final Unmapper UNMAPPER = Unmapper.find();
+
+    protected final FileChannel channel;
+
+    private SourceReader( FileChannel channel ) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a file, mapping it if the options say so for its size. Only files of the default file system are mapped.
+     */
+    static SourceReader open( Path source, CompressionOptions options ) throws IOException {
+        FileChannel channel = FileChannel.open( source, READ );
+        long threshold = options.getMemoryMapThreshold();
+        if ( threshold > 0 && source.getFileSystem() == FileSystems.getDefault() && channel.size() >= threshold )
+            return new Mapped( channel );
+        return new Channel( channel );
+    }
+
+    /**
+     * Reads bytes of the file at a position
+     *
+     * @return the number of bytes read, at most {@code length}, or -1 at the end of the file
+     */
+    abstract int read( byte[] bytes, int offset, int length, long position ) throws IOException;
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static final class Channel extends SourceReader {
+
+        private Channel( FileChannel channel ) {
+            super( channel );
+        }
+
+        @Override
+        int read( byte[] bytes, int offset, int length, long position ) throws IOException {
+            return channel.read( ByteBuffer.wrap( bytes, offset, length ), position );
+        }
+    }
+
+    private static final class Mapped extends SourceReader {
+
+        private final long size;
+
+        private MappedByteBuffer window;
+
+        private long windowStart;
+
+        private Mapped( FileChannel channel ) throws IOException {
+            super( channel );
+            this.size = channel.size();
+        }
+
+        @Override
+        int read( byte[] bytes, int offset, int length, long position ) throws IOException {
+            if ( position >= size )
+                return -1;
+            if ( window == null || position < windowStart || position >= windowStart + window.limit() ) {
+                unmap();
+                windowStart = position;
+                window = channel.map( FileChannel.MapMode.READ_ONLY, position, Math.min( WINDOW_SIZE,
+                        size - position ) );
+            }
+            int start = ( int ) ( position - windowStart );
+            int count = Math.min( length, window.limit() - start );
+            window.position( start );
+            window.get( bytes, offset, count );
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                unmap();
+            } finally {
+                super.close();
+            }
+        }
+
+        private void unmap() {
+            if ( window == null )
+                return;
+            MappedByteBuffer unmapped = window;
+            window = null;
+            UNMAPPER.unmap( unmapped );
+        }
+    }
+
+    /**
+     * Releases mapped memory without waiting for the buffer to be garbage collected. Java 8 has no public API for it
+     * so the internal one of the running JVM is looked up. Mapped buffers are left to the garbage collector when none
+     * is found.
+     */
+    private interface Unmapper {
+
+        void unmap( ByteBuffer buffer );
+
+        static Unmapper find() {
+            try {
+                // Java 9 and later
+                Class<?> unsafeClass = Class.forName( "sun.misc.Unsafe" );
+                Field field = unsafeClass.getDeclaredField( "theUnsafe" );
+                field.setAccessible( true );
+                Object unsafe = field.get( null );
+                Method invokeCleaner = unsafeClass.getMethod( "invokeCleaner", ByteBuffer.class );
+                return buffer -> invoke( invokeCleaner, unsafe, buffer );
+            } catch ( ReflectiveOperationException | RuntimeException e ) {
+                LOGGER.trace( "Unsafe.invokeCleaner is not available", e );
+            }
+            try {
+                // Java 8
+                Method cleaner = Class.forName( "sun.nio.ch.DirectBuffer" ).getMethod( "cleaner" );
+                Method clean = Class.forName( "sun.misc.Cleaner" ).getMethod( "clean" );
+                return buffer -> {
+                    Object bufferCleaner = invoke( cleaner, buffer );
+                    if ( bufferCleaner != null )
+                        invoke( clean, bufferCleaner );
+                };
+            } catch ( ReflectiveOperationException | RuntimeException e ) {
+                LOGGER.debug( "Mapped buffers cannot be unmapped explicitly, leaving them to the garbage collector",
+                        e );
+            }
+            return buffer -> {};
+        }
+
+        static Object invoke( Method method, Object target, Object... args ) {
+            try {
+                return method.invoke( target, args );
+            } catch ( ReflectiveOperationException e ) {
+                throw new IllegalStateException( "Unable to unmap buffer", e );
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.danielgomez.archiver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes entries to consecutive zip parts while keeping the size of each part, compressed, within the maximum file
+ * size. Compressed bytes are counted as they are produced and when the next write could cross the limit, the current
+ * entry is ended, the part is finished and writing continues in a new part. An entry may thus be split mid-stream.
+ * <p>
+ * The first piece of a split entry keeps its name and the pieces that continue it in later parts are named with a
+ * '.part.{n}' suffix starting at 1, so decompression joins them back like any other split file. The first piece and
+ * every part carry comments that let verification find a missing last piece or part, see
+ * {@link ZipArchiver#verify(IOOptions)}.
+ * <p>
+ * Deflate buffers input before producing output, so the writer keeps a worst case bound of the pending output and only
+ * sync flushes the deflater, which makes its output size exact, when that bound gets close to the limit.
+ * <p>
+ * A preset dictionary entry, see {@link PresetDictionary}, is written again at the start of every later part, so each
+ * part can be inflated on its own.
+ */
+final class SplittingZipWriter implements Closeable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger( SplittingZipWriter.class );
+
+    /**
+     * Bytes needed to end a deflate stream after a sync flush
+     */
+    private static final int FINISH_SIZE = 8;
+
+    /**
+     * Smallest piece worth starting in a part instead of moving to the next part, unless the parts are small
+     */
+    private static final long MIN_PIECE_SIZE = 64 * 1024;
+
+    private final CompressionOptions options;
+
+    private final String outputName;
+
+    private final ZipArchiver.PartOpener opener;
+
+    private final ProgressTracker progress;
+
+    private final long maxFileSize;
+
+    private final long minPieceSize;
+
+    private final Deflater deflater;
+
+    private final CRC32 crc = new CRC32();
+
+    private final byte[] output;
+
+    private ZipWriter zip;
+
+    private byte[] dictionary;
+
+    private int partCount;
+
+    private long unflushed;
+
+    private long writtenSinceFlush;
+
+    /**
+     * @param options    compression options
+     * @param outputName the name of the zip file, to which part numbers are added
+     * @param opener     opens the output of each part
+     * @param progress   notified as entries are written
+     */
+    SplittingZipWriter( CompressionOptions options, String outputName, ZipArchiver.PartOpener opener,
+            ProgressTracker progress ) throws IOException {
+        this.options = options;
+        this.outputName = outputName;
+        this.opener = opener;
+        this.progress = progress;
+        this.maxFileSize = options.getMaxFileSize();
+        this.minPieceSize = Math.min( MIN_PIECE_SIZE, maxFileSize / 8 );
+        this.deflater = new Deflater( options.getCompressionLevel(), true );
+        this.output = new byte[options.getBufferSize()];
+        nextPart();
+    }
+
+    /**
+     * @return The number of parts started so far
+     */
+    int getPartCount() {
+        return partCount;
+    }
+
+    /**
+     * Writes an entry, moving to a new part whenever the current one is full
+     */
+    void write( ChunkEntry entry ) throws IOException {
+        if ( entry.isDirectory() ) {
+            ensureRoom( ZipWriter.getEntryOverhead( entry.getName() + "/" ) );
+            zip.putDirectory( entry.getName() );
+            LOGGER.debug( "Written directory={}/ on part '{}'", entry.getName(), partCount - 1 );
+            return;
+        }
+        if ( entry.getContent() != null ) {
+            if ( entry.getName().equals( PresetDictionary.ENTRY_NAME ) && zip.isEmpty() )
+                dictionary = entry.getContent();
+            ensureRoom( ZipWriter.getEntryOverhead( entry.getName() ) + entry.getLength() );
+            zip.putContent( entry.getName(), entry.getContent() );
+            return;
+        }
+        if ( entry.getPrevious() != null && copy( entry ) )
+            return;
+        long overhead = ZipWriter.getEntryOverhead( ZipArchiver.partName( entry.getName(), "" + Integer.MAX_VALUE ) );
+        ensureRoom( overhead + Math.min( bound( entry.getLength() ), minPieceSize ) );
+        if ( options.getCompressionPolicy().shouldDeflate( entry ) )
+            writeDeflated( entry );
+        else
+            writeStored( entry, overhead );
+    }
+
+    /**
+     * Copies an entry from a previous compression if it fits in a part as a whole, since compressed data cannot be
+     * split without inflating it
+     *
+     * @return false if the entry must be compressed again
+     */
+    private boolean copy( ChunkEntry entry ) throws IOException {
+        long size = ZipWriter.getEntryOverhead( entry.getName() ) + entry.getPrevious().getZipEntry()
+                .getCompressedSize();
+        ensureRoom( size );
+        if ( available() < size )
+            return false;
+        ZipArchiver.copyEntry( entry, zip );
+        LOGGER.debug( "Copied file={} on part '{}'", entry, partCount - 1 );
+        return true;
+    }
+
+    private void writeDeflated( ChunkEntry entry ) throws IOException {
+        try ( SourceReader reader = SourceReader.open( entry.getSource(), options ) ) {
+            byte[] input = Buffers.input( options.getBufferSize() );
+            long position = entry.getOffset();
+            long end = entry.isRange() ? position + entry.getLength() : Long.MAX_VALUE;
+            int inputOffset = 0;
+            int inputLength = 0;
+            int piece = 0;
+            beginPiece( entry, piece );
+            while ( true ) {
+                if ( inputOffset == inputLength ) {
+                    if ( position >= end )
+                        break;
+                    int read = reader.read( input, 0, ( int ) Math.min( options.getBufferSize(), end - position ),
+                            position );
+                    if ( read < 0 )
+                        break;
+                    position += read;
+                    inputOffset = 0;
+                    inputLength = read;
+                }
+                int length = inputLength - inputOffset;
+                if ( pendingBound( length ) > available() ) {
+                    syncFlush();
+                    long fits = maxInput( available() );
+                    if ( fits < length ) {
+                        if ( fits > 0 ) {
+                            deflate( input, inputOffset, ( int ) fits );
+                            inputOffset += fits;
+                        }
+                        // Compressible data usually leaves room after a flush, so keep filling the part in rounds
+                        if ( fits >= minPieceSize / 16 )
+                            continue;
+                        endPiece();
+                        if ( piece == 0 )
+                            setSizeComment( entry );
+                        nextPart();
+                        beginPiece( entry, ++piece );
+                        continue;
+                    }
+                }
+                deflate( input, inputOffset, length );
+                inputOffset = inputLength;
+            }
+            endPiece();
+        }
+    }
+
+    /**
+     * Stored entries have no data descriptor so the size of each piece is decided before it is written
+     */
+    private void writeStored( ChunkEntry entry, long overhead ) throws IOException {
+        long position = entry.getOffset();
+        long end = position + entry.getLength();
+        int piece = 0;
+        while ( true ) {
+            long length = Math.min( end - position, available() - overhead );
+            String name = piece == 0 ? entry.getName() : ZipArchiver.partName( entry.getName(), "" + piece );
+            CRC32 pieceCrc = new CRC32();
+            long read = ZipArchiver.writeRange( entry.getSource(), position, length,
+                    new CheckedOutputStream( ZipArchiver.NULL_OUTPUT, pieceCrc ), options );
+            ZipArchiver.putStored( name, entry.getSource(), position, read, pieceCrc.getValue(), zip, options );
+            LOGGER.debug( "Stored file={} on part '{}'", name, partCount - 1 );
+            position += read;
+            if ( position >= end || read < length )
+                break;
+            if ( piece == 0 )
+                setSizeComment( entry );
+            nextPart();
+            piece++;
+        }
+    }
+
+    /**
+     * Gives the first piece of an entry being split the size of its file, see {@link ZipArchiver#sizeComment(long)}
+     */
+    private void setSizeComment( ChunkEntry entry ) {
+        if ( entry.getFileSize() >= 0 )
+            zip.setEntryComment( entry.getName(), ZipArchiver.sizeComment( entry.getFileSize() ) );
+    }
+
+    private void beginPiece( ChunkEntry entry, int piece ) throws IOException {
+        if ( dictionary != null )
+            deflater.setDictionary( dictionary );
+        zip.beginEntry( piece == 0 ? entry.getName() : ZipArchiver.partName( entry.getName(), "" + piece ) );
+        unflushed = 0;
+        writtenSinceFlush = 0;
+    }
+
+    private void endPiece() throws IOException {
+        deflater.finish();
+        while ( !deflater.finished() )
+            writeOutput( deflater.deflate( output ) );
+        zip.endEntry( crc.getValue(), deflater.getBytesWritten(), deflater.getBytesRead() );
+        LOGGER.debug( "Written {} bytes on part '{}'", deflater.getBytesRead(), partCount - 1 );
+        deflater.reset();
+        crc.reset();
+    }
+
+    private void deflate( byte[] input, int offset, int length ) throws IOException {
+        crc.update( input, offset, length );
+        deflater.setInput( input, offset, length );
+        while ( !deflater.needsInput() )
+            writeOutput( deflater.deflate( output ) );
+        unflushed += length;
+    }
+
+    private void syncFlush() throws IOException {
+        int length;
+        do {
+            length = deflater.deflate( output, 0, output.length, Deflater.SYNC_FLUSH );
+            writeOutput( length );
+        } while ( length == output.length );
+        unflushed = 0;
+        writtenSinceFlush = 0;
+    }
+
+    private void writeOutput( int length ) throws IOException {
+        zip.write( output, 0, length );
+        writtenSinceFlush += length;
+    }
+
+    /**
+     * @return the most bytes still to be written for the current piece if {@code length} more bytes were deflated
+     */
+    private long pendingBound( long length ) {
+        return bound( unflushed + length ) - writtenSinceFlush + FINISH_SIZE;
+    }
+
+    /**
+     * @return the largest input that fits in {@code available} bytes after a sync flush
+     */
+    private static long maxInput( long available ) {
+        long input = available - FINISH_SIZE;
+        while ( input > 0 && bound( input ) + FINISH_SIZE > available )
+            input -= Math.max( 1, bound( input ) + FINISH_SIZE - available );
+        return Math.max( 0, input );
+    }
+
+    /**
+     * Worst case size of deflating {@code length} bytes followed by a sync flush, after zlib's deflateBound
+     */
+    private static long bound( long length ) {
+        return length + ( length >> 12 ) + ( length >> 14 ) + ( length >> 25 ) + 32;
+    }
+
+    private long available() {
+        return maxFileSize - zip.getProjectedSize();
+    }
+
+    private void ensureRoom( long size ) throws IOException {
+        if ( available() < size && !zip.isEmpty() )
+            nextPart();
+    }
+
+    private void nextPart() throws IOException {
+        if ( zip != null ) {
+            zip.setComment( ZipArchiver.partComment( partCount - 1, false ) );
+            zip.close();
+        }
+        String name = ZipArchiver.partName( outputName, "" + partCount );
+        zip = new ZipWriter( opener.open( partCount, name ), name, progress );
+        // Every part is the last one until the next one is opened
+        zip.setComment( ZipArchiver.partComment( partCount, true ) );
+        partCount++;
+        if ( dictionary != null )
+            zip.putContent( PresetDictionary.ENTRY_NAME, dictionary );
+        if ( available() < ZipWriter.getEntryOverhead( "" ) + minPieceSize / 16 )
+            throw new IllegalArgumentException( "Max file size " + maxFileSize + " is too small to hold a zip entry" );
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if ( zip != null )
+                zip.close();
+        } finally {
+            deflater.end();
+        }
+    }
+}
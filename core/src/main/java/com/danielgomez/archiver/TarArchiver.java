@@ -0,0 +1,351 @@
+package com.danielgomez.archiver;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implements archive operations with tar streams compressed as a whole, see {@link TarWriter}. Subclasses provide the
+ * compression of the streams.
+ * <p>
+ * Files are grouped into chunks and files that exceed the maximum file size are split into byte ranges the same way
+ * {@link ZipArchiver} does. Each chunk goes to its own compressed tar file, named after the input directory or with a
+ * '.part.{n}' suffix when there is more than one, and pieces of split files are entries named with a '.part.{n}'
+ * suffix. Incremental compression, splitting on output size and deduplication are not supported.
+ * <p>
+ * A tar stream has no index, so single files cannot be extracted and decompression reads the compressed files one
+ * after another in part order, appending pieces of split files to their file.
+ */
+abstract class TarArchiver implements Archiver {
+
+    private static Logger LOGGER = LoggerFactory.getLogger( TarArchiver.class );
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Compresses the tar streams of one compression
+     */
+    interface Encoder {
+
+        /**
+         * @param out      where a compressed tar file is written, closed with the returned stream
+         * @param parallel true if this is the only compressed file, which may then be compressed on several threads
+         * @return a stream that compresses what is written to it into {@code out}
+         */
+        OutputStream encode( OutputStream out, boolean parallel ) throws IOException;
+    }
+
+    /**
+     * @return The extension of the compressed files, like '.tar.gz'
+     */
+    abstract String getExtension();
+
+    /**
+     * Prepares the compression of entries
+     *
+     * @param entries every entry of the compression, in visiting order
+     * @param options compression configuration
+     * @param workers the threads of the compression, for encoders compressing a single file in parallel
+     * @return compresses the tar file of each chunk
+     */
+    abstract Encoder encoder( List<ChunkEntry> entries, CompressionOptions options, Workers workers )
+            throws IOException;
+
+    /**
+     * Rejects the compression level or preset dictionary of the options if the subclass does not support them. Levels
+     * are deflate levels and preset dictionaries are not supported unless the subclass says otherwise.
+     *
+     * @throws IllegalArgumentException when they are not supported
+     */
+    void checkCompression( CompressionOptions options ) {
+        ZipArchiver.checkCompressionLevel( options, Deflater.BEST_COMPRESSION );
+        if ( options.isPresetDictionary() )
+            throw new IllegalArgumentException( getClass().getSimpleName() + " does not support preset dictionaries" );
+    }
+
+    /**
+     * @param in a compressed tar file, closed with the returned stream
+     * @return a stream of the tar file
+     */
+    abstract InputStream decode( InputStream in ) throws IOException;
+
+    /**
+     * Compresses a directory into tar files compressed by the subclass. With a single chunk, the tar file may be
+     * compressed on several threads, see {@link CompressionOptions#isParallelDeflate()}. Otherwise, chunks are
+     * compressed in parallel.
+     *
+     * @param options compression configuration
+     * @throws IllegalArgumentException when incremental compression, splitting on output size, deduplication,
+     *                                  resuming or solid blocks are configured
+     * @throws IOException              when compression fails due to IO errors
+     */
+    @Override
+    public void compress( CompressionOptions options ) throws IOException {
+        ZipArchiver.checkArguments( options );
+        Path outputDir = options.getOutput();
+        write( options, ( part, name ) -> FileChannel.open( outputDir.resolve( name ), CREATE, WRITE,
+                TRUNCATE_EXISTING ) );
+    }
+
+    /**
+     * Compresses into a single compressed tar file written to a channel. Nothing is written to disk.
+     *
+     * @param options compression configuration without a maximum file size
+     * @param output  where the compressed tar file is written, left open
+     * @throws IllegalArgumentException when a maximum file size is configured
+     * @throws IOException              when compression fails due to IO errors
+     */
+    @Override
+    public void compress( CompressionOptions options, WritableByteChannel output ) throws IOException {
+        if ( options.getMaxFileSize() > 0 )
+            throw new IllegalArgumentException( "A single output cannot be split, use a PartSink instead" );
+        ZipArchiver.checkInput( options );
+        write( options, ( part, name ) -> ZipArchiver.leaveOpen( output ) );
+    }
+
+    /**
+     * Compresses into compressed tar files written to the channels of a sink, the same way
+     * {@link #compress(CompressionOptions)} writes them to the output directory
+     *
+     * @param options compression configuration
+     * @param sink    opens a channel for each compressed tar file
+     * @throws IOException when compression fails due to IO errors
+     */
+    @Override
+    public void compress( CompressionOptions options, PartSink sink ) throws IOException {
+        ZipArchiver.checkInput( options );
+        List<String> names = write( options, sink::open );
+        sink.finish( names.size() );
+    }
+
+    /**
+     * Scans the input and writes each chunk to its own compressed tar file
+     *
+     * @return the names of the compressed tar files in part order
+     */
+    private List<String> write( CompressionOptions options, ZipArchiver.PartOpener opener ) throws IOException {
+        if ( options.isIncremental() || options.isSplitOnOutputSize() || options.isDeduplicate() || options.isResume()
+                || options.getSolidBlockSize() > 0 )
+            throw new IllegalArgumentException( getClass().getSimpleName() + " does not support incremental "
+                    + "compression, splitting on output size, deduplication, resuming or solid blocks" );
+        checkCompression( options );
+        ProgressTracker progress = new ProgressTracker( options.getListener(), -1, true );
+        List<String> names;
+        try ( Workers workers = Workers.of( options ) ) {
+            names = write( options, opener, progress, workers );
+        }
+        progress.finish();
+        return names;
+    }
+
+    private List<String> write( CompressionOptions options, ZipArchiver.PartOpener opener, ProgressTracker progress,
+            Workers workers ) throws IOException {
+        ChunkingFileVisitor visitor = new ChunkingFileVisitor( options, null );
+        DirectoryScanner.walk( options.getInput(), visitor, workers.getForkJoinPool() );
+        progress.scanCompleted( visitor.getFileCount(), visitor.getTotalSize() );
+
+        List<List<ChunkEntry>> chunks = visitor.getChunks();
+        for ( int i = 0; i < chunks.size(); i++ ) {
+            List<ChunkEntry> chunk = chunks.get( i );
+            progress.getListener().chunkPlanned( i, chunk.size(),
+                    chunk.stream().mapToLong( ChunkEntry::getLength ).sum() );
+        }
+        Encoder encoder = encoder( visitor.getEntries(), options, workers );
+        String input = options.getInput().getFileName().toString();
+        List<String> names = chunks.size() == 1 ? Collections.singletonList( input + getExtension() )
+                : IntStream.range( 0, chunks.size() )
+                        .mapToObj( i -> input + ".part." + i + getExtension() )
+                        .collect( Collectors.toList() );
+        boolean parallel = chunks.size() == 1 && options.isParallelDeflate();
+        workers.forEach( chunks.size(), i -> writeTar( chunks.get( i ), opener.open( i, names.get( i ) ),
+                names.get( i ), encoder, parallel, options, progress ) );
+        return names;
+    }
+
+    private static void writeTar( List<ChunkEntry> entries, WritableByteChannel channel, String name,
+            Encoder encoder, boolean parallel, CompressionOptions options, ProgressTracker progress )
+            throws IOException {
+        long[] compressed = new long[1];
+        OutputStream output = new FilterOutputStream( Channels.newOutputStream( channel ) ) {
+            @Override
+            public void write( byte[] b, int off, int len ) throws IOException {
+                out.write( b, off, len );
+                compressed[0] += len;
+                progress.written( len );
+            }
+        };
+        try ( TarWriter tar = new TarWriter( new BufferedOutputStream( encoder.encode( output, parallel ),
+                OUTPUT_BUFFER_SIZE ) ) ) {
+            for ( ChunkEntry entry : entries ) {
+                if ( entry.isDirectory() ) {
+                    tar.putDirectory( entry.getName() );
+                    continue;
+                }
+                long started = System.nanoTime();
+                progress.entryStarted( entry.getName() );
+                tar.beginEntry( entry.getName(), entry.getLength() );
+                writeData( entry, tar, options );
+                tar.endEntry();
+                progress.entryFinished( entry.getName(), entry.getLength(), -1, System.nanoTime() - started );
+                LOGGER.debug( "Written file={}", entry );
+            }
+        }
+        progress.partFinished( name, compressed[0] );
+    }
+
+    /**
+     * Copies the length of an entry from its source, stopping early if the file got shorter since it was visited
+     */
+    private static void writeData( ChunkEntry entry, TarWriter tar, CompressionOptions options ) throws IOException {
+        int bufferSize = options.getBufferSize();
+        byte[] buffer = Buffers.input( bufferSize );
+        long position = entry.getOffset();
+        long end = position + entry.getLength();
+        try ( SourceReader reader = SourceReader.open( entry.getSource(), options ) ) {
+            while ( position < end ) {
+                int read = reader.read( buffer, 0, ( int ) Math.min( bufferSize, end - position ), position );
+                if ( read < 0 )
+                    break;
+                tar.write( buffer, 0, read );
+                position += read;
+            }
+        }
+    }
+
+    /**
+     * Extracts the compressed tar files of the input directory in part order. The parallel option has no effect since
+     * tar streams are read sequentially.
+     *
+     * @param options decompression configuration
+     * @throws IllegalArgumentException when the input directory has no compressed tar file
+     * @throws IOException              when decompression fails due to IO errors
+     */
+    @Override
+    public void decompress( DecompressionOptions options ) throws IOException {
+        ZipArchiver.checkArguments( options );
+        Path inputDir = options.getInput();
+        List<Path> inputFiles;
+        try ( Stream<Path> children = Files.list( inputDir ) ) {
+            inputFiles = children.filter( path -> path.getFileName().toString().endsWith( getExtension() ) )
+                    .sorted( Comparator.comparingLong( this::partNumber ).thenComparing( Comparator.naturalOrder() ) )
+                    .collect( Collectors.toList() );
+        }
+        if ( inputFiles.isEmpty() )
+            throw new IllegalArgumentException( "Input directory '" + inputDir + "' has no " + getExtension()
+                    + " file" );
+
+        long totalSize = 0;
+        for ( Path inputFile : inputFiles )
+            totalSize += Files.size( inputFile );
+        options.getListener().scanCompleted( inputFiles.size(), totalSize );
+        ProgressTracker progress = new ProgressTracker( options.getListener(), totalSize, false );
+        for ( Path inputFile : inputFiles ) {
+            try ( InputStream in = decode( counting( Files.newInputStream( inputFile ), progress ) ) ) {
+                extract( in, options, progress );
+            }
+            progress.partFinished( inputFile.getFileName().toString(), Files.size( inputFile ) );
+        }
+        progress.finish();
+    }
+
+    /**
+     * Extracts compressed tar files read from channels one after another. Nothing is written to disk except the
+     * extracted files.
+     *
+     * @param options decompression configuration
+     * @param inputs  the compressed tar files in part order, read until their end and left open
+     * @throws IOException when decompression fails due to IO errors
+     */
+    @Override
+    public void decompress( DecompressionOptions options, List<? extends ReadableByteChannel> inputs )
+            throws IOException {
+        ZipArchiver.checkOutput( options );
+        options.getListener().scanCompleted( inputs.size(), -1 );
+        ProgressTracker progress = new ProgressTracker( options.getListener(), -1, false );
+        byte[] rest = new byte[options.getBufferSize()];
+        for ( ReadableByteChannel input : inputs ) {
+            InputStream channel = new FilterInputStream( Channels.newInputStream( input ) ) {
+                @Override
+                public void close() {}
+            };
+            try ( InputStream in = decode( counting( channel, progress ) ) ) {
+                extract( in, options, progress );
+                while ( in.read( rest ) >= 0 )
+                    ;
+            }
+        }
+        progress.finish();
+    }
+
+    private static void extract( InputStream in, IOOptions options, ProgressTracker progress ) throws IOException {
+        Path outputDir = options.getOutput();
+        TarReader tar = new TarReader( in );
+        TarReader.Entry entry;
+        while ( ( entry = tar.next() ) != null ) {
+            if ( entry.isDirectory() ) {
+                Files.createDirectories( outputDir.resolve( entry.getName() ) );
+                continue;
+            }
+            long started = System.nanoTime();
+            progress.entryStarted( entry.getName() );
+            Path outputFile = outputDir.resolve( ZipArchiver.unpartName( entry.getName() ) );
+            Files.createDirectories( outputFile.getParent() );
+            byte[] buffer = Buffers.input( options.getBufferSize() );
+            try ( OutputStream out = Files.newOutputStream( outputFile, CREATE, APPEND ) ) {
+                int read;
+                while ( ( read = tar.read( buffer, 0, options.getBufferSize() ) ) >= 0 )
+                    out.write( buffer, 0, read );
+            }
+            progress.entryFinished( entry.getName(), entry.getSize(), -1, System.nanoTime() - started );
+            LOGGER.debug( "Extracted file={}", entry );
+        }
+    }
+
+    /**
+     * @return a buffered stream that counts the compressed bytes read from another one as processed input
+     */
+    private static InputStream counting( InputStream in, ProgressTracker progress ) {
+        return new BufferedInputStream( new FilterInputStream( in ) {
+            @Override
+            public int read( byte[] b, int off, int len ) throws IOException {
+                int read = super.read( b, off, len );
+                if ( read > 0 )
+                    progress.read( read );
+                return read;
+            }
+        }, OUTPUT_BUFFER_SIZE );
+    }
+
+    /**
+     * @return the part number of a compressed tar file, -1 if it is not a part
+     */
+    private long partNumber( Path file ) {
+        String name = file.getFileName().toString();
+        return ZipArchiver.partNumber( name.substring( 0, name.length() - getExtension().length() ) );
+    }
+}
@@ -0,0 +1,45 @@
+package com.danielgomez.archiver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Implements archive operations with gzipped tar files, named with a '.tar.gz' extension, that tar and gzip tools read
+ * as they are streamed. Chunking and part naming work like {@link ZipArchiver}, see {@link TarArchiver}.
+ * <p>
+ * A single compressed file is gzipped on several threads the way pigz does when parallel deflate is set, see
+ * {@link CompressionOptions#isParallelDeflate()} and {@link ParallelGzipOutputStream}.
+ */
+public class TarGzArchiver extends TarArchiver {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    String getExtension() {
+        return ".tar.gz";
+    }
+
+    @Override
+    Encoder encoder( List<ChunkEntry> entries, CompressionOptions options, Workers workers ) {
+        int level = options.getCompressionLevel();
+        return ( out, parallel ) -> parallel ? new ParallelGzipOutputStream( out, level, workers )
+                : gzip( out, level );
+    }
+
+    @Override
+    InputStream decode( InputStream in ) throws IOException {
+        return new GZIPInputStream( in, BUFFER_SIZE );
+    }
+
+    private static OutputStream gzip( OutputStream out, int level ) throws IOException {
+        return new GZIPOutputStream( out, BUFFER_SIZE ) {
+            {
+                def.setLevel( level );
+            }
+        };
+    }
+}
@@ -0,0 +1,252 @@
+package com.danielgomez.archiver;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the entries of a tar stream written by {@link TarWriter} or by common tar tools. Besides ustar headers, pax
+ * extended headers and GNU long names are understood. Entries other than files and directories, like links, are
+ * skipped.
+ */
+final class TarReader {
+
+    private static Logger LOGGER = LoggerFactory.getLogger( TarReader.class );
+
+    private final InputStream in;
+
+    private final byte[] header = new byte[TarWriter.BLOCK_SIZE];
+
+    private long remaining;
+
+    private long padding;
+
+    /**
+     * @param in the tar stream, not closed by the reader
+     */
+    TarReader( InputStream in ) {
+        this.in = in;
+    }
+
+    /**
+     * Moves to the next file or directory, skipping what is left of the current one
+     *
+     * @return the entry, null at the end of the stream
+     * @throws IOException when a header is corrupt or the stream ends early
+     */
+    Entry next() throws IOException {
+        String longName = null;
+        long longSize = -1;
+        while ( true ) {
+            skip( remaining + padding );
+            remaining = 0;
+            padding = 0;
+            if ( !readHeader() )
+                return null;
+
+            char type = ( char ) header[156];
+            long size = longSize >= 0 ? longSize : parseNumber( 124, 12 );
+            String name = longName != null ? longName : parseName();
+            remaining = size;
+            padding = -size & ( TarWriter.BLOCK_SIZE - 1 );
+            switch ( type ) {
+                case 'x':
+                    String records = readString( size );
+                    longName = recordValue( records, "path", longName );
+                    String paxSize = recordValue( records, "size", null );
+                    if ( paxSize != null )
+                        longSize = Long.parseLong( paxSize );
+                    continue;
+                case 'L':
+                    longName = readString( size );
+                    int end = longName.indexOf( '\0' );
+                    if ( end >= 0 )
+                        longName = longName.substring( 0, end );
+                    continue;
+                case '0':
+                case '\0':
+                case '7':
+                    return new Entry( name, size, false );
+                case '5':
+                    remaining = 0;
+                    padding = 0;
+                    return new Entry( name, 0, true );
+                default:
+                    LOGGER.debug( "Skipping entry '{}' of type '{}'", name, type );
+                    longName = null;
+                    longSize = -1;
+            }
+        }
+    }
+
+    /**
+     * Reads data of the current entry
+     *
+     * @return the number of bytes read, -1 at the end of the entry
+     */
+    int read( byte[] bytes, int offset, int length ) throws IOException {
+        if ( remaining <= 0 )
+            return -1;
+        int read = in.read( bytes, offset, ( int ) Math.min( length, remaining ) );
+        if ( read < 0 )
+            throw new EOFException( "Unexpected end of tar stream" );
+        remaining -= read;
+        return read;
+    }
+
+    /**
+     * @return false at the end of the stream, which is an empty block or the end of the input
+     */
+    private boolean readHeader() throws IOException {
+        int read = readFully( header, TarWriter.BLOCK_SIZE );
+        if ( read == 0 )
+            return false;
+        if ( read < TarWriter.BLOCK_SIZE )
+            throw new EOFException( "Unexpected end of tar stream" );
+        boolean empty = true;
+        long checksum = 0;
+        for ( int i = 0; i < header.length; i++ ) {
+            empty &= header[i] == 0;
+            checksum += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+        }
+        if ( empty )
+            return false;
+        if ( checksum != parseNumber( 148, 8 ) )
+            throw new IOException( "Corrupt tar header" );
+        return true;
+    }
+
+    private String parseName() {
+        String name = parseString( 0, 100 );
+        if ( parseString( 257, 5 ).equals( "ustar" ) ) {
+            String prefix = parseString( 345, 155 );
+            if ( !prefix.isEmpty() )
+                name = prefix + "/" + name;
+        }
+        return name;
+    }
+
+    private String parseString( int offset, int length ) {
+        int end = offset;
+        while ( end < offset + length && header[end] != 0 )
+            end++;
+        return new String( header, offset, end - offset, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Parses an octal field, or a big endian binary one when its first bit is set as GNU tar writes large numbers
+     */
+    private long parseNumber( int offset, int length ) throws IOException {
+        if ( ( header[offset] & 0x80 ) != 0 ) {
+            long value = header[offset] & 0x7F;
+            for ( int i = offset + 1; i < offset + length; i++ )
+                value = value << 8 | header[i] & 0xFF;
+            return value;
+        }
+        long value = 0;
+        for ( int i = offset; i < offset + length; i++ ) {
+            byte b = header[i];
+            if ( b == 0 || b == ' ' ) {
+                if ( value > 0 )
+                    break;
+                continue;
+            }
+            if ( b < '0' || b > '7' )
+                throw new IOException( "Corrupt tar header" );
+            value = value * 8 + b - '0';
+        }
+        return value;
+    }
+
+    private String readString( long size ) throws IOException {
+        byte[] bytes = new byte[( int ) size];
+        if ( readFully( bytes, bytes.length ) < bytes.length )
+            throw new EOFException( "Unexpected end of tar stream" );
+        remaining = 0;
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * @return the value of the last pax record with the given key, or the default value if there is none
+     */
+    private static String recordValue( String records, String key, String defaultValue ) {
+        String value = defaultValue;
+        int position = 0;
+        while ( position < records.length() ) {
+            int space = records.indexOf( ' ', position );
+            int newline = records.indexOf( '\n', space );
+            if ( space < 0 || newline < 0 )
+                break;
+            String record = records.substring( space + 1, newline );
+            if ( record.startsWith( key + "=" ) )
+                value = record.substring( key.length() + 1 );
+            position = newline + 1;
+        }
+        return value;
+    }
+
+    private int readFully( byte[] bytes, int length ) throws IOException {
+        int total = 0;
+        while ( total < length ) {
+            int read = in.read( bytes, total, length - total );
+            if ( read < 0 )
+                break;
+            total += read;
+        }
+        return total;
+    }
+
+    private void skip( long length ) throws IOException {
+        while ( length > 0 ) {
+            long skipped = in.skip( length );
+            if ( skipped <= 0 ) {
+                if ( in.read() < 0 )
+                    throw new EOFException( "Unexpected end of tar stream" );
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    /**
+     * A file or directory of a tar stream
+     */
+    static final class Entry {
+
+        private final String name;
+
+        private final long size;
+
+        private final boolean directory;
+
+        private Entry( String name, long size, boolean directory ) {
+            this.name = name;
+            this.size = size;
+            this.directory = directory;
+        }
+
+        /**
+         * @return The name of the entry, ending with '/' for directories
+         */
+        String getName() {
+            return name;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        boolean isDirectory() {
+            return directory;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
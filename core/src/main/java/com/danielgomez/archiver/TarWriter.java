@@ -0,0 +1,215 @@
+package com.danielgomez.archiver;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes a tar stream in the POSIX ustar format. Names that do not fit in the name and prefix fields of a header and
+ * sizes of 8 GB or more are written in a pax extended header before the entry, which every current tar reads.
+ * <p>
+ * The size of a file entry is written in its header, so exactly that many bytes must be written before
+ * {@link #endEntry()}.
+ */
+final class TarWriter implements Closeable {
+
+    static final int BLOCK_SIZE = 512;
+
+    /**
+     * Largest size the 11 octal digits of the size field hold
+     */
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+
+    private static final int NAME_LENGTH = 100;
+
+    private static final int PREFIX_LENGTH = 155;
+
+    private final OutputStream out;
+
+    private final long time = System.currentTimeMillis() / 1000;
+
+    private final byte[] header = new byte[BLOCK_SIZE];
+
+    private long remaining = -1;
+
+    private long written;
+
+    private boolean finished;
+
+    /**
+     * @param out where the tar stream is written, closed with the writer
+     */
+    TarWriter( OutputStream out ) {
+        this.out = out;
+    }
+
+    /**
+     * Writes a directory entry. A '/' is appended to the name if it is missing.
+     */
+    void putDirectory( String name ) throws IOException {
+        writeHeader( name.endsWith( "/" ) ? name : name + "/", 0, '5', 0755 );
+    }
+
+    /**
+     * Starts a file entry whose data is written with {@link #write(byte[], int, int)}
+     *
+     * @param size the exact number of bytes of the entry
+     */
+    void beginEntry( String name, long size ) throws IOException {
+        if ( remaining >= 0 )
+            throw new IllegalStateException( "An entry is not ended" );
+        writeHeader( name, size, '0', 0644 );
+        remaining = size;
+    }
+
+    /**
+     * Writes data of the current entry
+     */
+    void write( byte[] bytes, int offset, int length ) throws IOException {
+        if ( length > remaining )
+            throw new IllegalStateException( "Entry data exceeds its size by " + ( length - remaining ) + " bytes" );
+        out.write( bytes, offset, length );
+        remaining -= length;
+        written += length;
+    }
+
+    /**
+     * Ends the current entry, padding its data to a whole block
+     *
+     * @throws EOFException when less data was written than the size of the entry
+     */
+    void endEntry() throws IOException {
+        if ( remaining > 0 )
+            throw new EOFException( remaining + " bytes of the entry are missing" );
+        remaining = -1;
+        pad();
+    }
+
+    /**
+     * @return The bytes written so far, headers included
+     */
+    long getWritten() {
+        return written;
+    }
+
+    /**
+     * Writes the two empty blocks that end a tar stream
+     */
+    void finish() throws IOException {
+        if ( finished )
+            return;
+        if ( remaining >= 0 )
+            throw new IllegalStateException( "An entry is not ended" );
+        Arrays.fill( header, ( byte ) 0 );
+        writeBlock( header );
+        writeBlock( header );
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeHeader( String name, long size, char type, int mode ) throws IOException {
+        byte[] nameBytes = name.getBytes( StandardCharsets.UTF_8 );
+        int split = split( nameBytes );
+        StringBuilder pax = new StringBuilder();
+        if ( split < -1 )
+            pax.append( record( "path", name ) );
+        if ( size > MAX_OCTAL_SIZE )
+            pax.append( record( "size", Long.toString( size ) ) );
+        if ( pax.length() > 0 ) {
+            byte[] records = pax.toString().getBytes( StandardCharsets.UTF_8 );
+            fillHeader( "././@PaxHeader".getBytes( StandardCharsets.US_ASCII ), -1, records.length, 'x', 0644 );
+            writeBlock( header );
+            out.write( records );
+            written += records.length;
+            pad();
+        }
+        fillHeader( nameBytes, split, size > MAX_OCTAL_SIZE ? 0 : size, type, mode );
+        writeBlock( header );
+    }
+
+    /**
+     * @return -1 if the name fits in the name field, the index of the '/' at which it is split between the prefix and
+     * name fields, or less than -1 if it fits in neither way and is truncated
+     */
+    private static int split( byte[] name ) {
+        if ( name.length <= NAME_LENGTH )
+            return -1;
+        for ( int i = Math.min( PREFIX_LENGTH, name.length - 1 ); i > 0; i-- ) {
+            if ( name[i] == '/' )
+                return name.length - i - 1 <= NAME_LENGTH ? i : -2;
+        }
+        return -2;
+    }
+
+    private void fillHeader( byte[] name, int split, long size, char type, int mode ) {
+        Arrays.fill( header, ( byte ) 0 );
+        if ( split >= 0 ) {
+            System.arraycopy( name, split + 1, header, 0, name.length - split - 1 );
+            System.arraycopy( name, 0, header, 345, split );
+        } else {
+            System.arraycopy( name, 0, header, 0, Math.min( NAME_LENGTH, name.length ) );
+        }
+        putOctal( 100, 8, mode );
+        putOctal( 108, 8, 0 );
+        putOctal( 116, 8, 0 );
+        putOctal( 124, 12, size );
+        putOctal( 136, 12, time );
+        Arrays.fill( header, 148, 156, ( byte ) ' ' );
+        header[156] = ( byte ) type;
+        System.arraycopy( "ustar\u000000".getBytes( StandardCharsets.US_ASCII ), 0, header, 257, 8 );
+        long checksum = 0;
+        for ( byte b : header )
+            checksum += b & 0xFF;
+        putOctal( 148, 7, checksum );
+    }
+
+    /**
+     * Writes a number as zero padded octal digits followed by a NUL
+     */
+    private void putOctal( int offset, int length, long value ) {
+        String digits = Long.toOctalString( value );
+        int start = offset + length - 1 - digits.length();
+        Arrays.fill( header, offset, start, ( byte ) '0' );
+        for ( int i = 0; i < digits.length(); i++ )
+            header[start + i] = ( byte ) digits.charAt( i );
+        header[offset + length - 1] = 0;
+    }
+
+    /**
+     * @return a pax record, which starts with its own length in bytes
+     */
+    private static String record( String key, String value ) {
+        String content = " " + key + "=" + value + "\n";
+        int length = content.getBytes( StandardCharsets.UTF_8 ).length;
+        int total = length + Integer.toString( length ).length();
+        if ( Integer.toString( total ).length() > Integer.toString( length ).length() )
+            total++;
+        return total + content;
+    }
+
+    private void writeBlock( byte[] block ) throws IOException {
+        out.write( block, 0, BLOCK_SIZE );
+        written += BLOCK_SIZE;
+    }
+
+    private void pad() throws IOException {
+        int padding = ( int ) ( -written & ( BLOCK_SIZE - 1 ) );
+        if ( padding == 0 )
+            return;
+        Arrays.fill( header, ( byte ) 0 );
+        out.write( header, 0, padding );
+        written += padding;
+    }
+}
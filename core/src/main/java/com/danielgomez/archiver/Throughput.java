@@ -0,0 +1,80 @@
+package com.danielgomez.archiver;
+
+/**
+ * A snapshot of the progress of an archive operation. Input bytes are the files being compressed or the compressed
+ * files being decompressed; output bytes are what was written from them.
+ */
+public final class Throughput {
+
+    private final long inputBytes;
+
+    private final long outputBytes;
+
+    private final long totalInputBytes;
+
+    private final long elapsedNanos;
+
+    private final boolean done;
+
+    Throughput( long inputBytes, long outputBytes, long totalInputBytes, long elapsedNanos, boolean done ) {
+        this.inputBytes = inputBytes;
+        this.outputBytes = outputBytes;
+        this.totalInputBytes = totalInputBytes;
+        this.elapsedNanos = elapsedNanos;
+        this.done = done;
+    }
+
+    /**
+     * @return The input bytes processed so far. An entry is counted once it is finished.
+     */
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    /**
+     * @return The bytes written so far
+     */
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    /**
+     * @return The input bytes of the whole operation, -1 if unknown
+     */
+    public long getTotalInputBytes() {
+        return totalInputBytes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return true for the last snapshot of an operation
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return The input bytes processed per second since the operation started
+     */
+    public double getBytesPerSecond() {
+        return elapsedNanos <= 0 ? 0 : inputBytes * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return The fraction of the input processed, between 0 and 1, or -1 if the total is unknown. Zip headers are
+     * not counted when decompressing so only the last snapshot reaches 1.
+     */
+    public double getFraction() {
+        if ( totalInputBytes < 0 )
+            return -1;
+        return done || totalInputBytes == 0 ? 1 : Math.min( 1, ( double ) inputBytes / totalInputBytes );
+    }
+
+    @Override
+    public String toString() {
+        return inputBytes + "/" + totalInputBytes + " bytes in " + elapsedNanos / 1_000_000 + " ms";
+    }
+}
@@ -0,0 +1,208 @@
+package com.danielgomez.archiver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads of one archive operation, as configured by {@link IOOptions#getExecutor()},
+ * {@link IOOptions#getParallelism()} and {@link IOOptions#isVirtualThreads()}. Without any of them the common pool is
+ * used.
+ * <p>
+ * Pools created for the operation are shut down when it is closed, executors given by the options are left alone.
+ * Tasks run on the executor never wait for other tasks of the executor, so an executor with a single thread is enough.
+ */
+final class Workers implements Closeable {
+
+    private static final String VIRTUAL_THREADS_FACTORY = "newVirtualThreadPerTaskExecutor";
+
+    private static final AtomicInteger ASYNC_THREADS = new AtomicInteger();
+
+    /**
+     * Runs the operations of {@link #async(String, Operation)}
+     */
+    private static final ExecutorService ASYNC = Executors.newCachedThreadPool( runnable -> {
+        Thread thread = new Thread( runnable, "archiver-async-" + ASYNC_THREADS.incrementAndGet() );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    /**
+     * Runs one of a number of tasks
+     */
+    interface Task {
+
+        void run( int index ) throws IOException;
+    }
+
+    /**
+     * An operation run on its own thread
+     */
+    interface Operation {
+
+        void run() throws IOException;
+    }
+
+    private final Executor executor;
+
+    private final int parallelism;
+
+    private final boolean owned;
+
+    private ForkJoinPool scanPool;
+
+    private Workers( Executor executor, int parallelism, boolean owned ) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.owned = owned;
+    }
+
+    static Workers of( IOOptions options ) {
+        int parallelism = options.getParallelism();
+        if ( options.isVirtualThreads() )
+            return new Workers( newVirtualThreadExecutor(), parallelism > 0 ? parallelism
+                    : Runtime.getRuntime().availableProcessors(), true );
+        Executor executor = options.getExecutor();
+        if ( executor != null ) {
+            if ( parallelism <= 0 )
+                parallelism = executor instanceof ForkJoinPool ? ( ( ForkJoinPool ) executor ).getParallelism()
+                        : Runtime.getRuntime().availableProcessors();
+            return new Workers( executor, parallelism, false );
+        }
+        if ( parallelism > 0 )
+            return new Workers( new ForkJoinPool( parallelism ), parallelism, true );
+        return new Workers( ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism(), false );
+    }
+
+    /**
+     * @return true if the running JVM has virtual threads, from Java 21 on
+     */
+    static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod( VIRTUAL_THREADS_FACTORY );
+            return true;
+        } catch ( NoSuchMethodException e ) {
+            return false;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return ( ExecutorService ) Executors.class.getMethod( VIRTUAL_THREADS_FACTORY ).invoke( null );
+        } catch ( NoSuchMethodException | IllegalAccessException | InvocationTargetException e ) {
+            throw new IllegalStateException( "Virtual threads are not available", e );
+        }
+    }
+
+    /**
+     * Runs an operation on a thread of its own, leaving the thread of the caller free. Its parallel work still runs
+     * where its options say.
+     * <p>
+     * The operation waits for its tasks, so running it on the executor of its options would hold a thread that its
+     * tasks may need, which deadlocks an executor with a single thread. It runs on a shared pool of daemon threads
+     * instead, which reuses idle threads and does not keep the JVM from exiting.
+     *
+     * @param name the name of the thread while it runs the operation
+     * @return completed once the operation is done, exceptionally with what it threw
+     */
+    static CompletableFuture<Void> async( String name, Operation operation ) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        ASYNC.execute( () -> {
+            Thread thread = Thread.currentThread();
+            String poolName = thread.getName();
+            thread.setName( name );
+            try {
+                operation.run();
+                future.complete( null );
+            } catch ( Throwable e ) {
+                future.completeExceptionally( e );
+            } finally {
+                thread.setName( poolName );
+            }
+        } );
+        return future;
+    }
+
+    Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return How many tasks are meant to run at the same time, used to size what is held in flight. Always > 0.
+     */
+    int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return The pool scanning directories, see {@link DirectoryScanner}: the executor itself if it is a fork/join
+     * pool, otherwise a pool of the same parallelism created for the operation
+     */
+    synchronized ForkJoinPool getForkJoinPool() {
+        if ( executor instanceof ForkJoinPool )
+            return ( ForkJoinPool ) executor;
+        if ( scanPool == null )
+            scanPool = new ForkJoinPool( parallelism );
+        return scanPool;
+    }
+
+    /**
+     * Runs tasks on the executor and waits for them. A single task runs on the calling thread, so that it can itself
+     * hand work to the executor without taking one of its threads.
+     *
+     * @param count the number of tasks
+     * @throws IOException the failure of the first failed task, in which case tasks not started yet are cancelled
+     */
+    void forEach( int count, Task task ) throws IOException {
+        if ( count == 1 ) {
+            task.run( 0 );
+            return;
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>( count );
+        for ( int i = 0; i < count; i++ ) {
+            int index = i;
+            futures.add( CompletableFuture.runAsync( () -> {
+                try {
+                    task.run( index );
+                } catch ( IOException e ) {
+                    throw new UncheckedIOException( e );
+                }
+            }, executor ) );
+        }
+        try {
+            for ( CompletableFuture<Void> future : futures )
+                future.join();
+        } catch ( CompletionException e ) {
+            futures.forEach( future -> future.cancel( false ) );
+            Throwable cause = e.getCause();
+            if ( cause instanceof UncheckedIOException )
+                throw ( ( UncheckedIOException ) cause ).getCause();
+            if ( cause instanceof RuntimeException )
+                throw ( RuntimeException ) cause;
+            if ( cause instanceof Error )
+                throw ( Error ) cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Shuts down the pools created for the operation, letting their tasks finish
+     */
+    @Override
+    public synchronized void close() {
+        if ( owned )
+            ( ( ExecutorService ) executor ).shutdown();
+        if ( scanPool != null )
+            scanPool.shutdown();
+    }
+}
@@ -1,27 +1,51 @@
 package com.danielgomez.archiver;
 
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.nio.file.StandardOpenOption.APPEND;
 import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.FileVisitResult;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
+import java.nio.file.PathMatcher;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +57,39 @@ public class ZipArchiver implements Archiver {
 
     private static Logger LOGGER = LoggerFactory.getLogger( ZipArchiver.class );
 
+    static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write( int b ) {}
+
+        @Override
+        public void write( byte[] b, int off, int len ) {}
+    };
+
+    private static final Pattern PART_PATTERN = Pattern.compile( "(.*)\\.part\\.([0-9]+)(\\.[^./]*)?" );
+
+    /**
+     * Start of the comment of every zip file, see {@link #partComment(int, boolean)}
+     */
+    private static final String PART_COMMENT = "archiver part ";
+
+    /**
+     * Start of the comment of the first piece of a split file, see {@link #sizeComment(long)}
+     */
+    private static final String SIZE_COMMENT = "archiver file size ";
+
+    /**
+     * Compressed bytes of the entries inflated by one task when extracting in parallel, so that many small entries do
+     * not each cost a task and a file handle
+     */
+    private static final long EXTRACT_BATCH_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Orders compressed files by part number so 'part.10' comes after 'part.9'
+     */
+    static final Comparator<Path> PART_ORDER = Comparator
+            .comparingLong( ( Path path ) -> partNumber( path.getFileName().toString() ) )
+            .thenComparing( Comparator.naturalOrder() );
+
     /**
      * Ensures the following conditions:
      * <ul>
@@ -46,7 +103,12 @@ public class ZipArchiver implements Archiver {
      * @param options parameters
      * @throws IOException when unable to determine conditions due to IO errors
      */
-    private static void checkArguments( IOOptions options ) throws IOException {
+    static void checkArguments( IOOptions options ) throws IOException {
+        checkInput( options );
+        checkOutput( options );
+    }
+
+    static void checkInput( IOOptions options ) throws IOException {
         Path inputDir = options.getInput();
         if ( Files.notExists( inputDir ) )
             throw new FileNotFoundException( "Input '" + inputDir + "' does not exist" );
@@ -56,7 +118,18 @@ public class ZipArchiver implements Archiver {
             if ( !children.findAny().isPresent() )
                 throw new NoSuchFileException( "Input '" + inputDir + "' is empty" );
         }
+    }
 
+    /**
+     * @param maxLevel the best compression level of the archiver
+     * @throws IllegalArgumentException when the compression level of the options is above it
+     */
+    static void checkCompressionLevel( CompressionOptions options, int maxLevel ) {
+        if ( options.getCompressionLevel() > maxLevel )
+            throw new IllegalArgumentException( "Compression level must be between -1 and " + maxLevel );
+    }
+
+    static void checkOutput( IOOptions options ) throws IOException {
         Path outputDir = options.getOutput();
         if ( Files.exists( outputDir ) ) {
             if ( !Files.isDirectory( outputDir ) )
@@ -69,18 +142,46 @@ public class ZipArchiver implements Archiver {
      * Compresses a directory and the files inside it by doing the following processes:
      * <ul>
      *     <li>
+     *         Input directory is scanned in parallel, see {@link DirectoryScanner}. Files are taken in name order so
+     *         the same tree always gives the same zip files.
+     *     </li>
+     *     <li>
+     *         With the sequential {@link ChunkPlanner} and a maximum file size, each chunk is written as soon as it is
+     *         full while the rest of the input is still being scanned, see {@link ChunkPipeline}. Other planners need
+     *         every entry before they can plan, so the whole input is scanned first.
+     *     </li>
+     *     <li>
      *         Input directory is split into chunks. A chunk is a list of files in which the total file size do not
      *         exceed the maximum file size configured in the compression options. A file may also be chunked if it
-     *         exceeds the limit.
+     *         exceeds the limit. How files are grouped is decided by the {@link ChunkPlanner} of the options.
      *     </li>
      *     <li>
      *         A corresponding zip file is generated for each chunk. If there is only one chunk, a single zip file is
      *         generated using the name of the input directory. Otherwise, multiple zip files are
      *         generated with a suffix of '.part.{n}' where 'n' is the chunk number. Chunks are written to a zip in a
-     *         parallel-manner.
+     *         parallel-manner. With a single chunk, the files themselves can be deflated in parallel blocks instead,
+     *         see {@link CompressionOptions#isParallelDeflate()}.
      *     </li>
      * </ul>
      * <p>
+     * When {@link CompressionOptions#isSplitOnOutputSize()} is set, the maximum file size is enforced on the zip files
+     * instead. Files are written in order and a new zip file is started whenever the current one is full, splitting the
+     * file being written if needed. The first piece of a split file keeps its name while the pieces after it are named
+     * with a '.part.{n}' suffix starting at 1.
+     * <p>
+     * When {@link CompressionOptions#isDeduplicate()} is set, files with the same content as a file before them are
+     * left out and listed in an index entry of the last zip file, see {@link Duplicates}.
+     * <p>
+     * When {@link CompressionOptions#isIncremental()} is set, a manifest of the written entries is kept next to the zip
+     * files. The next compression copies the compressed data of files whose size and last modified time did not change
+     * from the previous zip files instead of deflating them again. Staged zip files left behind by an incremental
+     * compression that failed are deleted.
+     * <p>
+     * When {@link CompressionOptions#isResume()} is set, zip files that the journal of a failed compression records are
+     * kept as long as they would hold the same entries and still have the size and trailing bytes it records. Every
+     * zip file this compression finishes is flushed to disk and recorded in the journal in turn, see {@link Journal},
+     * so that it can be resumed again. The journal is deleted once everything is written. Without resuming, no journal
+     * is kept and nothing is flushed.
      *
      * @param options compression configuration
      * @throws IOException when compression fails due to IO errors
@@ -88,275 +189,1511 @@ public class ZipArchiver implements Archiver {
     @Override
     public void compress( CompressionOptions options ) throws IOException {
         checkArguments( options );
+        checkCompressionLevel( options, Deflater.BEST_COMPRESSION );
         Path inputDir = options.getInput();
         Path outputDir = options.getOutput();
         Path output = outputDir.resolve( inputDir.getFileName() + ".zip" );
+        deleteStaged( output );
+
+        Manifest previous = options.isIncremental() ? Manifest.read( manifestFile( output ) ) : null;
+        ChunkingFileVisitor visitor = new ChunkingFileVisitor( options, previous );
+        List<Path> zipFiles;
+        try ( Journal journal = options.isResume() ? Journal.open( journalFile( output ) ) : null ) {
+            zipFiles = write( visitor, options,
+                    ( part, name ) -> FileChannel.open( staged( outputDir.resolve( name ), options ), CREATE, WRITE,
+                            TRUNCATE_EXISTING ), journal ).stream()
+                    .map( outputDir::resolve )
+                    .collect( Collectors.toList() );
+            if ( journal != null )
+                journal.delete();
+        } catch ( IOException | RuntimeException | Error e ) {
+            if ( options.isIncremental() )
+                deleteStaged( output );
+            throw e;
+        }
+        if ( zipFiles.size() == 1 && !zipFiles.get( 0 ).equals( output ) ) {
+            Files.move( staged( zipFiles.get( 0 ), options ), staged( output, options ), REPLACE_EXISTING );
+            zipFiles = Collections.singletonList( output );
+        }
+        if ( previous != null )
+            replace( output, zipFiles, previous, visitor, options );
+    }
+
+    /**
+     * Compresses into a single zip file written to a channel. Nothing is written to disk.
+     *
+     * @param options compression configuration without a maximum file size
+     * @param output  where the zip file is written, left open
+     * @throws IllegalArgumentException when a maximum file size, incremental compression or resuming is configured
+     * @throws IOException              when compression fails due to IO errors
+     */
+    @Override
+    public void compress( CompressionOptions options, WritableByteChannel output ) throws IOException {
+        if ( options.getMaxFileSize() > 0 )
+            throw new IllegalArgumentException( "A single output cannot be split, use a PartSink instead" );
+        compress( options, ( part, name ) -> leaveOpen( output ) );
+    }
+
+    /**
+     * @return a channel writing to another one, whose closing leaves the other one open
+     */
+    static WritableByteChannel leaveOpen( WritableByteChannel channel ) {
+        return new WritableByteChannel() {
+            @Override
+            public int write( ByteBuffer src ) throws IOException {
+                return channel.write( src );
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    /**
+     * Compresses into zip files written to the channels of a sink, the same way {@link #compress(CompressionOptions)}
+     * writes them to the output directory. Nothing is written to disk.
+     *
+     * @param options compression configuration
+     * @param sink    opens a channel for each zip file
+     * @throws IllegalArgumentException when incremental compression or resuming is configured, since they read previous
+     *                                  zip files
+     * @throws IOException              when compression fails due to IO errors
+     */
+    @Override
+    public void compress( CompressionOptions options, PartSink sink ) throws IOException {
+        checkInput( options );
+        checkCompressionLevel( options, Deflater.BEST_COMPRESSION );
+        if ( options.isIncremental() )
+            throw new IllegalArgumentException( "Incremental compression needs an output directory" );
+        if ( options.isResume() )
+            throw new IllegalArgumentException( "Resuming needs an output directory" );
+        List<String> names = write( new ChunkingFileVisitor( options, null ), options, sink::open, null );
+        sink.finish( names.size() );
+    }
+
+    /**
+     * Opens the output of a zip file
+     */
+    interface PartOpener {
+
+        WritableByteChannel open( int part, String name ) throws IOException;
+    }
 
-        Path tempDir = Files.createTempDirectory( "compress-" ).resolve( options.getInput().getFileName().toString() );
-        List<List<Path>> chunked = chunk( inputDir, options, tempDir );
+    /**
+     * Scans the input and writes its entries to as many zip files as the options require, reporting progress to the
+     * listener of the options
+     *
+     * @param visitor an unused visitor, holding the visited entries once done
+     * @param journal where finished zip files are recorded, null for none
+     * @return the names of the zip files in part order
+     * @throws IllegalArgumentException when the input holds a name reserved for the entries the archiver adds
+     */
+    private static List<String> write( ChunkingFileVisitor visitor, CompressionOptions options, PartOpener opener,
+            Journal journal ) throws IOException {
+        checkReservedNames( options.getInput() );
+        ProgressTracker progress = new ProgressTracker( options.getListener(), -1, true );
+        List<String> names;
+        try ( Workers workers = Workers.of( options ) ) {
+            if ( options.getChunkPlanner() instanceof SequentialChunkPlanner && options.getMaxFileSize() > 0
+                    && !options.isSplitOnOutputSize() && !options.isDeduplicate()
+                    && !options.isPresetDictionary() ) {
+                names = writeWhileScanning( visitor, options, opener, journal, progress, workers );
+            } else {
+                DirectoryScanner.walk( options.getInput(), visitor, workers.getForkJoinPool() );
+                if ( options.isDeduplicate() )
+                    visitor.deduplicate( workers );
+                progress.scanCompleted( visitor.getFileCount(), visitor.getTotalSize() );
+                names = write( visitor, options, opener, journal, progress, workers );
+            }
+        }
+        progress.finish();
+        return names;
+    }
+
+    /**
+     * Hands each chunk to a {@link ChunkPipeline} as soon as the visitor fills it, so chunks are written while the
+     * input is scanned. Chunks are the ones the sequential planner would give for the whole input.
+     */
+    private static List<String> writeWhileScanning( ChunkingFileVisitor visitor, CompressionOptions options,
+            PartOpener opener, Journal journal, ProgressTracker progress, Workers workers ) throws IOException {
+        String output = options.getInput().getFileName() + ".zip";
+        ChunkPipeline pipeline = new ChunkPipeline( ( chunk, entries, last ) -> {
+            boolean only = last && chunk == 0;
+            String name = only ? output : partName( output, "" + chunk );
+            writeChunk( entries, chunk, last, name, opener, journal, options,
+                    only && options.isParallelDeflate() ? workers : null, progress );
+        }, progress.getListener(), workers );
+        try {
+            visitor.writeTo( pipeline );
+            DirectoryScanner.walk( options.getInput(), visitor, workers.getForkJoinPool() );
+            visitor.finish();
+        } catch ( IOException | RuntimeException | Error e ) {
+            pipeline.abort();
+            throw e;
+        }
+        progress.scanCompleted( visitor.getFileCount(), visitor.getTotalSize() );
+        int chunkCount = pipeline.finish();
+        if ( chunkCount == 1 )
+            return Collections.singletonList( output );
+        return IntStream.range( 0, chunkCount )
+                .mapToObj( i -> partName( output, "" + i ) )
+                .collect( Collectors.toList() );
+    }
+
+    private static List<String> write( ChunkingFileVisitor visitor, CompressionOptions options, PartOpener opener,
+            Journal journal, ProgressTracker progress, Workers workers ) throws IOException {
+        String output = options.getInput().getFileName() + ".zip";
+        byte[] dictionary = visitor.getDictionary();
+        if ( options.isSplitOnOutputSize() && options.getMaxFileSize() > 0 )
+            return writeToSplitZip( PresetDictionary.prepend( visitor.getEntries(), dictionary ), output, options,
+                    opener, progress );
+
+        List<List<ChunkEntry>> planned = visitor.getChunks();
+        for ( int i = 0; i < planned.size(); i++ ) {
+            List<ChunkEntry> chunk = planned.get( i );
+            progress.getListener().chunkPlanned( i, chunk.size(),
+                    chunk.stream().mapToLong( ChunkEntry::getLength ).sum() );
+        }
+        // Each zip file holds the dictionary, so that it can be decompressed on its own
+        List<List<ChunkEntry>> chunked = planned.stream()
+                .map( chunk -> PresetDictionary.prepend( chunk, dictionary ) )
+                .collect( Collectors.toList() );
         if ( chunked.size() == 1 ) {
-            writeToZip( chunked.get( 0 ), output, options, tempDir );
-        } else {
-            IntStream.range( 0, chunked.size() )
-                    .parallel()
-                    .forEach( i -> {
-                        try {
-                            Path zipFile = partFile( output, "" + i );
-                            writeToZip( chunked.get( i ), zipFile, options, tempDir );
-                        } catch ( IOException e ) {
-                            sneakyThrow( e );
-                        }
-                    } );
-        }
-        if ( Files.notExists( tempDir ) )
+            writeChunk( chunked.get( 0 ), 0, true, output, opener, journal, options,
+                    options.isParallelDeflate() ? workers : null, progress );
+            return Collections.singletonList( output );
+        }
+        List<String> names = IntStream.range( 0, chunked.size() )
+                .mapToObj( i -> partName( output, "" + i ) )
+                .collect( Collectors.toList() );
+        workers.forEach( chunked.size(), i -> writeChunk( chunked.get( i ), i, i == chunked.size() - 1, names.get( i ),
+                opener, journal, options, null, progress ) );
+        return names;
+    }
+
+    /**
+     * Writes a chunk to its zip file, unless the journal shows that the compression being resumed already did
+     *
+     * @param last    true if this is the last chunk, see {@link #partComment(int, boolean)}
+     * @param journal where the zip file is recorded once finished, null for none
+     * @param workers where entries are deflated in parallel blocks, null to deflate them on the calling thread
+     */
+    private static void writeChunk( List<ChunkEntry> entries, int part, boolean last, String name, PartOpener opener,
+            Journal journal, CompressionOptions options, Workers workers, ProgressTracker progress )
+            throws IOException {
+        String comment = partComment( part, last );
+        if ( journal == null ) {
+            writeToZip( entries, opener.open( part, name ), name, comment, options, workers, progress );
             return;
+        }
+        String plan = Journal.plan( entries, comment );
+        long written = journal.written( name, plan );
+        if ( written >= 0 ) {
+            progress.partFinished( name, written );
+            LOGGER.debug( "Kept '{}' written by the compression being resumed", name );
+            return;
+        }
+        writeToZip( entries, opener.open( part, name ), name, comment, options, workers, progress );
+        journal.finished( name, plan );
+    }
 
-        try ( Stream<Path> walk = Files.list( tempDir ) ) {
-            walk.forEach( p -> {
-                try {
-                    Files.delete( p );
-                } catch ( IOException e ) {
-                    sneakyThrow( e );
-                }
-            } );
+    /**
+     * @return the manifest that incremental compression keeps next to the zip files
+     */
+    private static Path manifestFile( Path output ) {
+        String name = output.getFileName().toString();
+        return output.resolveSibling( name.substring( 0, name.length() - ".zip".length() ) + ".manifest" );
+    }
+
+    /**
+     * @return the journal that records the zip files finished so far, see {@link Journal}
+     */
+    private static Path journalFile( Path output ) {
+        String name = output.getFileName().toString();
+        return output.resolveSibling( name.substring( 0, name.length() - ".zip".length() ) + ".journal" );
+    }
+
+    /**
+     * Deletes the staged zip files and manifest of an incremental compression into the same output
+     */
+    private static void deleteStaged( Path output ) throws IOException {
+        String manifestName = manifestFile( output ).getFileName().toString();
+        List<Path> stagedFiles;
+        try ( Stream<Path> children = Files.list( output.getParent() ) ) {
+            stagedFiles = children.filter( path -> {
+                String fileName = path.getFileName().toString();
+                if ( !fileName.endsWith( ".tmp" ) )
+                    return false;
+                String name = fileName.substring( 0, fileName.length() - ".tmp".length() );
+                return name.equals( manifestName ) || unpartName( name ).equals( output.getFileName().toString() );
+            } ).collect( Collectors.toList() );
+        }
+        for ( Path stagedFile : stagedFiles ) {
+            LOGGER.debug( "Deleting '{}' left behind by a failed compression", stagedFile );
+            Files.deleteIfExists( stagedFile );
         }
-        Files.delete( tempDir );
     }
 
+    /**
+     * @return where a zip file is written before it is moved in place. Incremental compression reads the zip files of
+     * the previous compression while writing, so they are only replaced once everything is written.
+     */
+    private static Path staged( Path zipFile, CompressionOptions options ) {
+        if ( !options.isIncremental() )
+            return zipFile;
+        return zipFile.resolveSibling( zipFile.getFileName() + ".tmp" );
+    }
+
+    /**
+     * Moves the staged zip files of an incremental compression in place, deletes the zip files of the previous
+     * compression that are no longer needed and writes the new manifest
+     */
+    private static void replace( Path output, List<Path> zipFiles, Manifest previous, ChunkingFileVisitor visitor,
+            CompressionOptions options ) throws IOException {
+        Map<String, List<ZipCentralDirectory.Entry>> pieces = new HashMap<>();
+        Map<String, String> parts = new HashMap<>();
+        for ( Path zipFile : zipFiles ) {
+            for ( ZipCentralDirectory.Entry entry : ZipCentralDirectory.read( staged( zipFile, options ) ) ) {
+                if ( entry.isDirectory() )
+                    continue;
+                pieces.computeIfAbsent( unpartName( entry.getName() ), name -> new ArrayList<>() ).add( entry );
+                parts.put( entry.getName(), zipFile.getFileName().toString() );
+            }
+        }
+
+        Manifest manifest = new Manifest();
+        for ( Map.Entry<String, List<ZipCentralDirectory.Entry>> file : pieces.entrySet() ) {
+            BasicFileAttributes attributes = visitor.getAttributes( file.getKey() );
+            if ( attributes == null )
+                continue;
+            List<ZipCentralDirectory.Entry> fileEntries = file.getValue();
+            fileEntries.sort( Comparator.comparingLong( entry -> partNumber( entry.getName() ) ) );
+            long offset = 0;
+            for ( ZipCentralDirectory.Entry entry : fileEntries ) {
+                manifest.add( new Manifest.Entry( file.getKey(), entry.getName(), offset, entry.getSize(),
+                        attributes.size(), attributes.lastModifiedTime().toMillis(), entry.getCrc(),
+                        parts.get( entry.getName() ) ) );
+                offset += entry.getSize();
+            }
+        }
+
+        for ( Path zipFile : zipFiles )
+            Files.move( staged( zipFile, options ), zipFile, REPLACE_EXISTING );
+        for ( String part : previous.getParts() ) {
+            Path zipFile = output.resolveSibling( part );
+            if ( !zipFiles.contains( zipFile ) )
+                Files.deleteIfExists( zipFile );
+        }
+        Path manifestFile = manifestFile( output );
+        manifest.write( staged( manifestFile, options ) );
+        Files.move( staged( manifestFile, options ), manifestFile, REPLACE_EXISTING );
+        LOGGER.debug( "Written manifest '{}' with {} entries", manifestFile, manifest.getEntries().size() );
+    }
+
+    /**
+     * Extracts zip files of an input directory. Pieces of a file that was split during compression are joined back
+     * together and files left out as duplicates are restored once everything is extracted, see {@link Duplicates}. By
+     * default, zip files are extracted one after another in part order and pieces are appended to their file. In
+     * parallel mode, the central directory of every zip file is read first to work out where each piece belongs in its
+     * file and to create the whole directory tree, then the entries are inflated concurrently with positional reads
+     * and writes, even those of a single zip file.
+     *
+     * @param options decompression configuration
+     * @throws IOException when decompression fails due to IO errors
+     */
     @Override
     public void decompress( DecompressionOptions options ) throws IOException {
         checkArguments( options );
         Path inputDir = options.getInput();
         Path outputDir = options.getOutput();
 
-        List<Path> inputFiles = Files.list( inputDir ).sorted()
-                .filter( path -> path.toString().endsWith( ".zip" ) )
-                .collect( Collectors.toList() );
-        if ( inputFiles.size() <= 0 )
-            throw new IllegalArgumentException( "Input directory '" + inputDir + " is empty" );
+        List<Path> inputFiles = listZipFiles( inputDir );
 
-        for ( Path inputFile : inputFiles ) {
-            ZipInputStream zis = new ZipInputStream( Files.newInputStream( inputFile ) );
-            ZipEntry zipEntry = zis.getNextEntry();
-            while ( zipEntry != null ) {
-                Path outputFile = outputDir.resolve( zipEntry.getName() );
-                if ( zipEntry.isDirectory() ) {
-                    Files.createDirectories( outputFile );
-                } else {
-                    outputFile = unpartFile( outputFile );
-                    OutputStream fos = Files.newOutputStream( outputFile, CREATE, APPEND );
-                    byte[] buffer = new byte[options.getBufferSize()];
-                    int len;
-                    while ( ( len = zis.read( buffer ) ) > 0 ) {
-                        fos.write( buffer, 0, len );
-                    }
-                    fos.close();
+        long totalSize = 0;
+        for ( Path inputFile : inputFiles )
+            totalSize += Files.size( inputFile );
+        options.getListener().scanCompleted( inputFiles.size(), totalSize );
+        ProgressTracker progress = new ProgressTracker( options.getListener(), totalSize, false );
+
+        Duplicates duplicates;
+        if ( options.isParallel() ) {
+            try ( Workers workers = Workers.of( options ) ) {
+                duplicates = decompressParallel( inputFiles, options, progress, workers );
+            }
+        } else {
+            duplicates = new Duplicates();
+            for ( Path inputFile : inputFiles ) {
+                try ( InputStream in = Files.newInputStream( inputFile ) ) {
+                    decompress( in, options, progress, duplicates );
                 }
-                zipEntry = zis.getNextEntry();
+                progress.partFinished( inputFile.getFileName().toString(), Files.size( inputFile ) );
             }
-            zis.closeEntry();
-            zis.close();
         }
+        duplicates.restore( outputDir );
+        progress.finish();
     }
 
     /**
-     * Writes a list of path to a zip file
+     * Extracts zip files read from channels one after another, the same way {@link #decompress(DecompressionOptions)}
+     * does without parallel mode. Nothing is written to disk except the extracted files.
      *
-     * @param contents paths to write
-     * @param zipFile  the zip file
-     * @param options  IO options
+     * @param options decompression configuration
+     * @param inputs  the zip files in part order, read until their end and left open
+     * @throws IOException when decompression fails due to IO errors
      */
-    private static void writeToZip( List<Path> contents, Path zipFile, IOOptions options, Path tempDir )
+    @Override
+    public void decompress( DecompressionOptions options, List<? extends ReadableByteChannel> inputs )
             throws IOException {
-        try ( ZipOutputStream zos = new ZipOutputStream( Files.newOutputStream( zipFile ) ) ) {
-            for ( Path path : contents ) {
-                Path transformed;
-                if ( path.getFileName().toString().contains( ".part." ) )
-                    transformed = tempDir.relativize( path );
-                else {
-                    transformed = options.getInput().relativize( path );
-                }
-                String fileName = transformed.toString();
-                if ( Files.isRegularFile( path ) ) {
-                    try ( InputStream fis = Files.newInputStream( path ) ) {
-                        ZipEntry zipEntry = new ZipEntry( fileName );
-                        zos.putNextEntry( zipEntry );
-                        byte[] buffer = new byte[options.getBufferSize()];
-                        int bufferReadLength;
-                        while ( ( bufferReadLength = fis.read( buffer ) ) >= 0 ) {
-                            zos.write( buffer, 0, bufferReadLength );
-                        }
-                        zos.closeEntry();
+        checkOutput( options );
+        options.getListener().scanCompleted( inputs.size(), -1 );
+        ProgressTracker progress = new ProgressTracker( options.getListener(), -1, false );
+        byte[] rest = new byte[options.getBufferSize()];
+        Duplicates duplicates = new Duplicates();
+        for ( ReadableByteChannel input : inputs ) {
+            InputStream in = Channels.newInputStream( input );
+            decompress( in, options, progress, duplicates );
+            // The central directory is not needed but the channel is read until its end as documented
+            while ( in.read( rest ) >= 0 )
+                ;
+        }
+        duplicates.restore( options.getOutput() );
+        progress.finish();
+    }
+
+    /**
+     * Extracts the entries of a zip file as they come. Pieces of split files are appended to their file and solid
+     * blocks are unpacked with the index that leads the zip file, see {@link SolidBlocks}. Entries after a preset
+     * dictionary are inflated with it, see {@link PresetDictionary}.
+     *
+     * @param duplicates where an index of duplicates is read to, if the zip file has one
+     */
+    private static void decompress( InputStream in, IOOptions options, ProgressTracker progress,
+            Duplicates duplicates ) throws IOException {
+        Path outputDir = options.getOutput();
+        PresetDictionary.ZipInput zis = new PresetDictionary.ZipInput( in );
+        SolidBlocks solid = new SolidBlocks();
+        byte[] dictionary = null;
+        ZipEntry zipEntry = zis.getNextEntry();
+        while ( zipEntry != null ) {
+            Path outputFile = outputDir.resolve( zipEntry.getName() );
+            if ( dictionary != null && zipEntry.getMethod() == ZipEntry.DEFLATED )
+                zis.setDictionary( dictionary );
+            if ( zipEntry.getName().equals( PresetDictionary.ENTRY_NAME ) ) {
+                dictionary = PresetDictionary.read( zis );
+            } else if ( zipEntry.getName().equals( Duplicates.INDEX_NAME ) ) {
+                duplicates.read( zis );
+            } else if ( zipEntry.getName().equals( SolidBlocks.INDEX_NAME ) ) {
+                solid.read( zis );
+            } else if ( SolidBlocks.isBlock( zipEntry.getName() ) ) {
+                long started = System.nanoTime();
+                progress.entryStarted( zipEntry.getName() );
+                SolidBlocks.unpack( zis, solid.getMembers( zipEntry.getName() ), outputDir, name -> true, true,
+                        options.getBufferSize() );
+                progress.entryFinished( zipEntry.getName(), zipEntry.getSize(), zipEntry.getCompressedSize(),
+                        System.nanoTime() - started );
+            } else if ( zipEntry.isDirectory() ) {
+                Files.createDirectories( outputFile );
+            } else {
+                long started = System.nanoTime();
+                progress.entryStarted( zipEntry.getName() );
+                outputFile = outputDir.resolve( unpartName( zipEntry.getName() ) );
+                Files.createDirectories( outputFile.getParent() );
+                byte[] buffer = Buffers.input( options.getBufferSize() );
+                long size = 0;
+                try ( OutputStream fos = Files.newOutputStream( outputFile, CREATE, APPEND ) ) {
+                    int len;
+                    while ( ( len = zis.read( buffer, 0, options.getBufferSize() ) ) > 0 ) {
+                        fos.write( buffer, 0, len );
+                        size += len;
                     }
-                    LOGGER.debug( "Written file={}", fileName );
-                } else {
-                    fileName += "/";
-                    zos.putNextEntry( new ZipEntry( fileName ) );
-                    zos.closeEntry();
-                    LOGGER.debug( "Written directory={}", fileName );
                 }
+                progress.entryFinished( zipEntry.getName(), size, zipEntry.getCompressedSize(),
+                        System.nanoTime() - started );
             }
+            zipEntry = zis.getNextEntry();
         }
+        zis.closeEntry();
     }
 
-    private static <E extends Throwable> void sneakyThrow( Throwable e ) throws E {
-        throw ( E ) e;
+    /**
+     * Extracts the files matching the patterns of the options. Only the central directory of each zip file is read to
+     * find the matching entries, including every piece of a split file, and only those entries are inflated. Each
+     * piece is written at its offset in the output file.
+     * <p>
+     * Duplicates matching the patterns are restored from their original, which is extracted for that even if it does
+     * not match and removed again once the duplicates are restored. A solid block is only inflated if it holds a file
+     * to extract, and only those files of it are written.
+     *
+     * @param options extraction configuration
+     * @throws NoSuchFileException when no file matches the patterns
+     * @throws IOException         when extraction fails due to IO errors
+     */
+    @Override
+    public void extract( ExtractionOptions options ) throws IOException {
+        checkArguments( options );
+        Path outputDir = options.getOutput();
+        List<Path> inputFiles = listZipFiles( options.getInput() );
+        List<PathMatcher> matchers = options.getPatterns().stream()
+                .map( pattern -> outputDir.getFileSystem().getPathMatcher( "glob:" + pattern ) )
+                .collect( Collectors.toList() );
+
+        Predicate<String> matching = name -> {
+            Path path = outputDir.getFileSystem().getPath( name );
+            return matchers.stream().anyMatch( matcher -> matcher.matches( path ) );
+        };
+
+        try ( Workers workers = Workers.of( options ) ) {
+            extract( inputFiles, matching, options, workers );
+        }
     }
 
-    private static List<List<Path>> chunk( Path dir, CompressionOptions options, Path tempDir ) throws IOException {
-        ChunkingFileVisitor visitor = new ChunkingFileVisitor( options, tempDir );
-        Files.walkFileTree( dir, visitor );
-        return visitor.getChunks();
+    /**
+     * Extracts the files of zip files accepted by a filter, see {@link #extract(ExtractionOptions)}
+     */
+    private static void extract( List<Path> inputFiles, Predicate<String> matching, ExtractionOptions options,
+            Workers workers ) throws IOException {
+        Path outputDir = options.getOutput();
+        List<List<ZipCentralDirectory.Entry>> directories = readDirectories( inputFiles, workers );
+        Duplicates duplicates = readDuplicates( inputFiles, directories ).filter( matching );
+        List<byte[]> dictionaries = readDictionaries( inputFiles, directories, workers );
+        List<SolidBlocks> solids = readSolidBlocks( inputFiles, directories, dictionaries, workers );
+        Set<String> originals = new HashSet<>( duplicates.getOriginals().values() );
+        Set<String> unmatchedOriginals = new HashSet<>();
+        Set<String> directoryNames = new HashSet<>();
+        Map<String, List<ZipCentralDirectory.Entry>> pieces = new HashMap<>();
+        Set<String> unpacked = new HashSet<>();
+        List<List<ZipCentralDirectory.Entry>> selected = new ArrayList<>();
+        for ( int i = 0; i < directories.size(); i++ ) {
+            List<ZipCentralDirectory.Entry> matched = new ArrayList<>();
+            for ( ZipCentralDirectory.Entry entry : directories.get( i ) ) {
+                if ( isIndex( entry.getName() ) )
+                    continue;
+                if ( SolidBlocks.isBlock( entry.getName() ) ) {
+                    boolean holdsMatch = false;
+                    for ( SolidBlocks.Member member : solids.get( i ).getMembers( entry.getName() ) ) {
+                        boolean matches = matching.test( member.getName() );
+                        if ( !matches && !originals.contains( member.getName() ) )
+                            continue;
+                        if ( !matches )
+                            unmatchedOriginals.add( member.getName() );
+                        unpacked.add( member.getName() );
+                        holdsMatch = true;
+                    }
+                    if ( holdsMatch )
+                        matched.add( entry );
+                    continue;
+                }
+                String name = entry.isDirectory() ? entry.getName().substring( 0, entry.getName().length() - 1 )
+                        : unpartName( entry.getName() );
+                boolean matches = matching.test( name );
+                if ( !matches && ( entry.isDirectory() || !originals.contains( name ) ) )
+                    continue;
+                if ( entry.isDirectory() ) {
+                    directoryNames.add( name );
+                    continue;
+                }
+                if ( !matches )
+                    unmatchedOriginals.add( name );
+                pieces.computeIfAbsent( name, key -> new ArrayList<>() ).add( entry );
+                matched.add( entry );
+            }
+            selected.add( matched );
+        }
+        if ( pieces.isEmpty() && unpacked.isEmpty() )
+            throw new NoSuchFileException( "No file matches " + options.getPatterns() );
+
+        long totalSize = selected.stream()
+                .flatMap( List::stream )
+                .mapToLong( ZipCentralDirectory.Entry::getCompressedSize )
+                .sum();
+        options.getListener().scanCompleted( pieces.size() + unpacked.size(), totalSize );
+        ProgressTracker progress = new ProgressTracker( options.getListener(), totalSize, false );
+        Map<String, Long> offsets = prepareOutputFiles( pieces, unpacked, directoryNames, outputDir, workers );
+        extractEntries( inputFiles, selected, dictionaries, solids, unpacked::contains, offsets, options, progress,
+                workers );
+        duplicates.restore( outputDir );
+        for ( String original : unmatchedOriginals )
+            Files.delete( outputDir.resolve( original ) );
+        progress.finish();
+        LOGGER.debug( "Extracted {} files", pieces.size() + unpacked.size() );
     }
 
-    private static Path partFile( Path path, String partNumber ) {
-        String fileName = path.getFileName().toString();
-        if ( fileName.contains( "." ) ) {
-            int extensionIndex = fileName.lastIndexOf( "." );
-            String baseName = fileName.substring( 0, extensionIndex );
-            String extension = fileName.substring( extensionIndex );
-            return path.getParent().resolve( baseName + ".part." + partNumber + extension );
+    /**
+     * Checks the zip files of the input directory the way parallel decompression reads them, inflating every entry to
+     * nothing. The central directories are read first, then the entries are inflated concurrently, even those of a
+     * single zip file, and each one is checked against the size and CRC-32 of its central directory record.
+     * <p>
+     * The layout is checked as well: zip files and pieces of split files must be numbered without gaps, pieces must
+     * come in part order, solid blocks must hold as many bytes as their index lists and the original of every
+     * duplicate must be in the archive. The comment of the last zip file gives the number of zip files and the first
+     * piece of a split file gives its size, so a missing last zip file or last piece is found too.
+     * <p>
+     * Progress is reported as for decompression, with the inflated bytes as output.
+     *
+     * @param options verification configuration, whose input is the directory of the zip files
+     * @return the problems found, sorted, empty if the zip files are intact
+     * @throws IOException when the input cannot be listed
+     */
+    @Override
+    public List<String> verify( IOOptions options ) throws IOException {
+        checkInput( options );
+        List<Path> inputFiles = listZipFiles( options.getInput() );
+        long totalSize = 0;
+        for ( Path inputFile : inputFiles )
+            totalSize += Files.size( inputFile );
+        options.getListener().scanCompleted( inputFiles.size(), totalSize );
+        ProgressTracker progress = new ProgressTracker( options.getListener(), totalSize, false );
+
+        List<String> problems = Collections.synchronizedList( new ArrayList<>() );
+        try ( Workers workers = Workers.of( options ) ) {
+            verify( inputFiles, options, progress, problems, workers );
         }
-        return path.getParent().resolve( fileName + ".part." + partNumber );
+        progress.finish();
+        List<String> sorted = new ArrayList<>( problems );
+        Collections.sort( sorted );
+        LOGGER.debug( "Verified {} zip files, found {} problems", inputFiles.size(), sorted.size() );
+        return sorted;
     }
 
-    private static Path unpartFile( Path path ) {
-        String fileName = path.getFileName().toString();
-        if ( fileName.matches( ".*part.[0-9]+.*" ) ) {
-            String baseName = fileName.substring( 0, fileName.indexOf( ".part" ) );
-            String extension = fileName.substring( fileName.lastIndexOf( "." ) );
-            return path.getParent().resolve( baseName + extension );
+    /**
+     * Lists the files of the zip files of the input directory from their central directories, which are read in
+     * parallel. Pieces of split files are added up into their file. The indexes of solid blocks and duplicates are the
+     * only entries read, so that the files they hold are listed too; no other entry is inflated.
+     *
+     * @param options listing configuration, whose input is the directory of the zip files
+     * @return the files and directories, sorted by name
+     * @throws ZipException when a zip file or a piece is missing, see {@link #verify(IOOptions)}
+     * @throws IOException  when a zip file cannot be read
+     */
+    @Override
+    public List<ArchiveEntry> list( IOOptions options ) throws IOException {
+        checkInput( options );
+        List<Path> inputFiles = listZipFiles( options.getInput() );
+        long totalSize = 0;
+        for ( Path inputFile : inputFiles )
+            totalSize += Files.size( inputFile );
+        options.getListener().scanCompleted( inputFiles.size(), totalSize );
+
+        int zipCount = inputFiles.size();
+        List<List<ZipCentralDirectory.Entry>> directories = new ArrayList<>( Collections.nCopies( zipCount, null ) );
+        List<SolidBlocks> solids = new ArrayList<>( Collections.nCopies( zipCount, null ) );
+        List<String> comments = new ArrayList<>( Collections.nCopies( zipCount, null ) );
+        Duplicates duplicates = new Duplicates();
+        try ( Workers workers = Workers.of( options ) ) {
+            workers.forEach( zipCount, i -> {
+                Path inputFile = inputFiles.get( i );
+                List<ZipCentralDirectory.Entry> directory = ZipCentralDirectory.read( inputFile );
+                comments.set( i, ZipCentralDirectory.readComment( inputFile ) );
+                // The dictionary is only needed to inflate the index of solid blocks
+                boolean solid = directory.stream()
+                        .anyMatch( entry -> entry.getName().equals( SolidBlocks.INDEX_NAME ) );
+                solids.set( i, solid ? readSolidBlocks( inputFile, directory, readDictionary( inputFile, directory ) )
+                        : new SolidBlocks() );
+                readDuplicates( inputFile, directory, duplicates );
+                directories.set( i, directory );
+                options.getListener().partFinished( inputFile.getFileName().toString(), Files.size( inputFile ) );
+            } );
+        }
+
+        Map<String, long[]> files = new HashMap<>();
+        Map<String, List<ZipCentralDirectory.Entry>> pieces = new LinkedHashMap<>();
+        for ( int i = 0; i < zipCount; i++ ) {
+            for ( ZipCentralDirectory.Entry entry : directories.get( i ) ) {
+                if ( isIndex( entry.getName() ) )
+                    continue;
+                if ( SolidBlocks.isBlock( entry.getName() ) ) {
+                    double ratio = entry.getSize() > 0 ? ( double ) entry.getCompressedSize() / entry.getSize() : 0;
+                    for ( SolidBlocks.Member member : solids.get( i ).getMembers( entry.getName() ) )
+                        add( files, member.getName(), member.getLength(), Math.round( member.getLength() * ratio ) );
+                    continue;
+                }
+                // A directory may be repeated in each zip file holding some of its files
+                if ( entry.isDirectory() ) {
+                    files.putIfAbsent( entry.getName(), new long[] { 0, 0, 1 } );
+                } else {
+                    add( files, unpartName( entry.getName() ), entry.getSize(), entry.getCompressedSize() );
+                    pieces.computeIfAbsent( unpartName( entry.getName() ), name -> new ArrayList<>() ).add( entry );
+                }
+            }
+        }
+        List<String> problems = new ArrayList<>();
+        checkLayout( inputFiles, comments, pieces, problems );
+        if ( !problems.isEmpty() )
+            throw new ZipException( String.join( "; ", problems ) );
+        for ( Map.Entry<String, String> duplicate : duplicates.getOriginals().entrySet() ) {
+            long[] original = files.get( duplicate.getValue() );
+            if ( original != null )
+                add( files, duplicate.getKey(), original[0], 0 );
+        }
+
+        List<ArchiveEntry> entries = new ArrayList<>( files.size() );
+        for ( Map.Entry<String, long[]> file : files.entrySet() ) {
+            long[] sizes = file.getValue();
+            entries.add( new ArchiveEntry( file.getKey(), sizes[0], sizes[1], ( int ) sizes[2] ) );
         }
-        return path;
+        entries.sort( Comparator.comparing( ArchiveEntry::getName ) );
+        LOGGER.debug( "Listed {} files of {} zip files", entries.size(), zipCount );
+        return entries;
     }
 
     /**
-     * A file visitor that chunks file paths such that each chunk does not exceed max file size. This class asserts that
-     * a single path does not exceed max file size, otherwise an {@link IllegalArgumentException} is thrown.
+     * Adds a piece of a file to the sizes of the listed files, which hold its size, compressed size and pieces
      */
-    private static class ChunkingFileVisitor extends SimpleFileVisitor<Path> {
+    private static void add( Map<String, long[]> files, String name, long size, long compressedSize ) {
+        long[] sizes = files.computeIfAbsent( name, file -> new long[3] );
+        sizes[0] += size;
+        sizes[1] += compressedSize;
+        sizes[2]++;
+    }
 
-        private List<List<Path>> chunks = new ArrayList<>();
+    /**
+     * Checks zip files, see {@link #verify(IOOptions)}
+     *
+     * @param problems where the problems found are added, from several threads
+     */
+    private static void verify( List<Path> inputFiles, IOOptions options, ProgressTracker progress,
+            List<String> problems, Workers workers ) throws IOException {
+        int zipCount = inputFiles.size();
+        List<List<ZipCentralDirectory.Entry>> directories = new ArrayList<>( Collections.nCopies( zipCount,
+                Collections.emptyList() ) );
+        List<byte[]> dictionaries = new ArrayList<>( Collections.nCopies( zipCount, null ) );
+        List<SolidBlocks> solids = new ArrayList<>( Collections.nCopies( zipCount, new SolidBlocks() ) );
+        List<String> comments = new ArrayList<>( Collections.nCopies( zipCount, null ) );
+        Duplicates duplicates = new Duplicates();
+        workers.forEach( zipCount, i -> {
+            Path inputFile = inputFiles.get( i );
+            try {
+                List<ZipCentralDirectory.Entry> directory = ZipCentralDirectory.read( inputFile );
+                comments.set( i, ZipCentralDirectory.readComment( inputFile ) );
+                byte[] dictionary = readDictionary( inputFile, directory );
+                solids.set( i, readSolidBlocks( inputFile, directory, dictionary ) );
+                readDuplicates( inputFile, directory, duplicates );
+                dictionaries.set( i, dictionary );
+                directories.set( i, directory );
+            } catch ( IOException e ) {
+                problems.add( inputFile.getFileName() + ": " + e.getMessage() );
+            }
+        } );
 
-        private List<Path> currentChunk = new ArrayList<>();
+        Map<String, List<ZipCentralDirectory.Entry>> pieces = new LinkedHashMap<>();
+        Set<String> files = new HashSet<>();
+        List<List<ZipCentralDirectory.Entry>> entries = new ArrayList<>( zipCount );
+        for ( int i = 0; i < zipCount; i++ ) {
+            List<ZipCentralDirectory.Entry> zipEntries = new ArrayList<>();
+            for ( ZipCentralDirectory.Entry entry : directories.get( i ) ) {
+                if ( entry.isDirectory() )
+                    continue;
+                zipEntries.add( entry );
+                if ( isIndex( entry.getName() ) )
+                    continue;
+                if ( SolidBlocks.isBlock( entry.getName() ) ) {
+                    checkSolidBlock( inputFiles.get( i ), entry, solids.get( i ), files, problems );
+                    continue;
+                }
+                // Zip files are in part order, so pieces are collected in the order decompression appends them
+                pieces.computeIfAbsent( unpartName( entry.getName() ), name -> new ArrayList<>() ).add( entry );
+            }
+            entries.add( zipEntries );
+        }
+        checkLayout( inputFiles, comments, pieces, problems );
+        files.addAll( pieces.keySet() );
+        for ( Map.Entry<String, String> duplicate : duplicates.getOriginals().entrySet() ) {
+            if ( !files.contains( duplicate.getValue() ) )
+                problems.add( "Original '" + duplicate.getValue() + "' of duplicate '" + duplicate.getKey()
+                        + "' is missing" );
+        }
 
-        private long currentChunkSize = 0;
+        List<AtomicInteger> remaining = new ArrayList<>( zipCount );
+        List<ExtractBatch> batches = batch( entries, remaining );
+        workers.forEach( batches.size(), i -> {
+            ExtractBatch batch = batches.get( i );
+            Path zipFile = inputFiles.get( batch.zip );
+            verifyEntries( zipFile, batch.entries, dictionaries.get( batch.zip ), options, progress, problems );
+            if ( remaining.get( batch.zip ).decrementAndGet() == 0 )
+                progress.partFinished( zipFile.getFileName().toString(), Files.size( zipFile ) );
+        } );
+        for ( int i = 0; i < zipCount; i++ ) {
+            Path inputFile = inputFiles.get( i );
+            if ( entries.get( i ).isEmpty() )
+                progress.partFinished( inputFile.getFileName().toString(), Files.size( inputFile ) );
+        }
+    }
 
-        private CompressionOptions options;
+    /**
+     * Inflates entries of a zip file to nothing, adding those whose size or checksum does not match to the problems
+     */
+    private static void verifyEntries( Path zipFile, List<ZipCentralDirectory.Entry> entries, byte[] dictionary,
+            IOOptions options, ProgressTracker progress, List<String> problems ) throws IOException {
+        try ( FileChannel zip = FileChannel.open( zipFile, READ ) ) {
+            for ( ZipCentralDirectory.Entry entry : entries ) {
+                long started = System.nanoTime();
+                progress.entryStarted( entry.getName() );
+                try {
+                    ZipEntryExtractor.extract( zip, entry, dictionary, null, 0, options.getBufferSize() );
+                } catch ( IOException e ) {
+                    problems.add( zipFile.getFileName() + ": " + e.getMessage() );
+                }
+                progress.entryFinished( entry.getName(), entry.getSize(), entry.getCompressedSize(),
+                        System.nanoTime() - started );
+            }
+        }
+    }
 
-        private final Path tempDir;
+    /**
+     * Checks that zip files and pieces of split files are numbered without gaps and that none is missing at the end,
+     * from the number of zip files given by the comment of the last zip file and the size given by the comment of the
+     * first piece. Zip files written without these comments are only checked for gaps.
+     *
+     * @param inputFiles the zip files, in part order
+     * @param comments   the comment of each zip file, null if it could not be read
+     * @param pieces     the pieces of each file in the order they are read, by the name of the file
+     * @param problems   where the problems found are added
+     */
+    private static void checkLayout( List<Path> inputFiles, List<String> comments,
+            Map<String, List<ZipCentralDirectory.Entry>> pieces, List<String> problems ) {
+        List<String> names = inputFiles.stream()
+                .map( inputFile -> inputFile.getFileName().toString() )
+                .collect( Collectors.toList() );
+        checkPartNumbers( names, "zip file", problems );
+        // The number of zip files found and expected, -1 if no comment is ours and 0 if no comment gives the number
+        Map<String, int[]> counts = new LinkedHashMap<>();
+        for ( int i = 0; i < names.size(); i++ ) {
+            int[] count = counts.computeIfAbsent( unpartName( names.get( i ) ), zip -> new int[] { 0, -1 } );
+            count[0]++;
+            if ( comments.get( i ) != null )
+                count[1] = Math.max( count[1], partCount( comments.get( i ) ) );
+        }
+        for ( Map.Entry<String, int[]> zip : counts.entrySet() ) {
+            int[] count = zip.getValue();
+            if ( count[1] == 0 )
+                problems.add( "Last zip file of '" + zip.getKey() + "' is missing" );
+            else if ( count[1] > 0 && count[1] != count[0] )
+                problems.add( "Expected " + count[1] + " zip files of '" + zip.getKey() + "' but found " + count[0] );
+        }
 
-        public ChunkingFileVisitor( CompressionOptions options, Path tempDir ) {
-            this.options = options;
-            this.tempDir = tempDir;
+        for ( Map.Entry<String, List<ZipCentralDirectory.Entry>> file : pieces.entrySet() ) {
+            List<ZipCentralDirectory.Entry> filePieces = file.getValue();
+            checkPartNumbers( filePieces.stream()
+                    .map( ZipCentralDirectory.Entry::getName )
+                    .collect( Collectors.toList() ), "piece", problems );
+            long fileSize = fileSize( filePieces.get( 0 ).getComment() );
+            long size = filePieces.stream().mapToLong( ZipCentralDirectory.Entry::getSize ).sum();
+            if ( fileSize >= 0 && size != fileSize )
+                problems.add( "Pieces of '" + file.getKey() + "' hold " + size + " of its " + fileSize + " bytes" );
         }
+    }
 
-        public List<List<Path>> getChunks() {
-            if ( currentChunk.size() > 0 ) {
-                chunks.add( currentChunk );
-                currentChunk = Collections.emptyList();
+    /**
+     * Checks that names carry the part numbers 0, 1, 2... in order, where a name without part number counts as 0
+     *
+     * @param names the names of the parts of one file, in the order they are read
+     * @param kind  what the names are, for the problems
+     */
+    private static void checkPartNumbers( List<String> names, String kind, List<String> problems ) {
+        Map<String, List<String>> byFile = new LinkedHashMap<>();
+        for ( String name : names )
+            byFile.computeIfAbsent( unpartName( name ), file -> new ArrayList<>() ).add( name );
+        for ( Map.Entry<String, List<String>> file : byFile.entrySet() ) {
+            List<String> parts = file.getValue();
+            for ( int i = 0; i < parts.size(); i++ ) {
+                if ( Math.max( 0, partNumber( parts.get( i ) ) ) != i ) {
+                    problems.add( "Expected " + kind + " " + i + " of '" + file.getKey() + "' but found '"
+                            + parts.get( i ) + "'" );
+                    break;
+                }
             }
-            return chunks;
         }
+    }
 
-        private long getMaxFileSize() {
-            return options.getMaxFileSize();
+    /**
+     * Checks that a solid block is listed in its index with as many bytes as it holds
+     *
+     * @param files where the names of the files of the block are added
+     */
+    private static void checkSolidBlock( Path zipFile, ZipCentralDirectory.Entry block, SolidBlocks solid,
+            Set<String> files, List<String> problems ) {
+        List<SolidBlocks.Member> members;
+        try {
+            members = solid.getMembers( block.getName() );
+        } catch ( ZipException e ) {
+            problems.add( zipFile.getFileName() + ": " + e.getMessage() );
+            return;
+        }
+        long length = 0;
+        for ( SolidBlocks.Member member : members ) {
+            files.add( member.getName() );
+            length += member.getLength();
         }
+        if ( length != block.getSize() )
+            problems.add( zipFile.getFileName() + ": Solid block '" + block.getName() + "' holds " + block.getSize()
+                    + " bytes but its index lists " + length );
+    }
 
-        @Override
-        public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) throws IOException {
-            if ( file.getFileName().toString().equals( ".DS_Store" ) )
-                return FileVisitResult.CONTINUE;
-            super.visitFile( file, attrs );
-            long size = Files.size( file );
-            if ( getMaxFileSize() > 0 && size + currentChunkSize > getMaxFileSize() ) {
-                if ( size > getMaxFileSize() ) {
-                    for ( Path part : refine( file, size, tempDir ) ) {
-                        visitFile( part, attrs );
+    /**
+     * Extracts entries of zip files concurrently. Consecutive entries of a zip file are grouped into batches of about
+     * {@link #EXTRACT_BATCH_SIZE} compressed bytes, each inflated on a worker with a file handle of its own, largest
+     * batch first so that a big entry does not start last. A zip file is reported finished once all of its batches
+     * are, zip files without entries to extract are not reported.
+     *
+     * @param entries      the entries to extract of each zip file, in the same order as the zip files
+     * @param dictionaries the preset dictionary of each zip file, null for none, in the same order as the zip files
+     * @param solids       the solid blocks of each zip file, in the same order as the zip files
+     * @param wanted       accepts the names of the files to write out of the solid blocks
+     * @param offsets      the position in its output file of each entry
+     */
+    private static void extractEntries( List<Path> inputFiles, List<List<ZipCentralDirectory.Entry>> entries,
+            List<byte[]> dictionaries, List<SolidBlocks> solids, Predicate<String> wanted, Map<String, Long> offsets,
+            IOOptions options, ProgressTracker progress, Workers workers ) throws IOException {
+        List<AtomicInteger> remaining = new ArrayList<>( inputFiles.size() );
+        List<ExtractBatch> batches = batch( entries, remaining );
+        workers.forEach( batches.size(), i -> {
+            ExtractBatch batch = batches.get( i );
+            Path zipFile = inputFiles.get( batch.zip );
+            extractEntries( zipFile, batch.entries, dictionaries.get( batch.zip ), solids.get( batch.zip ), wanted,
+                    offsets, options, progress );
+            if ( remaining.get( batch.zip ).decrementAndGet() == 0 )
+                progress.partFinished( zipFile.getFileName().toString(), Files.size( zipFile ) );
+        } );
+    }
+
+    /**
+     * Groups consecutive entries of each zip file into batches of about {@link #EXTRACT_BATCH_SIZE} compressed bytes
+     *
+     * @param entries   the entries of each zip file
+     * @param remaining filled with the number of batches of each zip file, in the same order as the zip files
+     * @return the batches, largest first
+     */
+    private static List<ExtractBatch> batch( List<List<ZipCentralDirectory.Entry>> entries,
+            List<AtomicInteger> remaining ) {
+        List<ExtractBatch> batches = new ArrayList<>();
+        for ( int i = 0; i < entries.size(); i++ ) {
+            int count = 0;
+            ExtractBatch batch = null;
+            for ( ZipCentralDirectory.Entry entry : entries.get( i ) ) {
+                if ( batch == null || batch.compressedSize >= EXTRACT_BATCH_SIZE ) {
+                    batch = new ExtractBatch( i );
+                    batches.add( batch );
+                    count++;
+                }
+                batch.entries.add( entry );
+                batch.compressedSize += entry.getCompressedSize();
+            }
+            remaining.add( new AtomicInteger( count ) );
+        }
+        batches.sort( Comparator.comparingLong( ( ExtractBatch batch ) -> batch.compressedSize ).reversed() );
+        return batches;
+    }
+
+    /**
+     * Extracts entries of a zip file, writing each one at its offset in the output file. Solid blocks are unpacked
+     * into the files they hold, whose parents must exist.
+     *
+     * @param dictionary the preset dictionary of the zip file, null for none
+     */
+    private static void extractEntries( Path zipFile, List<ZipCentralDirectory.Entry> entries, byte[] dictionary,
+            SolidBlocks solid, Predicate<String> wanted, Map<String, Long> offsets, IOOptions options,
+            ProgressTracker progress ) throws IOException {
+        try ( FileChannel zip = FileChannel.open( zipFile, READ ) ) {
+            for ( ZipCentralDirectory.Entry entry : entries ) {
+                long started = System.nanoTime();
+                progress.entryStarted( entry.getName() );
+                if ( SolidBlocks.isBlock( entry.getName() ) ) {
+                    try ( InputStream in = ZipEntryExtractor.open( zip, entry, dictionary ) ) {
+                        SolidBlocks.unpack( in, solid.getMembers( entry.getName() ), options.getOutput(), wanted,
+                                false, options.getBufferSize() );
+                    }
+                } else {
+                    Path outputFile = options.getOutput().resolve( unpartName( entry.getName() ) );
+                    try ( FileChannel channel = FileChannel.open( outputFile, WRITE ) ) {
+                        ZipEntryExtractor.extract( zip, entry, dictionary, channel, offsets.get( entry.getName() ),
+                                options.getBufferSize() );
                     }
-                    return FileVisitResult.CONTINUE;
                 }
-                chunks.add( currentChunk );
-                currentChunk = new ArrayList<>();
-                currentChunkSize = 0;
-                addToChunk( file, size );
-            } else {
-                addToChunk( file, size );
-                LOGGER.trace( "File '{}' added on chunk '{}'", file, chunks.size() );
+                progress.entryFinished( entry.getName(), entry.getSize(), entry.getCompressedSize(),
+                        System.nanoTime() - started );
+                LOGGER.debug( "Extracted file={}", entry );
             }
-            return FileVisitResult.CONTINUE;
         }
+    }
 
-        private void addToChunk( Path file, long size ) {
-            currentChunk.add( file );
-            currentChunkSize += size;
-            LOGGER.trace( "'{}' added on chunk '{}'", file, chunks.size() );
+    /**
+     * @return the zip files of a directory in part order
+     * @throws IllegalArgumentException when there is no zip file
+     */
+    private static List<Path> listZipFiles( Path inputDir ) throws IOException {
+        List<Path> inputFiles;
+        try ( Stream<Path> children = Files.list( inputDir ) ) {
+            inputFiles = children.filter( path -> path.toString().endsWith( ".zip" ) )
+                    .sorted( PART_ORDER )
+                    .collect( Collectors.toList() );
         }
+        if ( inputFiles.size() <= 0 )
+            throw new IllegalArgumentException( "Input directory '" + inputDir + " is empty" );
+        return inputFiles;
+    }
 
-        @Override
-        public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes attrs ) throws IOException {
-            if ( dir.equals( options.getInput() ) )
-                return FileVisitResult.CONTINUE;
+    /**
+     * Reads the central directories of zip files in parallel
+     *
+     * @return the entries of each zip file, in the same order as the zip files
+     */
+    private static List<List<ZipCentralDirectory.Entry>> readDirectories( List<Path> inputFiles, Workers workers )
+            throws IOException {
+        List<List<ZipCentralDirectory.Entry>> directories = new ArrayList<>( Collections.nCopies( inputFiles.size(),
+                null ) );
+        workers.forEach( inputFiles.size(), i -> directories.set( i,
+                ZipCentralDirectory.read( inputFiles.get( i ) ) ) );
+        return directories;
+    }
+
+    /**
+     * Reads the index of duplicates from the zip file that has it, positioned at its local header
+     *
+     * @param directories the central directory of each zip file
+     * @return the duplicates, none if there is no index
+     */
+    private static Duplicates readDuplicates( List<Path> inputFiles,
+            List<List<ZipCentralDirectory.Entry>> directories ) throws IOException {
+        Duplicates duplicates = new Duplicates();
+        for ( int i = 0; i < inputFiles.size(); i++ )
+            readDuplicates( inputFiles.get( i ), directories.get( i ), duplicates );
+        return duplicates;
+    }
 
-            super.preVisitDirectory( dir, attrs );
-            addToChunk( dir, 0 );
-            return FileVisitResult.CONTINUE;
+    /**
+     * Reads the index of duplicates of a zip file if it has one
+     *
+     * @param directory the central directory of the zip file
+     * @param duplicates where the index is read to
+     */
+    private static void readDuplicates( Path zipFile, List<ZipCentralDirectory.Entry> directory,
+            Duplicates duplicates ) throws IOException {
+        for ( ZipCentralDirectory.Entry entry : directory ) {
+            if ( !entry.getName().equals( Duplicates.INDEX_NAME ) )
+                continue;
+            try ( FileChannel channel = FileChannel.open( zipFile, READ ) ) {
+                channel.position( entry.getLocalHeaderOffset() );
+                ZipInputStream zis = new ZipInputStream( Channels.newInputStream( channel ) );
+                zis.getNextEntry();
+                duplicates.read( zis );
+            }
         }
+    }
+
+    /**
+     * Reads the index of solid blocks of each zip file that has one, in parallel
+     *
+     * @param directories  the central directory of each zip file
+     * @param dictionaries the preset dictionary of each zip file, null for none
+     * @return the solid blocks of each zip file, in the same order as the zip files
+     */
+    private static List<SolidBlocks> readSolidBlocks( List<Path> inputFiles,
+            List<List<ZipCentralDirectory.Entry>> directories, List<byte[]> dictionaries, Workers workers )
+            throws IOException {
+        List<SolidBlocks> solids = new ArrayList<>( Collections.nCopies( inputFiles.size(), null ) );
+        workers.forEach( inputFiles.size(), i -> solids.set( i, readSolidBlocks( inputFiles.get( i ),
+                directories.get( i ), dictionaries.get( i ) ) ) );
+        return solids;
+    }
 
-        static void readWrite( InputStream raf, OutputStream bw, long numBytes ) throws IOException {
-            byte[] buf = new byte[( int ) numBytes];
-            int val = raf.read( buf );
-            if ( val != -1 ) {
-                bw.write( buf );
+    /**
+     * Reads the index of solid blocks of a zip file
+     *
+     * @param directory  the central directory of the zip file
+     * @param dictionary the preset dictionary of the zip file, null for none
+     * @return the solid blocks, none if there is no index
+     */
+    private static SolidBlocks readSolidBlocks( Path zipFile, List<ZipCentralDirectory.Entry> directory,
+            byte[] dictionary ) throws IOException {
+        SolidBlocks solid = new SolidBlocks();
+        for ( ZipCentralDirectory.Entry entry : directory ) {
+            if ( !entry.getName().equals( SolidBlocks.INDEX_NAME ) )
+                continue;
+            try ( FileChannel channel = FileChannel.open( zipFile, READ );
+                    InputStream in = ZipEntryExtractor.open( channel, entry, dictionary ) ) {
+                solid.read( in );
             }
         }
+        return solid;
+    }
 
-        /**
-         * Splits a file into multiple files such that each part of the file does not exceed max file size
-         *
-         * @param path the file to split
-         * @param size the size of the file
-         * @return list of parts that were generated
-         * @throws IOException when splitting fails
-         */
-        private List<Path> refine( Path path, long size, Path tempDir ) throws IOException {
-            List<Path> createdParts = new ArrayList<>();
-            long parts = size / getMaxFileSize();
-            long sizePerPart = getMaxFileSize();
-            long remainingSize = size % getMaxFileSize();
-            int bufferSize = 1024;
-
-            try ( InputStream is = Files.newInputStream( path ) ) {
-                for ( int i = 0; i < parts; i++ ) {
-                    Path part = tempDir.resolve( options.getInput().relativize( partFile( path, "" + i ) ).toString() );
-                    Files.createDirectories( part.getParent() );
-                    OutputStream bw = Files.newOutputStream( part );
-                    if ( sizePerPart > bufferSize ) {
-                        long numReads = sizePerPart / bufferSize;
-                        long numRemainingRead = sizePerPart % bufferSize;
-                        for ( int j = 0; j < numReads; j++ ) {
-                            readWrite( is, bw, bufferSize );
-                        }
-                        if ( numRemainingRead > 0 ) {
-                            readWrite( is, bw, numRemainingRead );
-                        }
-                    } else {
-                        readWrite( is, bw, sizePerPart );
-                    }
-                    createdParts.add( part );
-                    bw.close();
+    /**
+     * Reads the preset dictionary of each zip file that has one, in parallel, see {@link PresetDictionary}
+     *
+     * @param directories the central directory of each zip file
+     * @return the dictionary of each zip file, null for none, in the same order as the zip files
+     */
+    private static List<byte[]> readDictionaries( List<Path> inputFiles,
+            List<List<ZipCentralDirectory.Entry>> directories, Workers workers ) throws IOException {
+        List<byte[]> dictionaries = new ArrayList<>( Collections.nCopies( inputFiles.size(), null ) );
+        workers.forEach( inputFiles.size(), i -> dictionaries.set( i, readDictionary( inputFiles.get( i ),
+                directories.get( i ) ) ) );
+        return dictionaries;
+    }
+
+    /**
+     * Reads the preset dictionary of a zip file
+     *
+     * @param directory the central directory of the zip file
+     * @return the dictionary, null if there is none
+     */
+    private static byte[] readDictionary( Path zipFile, List<ZipCentralDirectory.Entry> directory )
+            throws IOException {
+        for ( ZipCentralDirectory.Entry entry : directory ) {
+            if ( !entry.getName().equals( PresetDictionary.ENTRY_NAME ) )
+                continue;
+            try ( FileChannel channel = FileChannel.open( zipFile, READ );
+                    InputStream in = ZipEntryExtractor.open( channel, entry, null ) ) {
+                return PresetDictionary.read( in );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Rejects an input with a file or directory at its root named like an entry the archiver adds to zip files, see
+     * {@link #isIndex(String)}, since decompression would take it for that entry
+     */
+    private static void checkReservedNames( Path inputDir ) throws IOException {
+        try ( Stream<Path> children = Files.list( inputDir ) ) {
+            Optional<String> reserved = children.map( child -> child.getFileName().toString() )
+                    .filter( name -> isIndex( name ) || SolidBlocks.isBlock( name ) )
+                    .findFirst();
+            if ( reserved.isPresent() )
+                throw new IllegalArgumentException( "Input '" + inputDir + "' holds '" + reserved.get()
+                        + "', a name reserved for the entries the archiver adds" );
+        }
+    }
+
+    /**
+     * @return true if an entry name is the name of an entry that the archiver adds to zip files, which is not
+     * extracted as a file
+     */
+    private static boolean isIndex( String name ) {
+        return name.equals( Duplicates.INDEX_NAME ) || name.equals( SolidBlocks.INDEX_NAME )
+                || name.equals( PresetDictionary.ENTRY_NAME );
+    }
+
+    /**
+     * Creates the directory tree of the output, then works out where each piece of a file goes from the sizes of the
+     * pieces before it and creates or truncates the output files
+     *
+     * @param pieces      the entries of each file, by the name of the file
+     * @param unpacked    the names of the files to unpack from solid blocks, whose parents are created
+     * @param directories the names of the directories to create besides the parents of the files
+     * @return the offset in its output file of each entry, by entry name
+     */
+    private static Map<String, Long> prepareOutputFiles( Map<String, List<ZipCentralDirectory.Entry>> pieces,
+            Collection<String> unpacked, Set<String> directories, Path outputDir, Workers workers )
+            throws IOException {
+        Set<Path> tree = new TreeSet<>();
+        for ( String directory : directories )
+            tree.add( outputDir.resolve( directory ) );
+        for ( String file : pieces.keySet() )
+            tree.add( outputDir.resolve( file ).getParent() );
+        for ( String file : unpacked )
+            tree.add( outputDir.resolve( file ).getParent() );
+        // Parents sort before their children, which then only create their last level
+        for ( Path directory : tree )
+            Files.createDirectories( directory );
+
+        Map<String, Long> offsets = new HashMap<>();
+        for ( List<ZipCentralDirectory.Entry> fileEntries : pieces.values() ) {
+            fileEntries.sort( Comparator.comparingLong( entry -> partNumber( entry.getName() ) ) );
+            long offset = 0;
+            for ( ZipCentralDirectory.Entry entry : fileEntries ) {
+                offsets.put( entry.getName(), offset );
+                offset += entry.getSize();
+            }
+        }
+        List<String> files = new ArrayList<>( pieces.keySet() );
+        workers.forEach( files.size(), i -> Files.newByteChannel( outputDir.resolve( files.get( i ) ), CREATE, WRITE,
+                TRUNCATE_EXISTING ).close() );
+        return offsets;
+    }
+
+    /**
+     * Extracts zip files from their central directories, see {@link #decompress(DecompressionOptions)}
+     *
+     * @return the duplicates to restore
+     */
+    private static Duplicates decompressParallel( List<Path> inputFiles, DecompressionOptions options,
+            ProgressTracker progress, Workers workers ) throws IOException {
+        List<List<ZipCentralDirectory.Entry>> directories = readDirectories( inputFiles, workers );
+        Duplicates duplicates = readDuplicates( inputFiles, directories );
+        List<byte[]> dictionaries = readDictionaries( inputFiles, directories, workers );
+        List<SolidBlocks> solids = readSolidBlocks( inputFiles, directories, dictionaries, workers );
+
+        Set<String> directoryNames = new HashSet<>();
+        Map<String, List<ZipCentralDirectory.Entry>> pieces = new HashMap<>();
+        List<String> unpacked = new ArrayList<>();
+        List<List<ZipCentralDirectory.Entry>> files = new ArrayList<>( directories.size() );
+        for ( int i = 0; i < directories.size(); i++ ) {
+            List<ZipCentralDirectory.Entry> directory = directories.get( i );
+            List<ZipCentralDirectory.Entry> zipFiles = new ArrayList<>( directory.size() );
+            for ( ZipCentralDirectory.Entry entry : directory ) {
+                if ( entry.isDirectory() ) {
+                    directoryNames.add( entry.getName() );
+                } else if ( SolidBlocks.isBlock( entry.getName() ) ) {
+                    for ( SolidBlocks.Member member : solids.get( i ).getMembers( entry.getName() ) )
+                        unpacked.add( member.getName() );
+                    zipFiles.add( entry );
+                } else if ( !isIndex( entry.getName() ) ) {
+                    pieces.computeIfAbsent( unpartName( entry.getName() ), name -> new ArrayList<>() ).add( entry );
+                    zipFiles.add( entry );
                 }
-                if ( remainingSize > 0 ) {
-                    Path part = tempDir.resolve( options.getInput().relativize( partFile( path, "" + parts ) ).toString() );
-                    try ( OutputStream bw = Files.newOutputStream( part ) ) {
-                        readWrite( is, bw, remainingSize );
-                        createdParts.add( part );
+            }
+            files.add( zipFiles );
+        }
+
+        Map<String, Long> offsets = prepareOutputFiles( pieces, unpacked, directoryNames, options.getOutput(),
+                workers );
+        extractEntries( inputFiles, files, dictionaries, solids, name -> true, offsets, options, progress, workers );
+        for ( int i = 0; i < inputFiles.size(); i++ ) {
+            Path inputFile = inputFiles.get( i );
+            if ( files.get( i ).isEmpty() )
+                progress.partFinished( inputFile.getFileName().toString(), Files.size( inputFile ) );
+        }
+        return duplicates;
+    }
+
+    /**
+     * Writes a list of chunk entries to a zip file. Byte ranges of split files are read straight from their source.
+     * Deflated entries go through the buffers of the calling thread, see {@link Buffers}, while stored and copied
+     * entries are transferred from their file to the output. Small files are first packed into solid blocks if the
+     * options ask for them, see {@link SolidBlocks}. If the entries are led by a preset dictionary, every deflated
+     * entry is deflated with it, see {@link PresetDictionary}.
+     *
+     * @param contents entries to write
+     * @param output   where the zip file is written, closed once done
+     * @param name     the name of the zip file
+     * @param comment  the comment of the zip file, see {@link #partComment(int, boolean)}
+     * @param options  compression options
+     * @param workers  where entries are deflated in parallel blocks, see {@link ParallelDeflater}, null to deflate
+     *                 them one after another on the calling thread
+     * @param progress notified as entries are written
+     */
+    private static void writeToZip( List<ChunkEntry> contents, WritableByteChannel output, String name,
+            String comment, CompressionOptions options, Workers workers, ProgressTracker progress )
+            throws IOException {
+        byte[] dictionary = PresetDictionary.of( contents );
+        if ( options.getSolidBlockSize() > 0 )
+            contents = SolidBlocks.pack( contents, options.getSolidBlockSize() );
+        try ( ZipWriter zip = new ZipWriter( output, name, progress ) ) {
+            zip.setComment( comment );
+            for ( ChunkEntry entry : contents ) {
+                if ( entry.isRange() && entry.getOffset() == 0 && entry.getFileSize() >= 0 )
+                    zip.setEntryComment( entry.getName(), sizeComment( entry.getFileSize() ) );
+            }
+            if ( workers != null ) {
+                new ParallelDeflater( options, workers ).write( contents, dictionary, zip );
+                return;
+            }
+
+            Deflater deflater = new Deflater( options.getCompressionLevel(), true );
+            CRC32 crc = new CRC32();
+            try {
+                for ( ChunkEntry entry : contents ) {
+                    if ( entry.isDirectory() ) {
+                        zip.putDirectory( entry.getName() );
+                        LOGGER.debug( "Written directory={}/", entry.getName() );
+                        continue;
+                    }
+                    if ( entry.getContent() != null ) {
+                        zip.putContent( entry.getName(), entry.getContent() );
+                        continue;
+                    }
+                    if ( entry.getPrevious() != null ) {
+                        copyEntry( entry, zip );
+                        LOGGER.debug( "Copied file={}", entry );
+                        continue;
                     }
+                    if ( entry.getMembers() != null ) {
+                        if ( dictionary != null )
+                            deflater.setDictionary( dictionary );
+                        zip.beginEntry( entry.getName() );
+                        deflateBlock( entry, zip, deflater, crc, options );
+                        zip.endEntry( crc.getValue(), deflater.getBytesWritten(), deflater.getBytesRead() );
+                        deflater.reset();
+                        crc.reset();
+                        LOGGER.debug( "Written solid block={} of {} files", entry, entry.getMembers().size() );
+                        continue;
+                    }
+                    if ( !options.getCompressionPolicy().shouldDeflate( entry ) ) {
+                        writeStored( entry, zip, options );
+                        LOGGER.debug( "Stored file={}", entry );
+                        continue;
+                    }
+                    if ( dictionary != null )
+                        deflater.setDictionary( dictionary );
+                    zip.beginEntry( entry.getName() );
+                    deflateEntry( entry, zip, deflater, crc, options );
+                    zip.endEntry( crc.getValue(), deflater.getBytesWritten(), deflater.getBytesRead() );
+                    deflater.reset();
+                    crc.reset();
+                    LOGGER.debug( "Written file={}", entry );
                 }
+            } finally {
+                deflater.end();
             }
-            return createdParts;
         }
+    }
 
+    /**
+     * Writes entries to as many zip files as needed to keep each zip file within the maximum file size. The zip files
+     * are always named with a part number since it is only known at the end whether more than one is needed.
+     */
+    private static List<String> writeToSplitZip( List<ChunkEntry> entries, String output, CompressionOptions options,
+            PartOpener opener, ProgressTracker progress ) throws IOException {
+        int partCount;
+        try ( SplittingZipWriter zip = new SplittingZipWriter( options, output, opener, progress ) ) {
+            for ( ChunkEntry entry : entries )
+                zip.write( entry );
+            partCount = zip.getPartCount();
+        }
+        LOGGER.debug( "Written {} zip files of at most {} bytes", partCount, options.getMaxFileSize() );
+        return IntStream.range( 0, partCount )
+                .mapToObj( i -> partName( output, "" + i ) )
+                .collect( Collectors.toList() );
+    }
+
+    /**
+     * Copies an entry from a zip file of a previous compression as is, without inflating and deflating it again
+     */
+    static void copyEntry( ChunkEntry entry, ZipWriter zip ) throws IOException {
+        Manifest.Entry previous = entry.getPrevious();
+        ZipCentralDirectory.Entry source = previous.getZipEntry();
+        try ( FileChannel channel = FileChannel.open( previous.getZip(), READ ) ) {
+            long dataOffset = ZipCentralDirectory.dataOffset( channel, source );
+            zip.beginRawEntry( entry.getName(), source.getMethod(), source.getCrc(), source.getCompressedSize(),
+                    source.getSize() );
+            zip.transfer( channel, dataOffset, source.getCompressedSize() );
+        }
+        zip.endEntry( source.getCrc(), source.getCompressedSize(), source.getSize() );
+    }
+
+    /**
+     * Writes an entry without compression. The entry is read once to compute the CRC-32 that the stored entry header
+     * needs, then copied to the zip, see {@link #putStored}.
+     */
+    private static void writeStored( ChunkEntry entry, ZipWriter zip, CompressionOptions options ) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = writeEntry( entry, new CheckedOutputStream( NULL_OUTPUT, crc ), options );
+        putStored( entry.getName(), entry.getSource(), entry.getOffset(), size, crc.getValue(), zip, options );
+    }
+
+    /**
+     * Writes a byte range of a file as a stored entry whose CRC-32 was computed by an earlier read. The output is never
+     * seeked and stored entries have no data descriptor, so the header needs the CRC-32 before the data. The bytes are
+     * checksummed again as they are copied, so a file that changed in between fails with a {@link ZipException}
+     * instead of being stored under a wrong CRC-32.
+     *
+     * @param size the number of bytes to copy
+     * @param crc  the CRC-32 of those bytes found by the earlier read
+     */
+    static void putStored( String name, Path source, long offset, long size, long crc, ZipWriter zip,
+            CompressionOptions options ) throws IOException {
+        zip.beginStoredEntry( name, crc, size );
+        CRC32 written = new CRC32();
+        writeRange( source, offset, size, new CheckedOutputStream( zip.entryStream(), written ), options );
+        zip.endEntry( written.getValue(), size, size );
+    }
+
+    /**
+     * Deflates the content of an entry as data of the current entry of a zip and finishes the deflater. A whole file
+     * is read until its end while a byte range stops after its length.
+     *
+     * @param deflater a deflater that was reset, finished once done
+     * @param crc      updated with the uncompressed data
+     */
+    private static void deflateEntry( ChunkEntry entry, ZipWriter zip, Deflater deflater, CRC32 crc,
+            CompressionOptions options ) throws IOException {
+        int bufferSize = options.getBufferSize();
+        byte[] input = Buffers.input( bufferSize );
+        byte[] output = Buffers.output( bufferSize );
+        long position = entry.getOffset();
+        long end = entry.isRange() ? position + entry.getLength() : Long.MAX_VALUE;
+        try ( SourceReader reader = SourceReader.open( entry.getSource(), options ) ) {
+            while ( position < end ) {
+                int read = reader.read( input, 0, ( int ) Math.min( bufferSize, end - position ), position );
+                if ( read < 0 )
+                    break;
+                crc.update( input, 0, read );
+                deflater.setInput( input, 0, read );
+                while ( !deflater.needsInput() )
+                    zip.write( output, 0, deflater.deflate( output, 0, bufferSize ) );
+                position += read;
+            }
+        }
+        deflater.finish();
+        while ( !deflater.finished() )
+            zip.write( output, 0, deflater.deflate( output, 0, bufferSize ) );
+    }
+
+    /**
+     * Deflates the files of a solid block as data of the current entry of a zip and finishes the deflater. The block is
+     * read at once into a buffer of its own, which is dropped afterwards rather than kept by {@link Buffers}.
+     *
+     * @param deflater a deflater that was reset, finished once done
+     * @param crc      updated with the uncompressed data
+     */
+    private static void deflateBlock( ChunkEntry block, ZipWriter zip, Deflater deflater, CRC32 crc,
+            CompressionOptions options ) throws IOException {
+        int bufferSize = options.getBufferSize();
+        byte[] input = new byte[( int ) block.getLength()];
+        byte[] output = Buffers.output( bufferSize );
+        int length = SolidBlocks.load( block, input, options );
+        crc.update( input, 0, length );
+        deflater.setInput( input, 0, length );
+        deflater.finish();
+        while ( !deflater.finished() )
+            zip.write( output, 0, deflater.deflate( output, 0, bufferSize ) );
+    }
+
+    /**
+     * Copies the content of an entry to an output stream. A whole file is read until its end while a byte range stops
+     * after its length.
+     *
+     * @return the number of bytes copied
+     */
+    private static long writeEntry( ChunkEntry entry, OutputStream out, CompressionOptions options )
+            throws IOException {
+        long length = entry.isRange() ? entry.getLength() : Long.MAX_VALUE;
+        return writeRange( entry.getSource(), entry.getOffset(), length, out, options );
+    }
+
+    /**
+     * Copies a byte range of a file to an output stream using positional reads, through the input buffer of the calling
+     * thread. Copying stops early at the end of the file.
+     *
+     * @param options how the file is read, see {@link SourceReader}
+     * @return the number of bytes copied
+     */
+    static long writeRange( Path source, long offset, long length, OutputStream out, CompressionOptions options )
+            throws IOException {
+        int bufferSize = options.getBufferSize();
+        try ( SourceReader reader = SourceReader.open( source, options ) ) {
+            byte[] buffer = Buffers.input( bufferSize );
+            long position = offset;
+            long end = length == Long.MAX_VALUE ? Long.MAX_VALUE : offset + length;
+            while ( position < end ) {
+                int read = reader.read( buffer, 0, ( int ) Math.min( bufferSize, end - position ), position );
+                if ( read < 0 )
+                    break;
+                out.write( buffer, 0, read );
+                position += read;
+            }
+            return position - offset;
+        }
+    }
+
+    static Path partFile( Path path, String partNumber ) {
+        return path.getParent().resolve( partName( path.getFileName().toString(), partNumber ) );
+    }
+
+    /**
+     * Adds a '.part.{n}' suffix before the extension of the last segment of a name
+     *
+     * @param name       a file name or an entry name
+     * @param partNumber the part number
+     * @return the name of the part
+     */
+    static String partName( String name, String partNumber ) {
+        int segmentIndex = Math.max( name.lastIndexOf( '/' ), name.lastIndexOf( '\\' ) ) + 1;
+        int extensionIndex = name.lastIndexOf( '.' );
+        if ( extensionIndex > segmentIndex ) {
+            String baseName = name.substring( 0, extensionIndex );
+            String extension = name.substring( extensionIndex );
+            return baseName + ".part." + partNumber + extension;
+        }
+        return name + ".part." + partNumber;
+    }
+
+    /**
+     * Removes the '.part.{n}' suffix added by {@link #partFile(Path, String)}
+     *
+     * @param name the name of an entry or file
+     * @return the name without the part suffix or the same name if it is not a part
+     */
+    static String unpartName( String name ) {
+        Matcher matcher = PART_PATTERN.matcher( name );
+        if ( matcher.matches() )
+            return matcher.group( 1 ) + ( matcher.group( 3 ) == null ? "" : matcher.group( 3 ) );
+        return name;
+    }
+
+    /**
+     * @return the part number of a name generated by {@link #partFile(Path, String)}, -1 if it is not a part
+     */
+    static long partNumber( String name ) {
+        Matcher matcher = PART_PATTERN.matcher( name );
+        return matcher.matches() ? Long.parseLong( matcher.group( 2 ) ) : -1;
+    }
+
+    /**
+     * @return the comment of a zip file, which gives its part number and, for the last zip file of a compression, the
+     * number of zip files, so that a missing last zip file is told from a complete compression
+     */
+    static String partComment( int part, boolean last ) {
+        return PART_COMMENT + part + ( last ? " of " + ( part + 1 ) : "" );
+    }
+
+    /**
+     * @return the number of zip files given by the comment of a zip file, 0 if the comment is not the one of the last
+     * zip file, -1 if it is not a comment of {@link #partComment(int, boolean)}
+     */
+    private static int partCount( String comment ) {
+        if ( !comment.startsWith( PART_COMMENT ) )
+            return -1;
+        int of = comment.indexOf( " of " );
+        try {
+            return of < 0 ? 0 : Integer.parseInt( comment.substring( of + " of ".length() ) );
+        } catch ( NumberFormatException e ) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the comment of the first piece of a split file, which gives the size of the whole file so that a missing
+     * last piece is told from a complete file
+     */
+    static String sizeComment( long fileSize ) {
+        return SIZE_COMMENT + fileSize;
+    }
+
+    /**
+     * @return the size of the whole file given by the comment of the first piece of a split file, -1 if it is not a
+     * comment of {@link #sizeComment(long)}
+     */
+    private static long fileSize( String comment ) {
+        if ( !comment.startsWith( SIZE_COMMENT ) )
+            return -1;
+        try {
+            return Long.parseLong( comment.substring( SIZE_COMMENT.length() ) );
+        } catch ( NumberFormatException e ) {
+            return -1;
+        }
+    }
+
+    /**
+     * Consecutive entries of a zip file extracted by one task
+     */
+    private static final class ExtractBatch {
+
+        private final int zip;
+
+        private final List<ZipCentralDirectory.Entry> entries = new ArrayList<>();
+
+        private long compressedSize;
+
+        private ExtractBatch( int zip ) {
+            this.zip = zip;
+        }
     }
 
 }
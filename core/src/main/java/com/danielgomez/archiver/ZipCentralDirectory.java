@@ -0,0 +1,299 @@
+package com.danielgomez.archiver;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a zip file. Only the end of central directory record and the central directory
+ * itself are read, so no entry is inflated and the cost does not depend on the size of the entries. Zip64 archives
+ * are supported.
+ */
+final class ZipCentralDirectory {
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+
+    private static final int CENTRAL_FILE_HEADER = 0x02014b50;
+
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int ZIP64_EXTRA = 0x0001;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private ZipCentralDirectory() {}
+
+    /**
+     * Reads the entries of a zip file in the order they appear in its central directory
+     *
+     * @param zip the zip file
+     * @return the entries
+     * @throws ZipException when the file is not a zip file
+     * @throws IOException  when reading fails
+     */
+    static List<Entry> read( Path zip ) throws IOException {
+        try ( FileChannel channel = FileChannel.open( zip, READ ) ) {
+            return read( channel );
+        }
+    }
+
+    static List<Entry> read( SeekableByteChannel channel ) throws IOException {
+        long size = channel.size();
+        ByteBuffer tail = readTail( channel );
+        int tailSize = tail.limit();
+        int eocd = findEnd( tail );
+
+        long entries = tail.getShort( eocd + 10 ) & 0xFFFF;
+        long directorySize = tail.getInt( eocd + 12 ) & ZIP64_MAGIC;
+        long directoryOffset = tail.getInt( eocd + 16 ) & ZIP64_MAGIC;
+        long locator = size - tailSize + eocd - ZIP64_LOCATOR_SIZE;
+        if ( ( entries == 0xFFFF || directorySize == ZIP64_MAGIC || directoryOffset == ZIP64_MAGIC ) && locator >= 0 ) {
+            ByteBuffer zip64Locator = readFully( channel, locator, ZIP64_LOCATOR_SIZE );
+            if ( zip64Locator.getInt( 0 ) == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR ) {
+                ByteBuffer zip64 = readFully( channel, zip64Locator.getLong( 8 ), 56 );
+                if ( zip64.getInt( 0 ) != ZIP64_END_OF_CENTRAL_DIRECTORY )
+                    throw new ZipException( "Invalid zip64 end of central directory" );
+                entries = zip64.getLong( 32 );
+                directorySize = zip64.getLong( 40 );
+                directoryOffset = zip64.getLong( 48 );
+            }
+        }
+
+        List<Entry> result = new ArrayList<>( ( int ) Math.min( entries, 1 << 16 ) );
+        channel.position( directoryOffset );
+        InputStream in = new BufferedInputStream( Channels.newInputStream( channel ), 64 * 1024 );
+        byte[] header = new byte[46];
+        ByteBuffer headerBuffer = ByteBuffer.wrap( header ).order( ByteOrder.LITTLE_ENDIAN );
+        for ( long i = 0; i < entries; i++ ) {
+            readFully( in, header );
+            if ( headerBuffer.getInt( 0 ) != CENTRAL_FILE_HEADER )
+                throw new ZipException( "Invalid central directory header at entry " + i );
+            int flags = headerBuffer.getShort( 8 ) & 0xFFFF;
+            int method = headerBuffer.getShort( 10 ) & 0xFFFF;
+            long crc = headerBuffer.getInt( 16 ) & ZIP64_MAGIC;
+            long compressedSize = headerBuffer.getInt( 20 ) & ZIP64_MAGIC;
+            long uncompressedSize = headerBuffer.getInt( 24 ) & ZIP64_MAGIC;
+            int nameLength = headerBuffer.getShort( 28 ) & 0xFFFF;
+            int extraLength = headerBuffer.getShort( 30 ) & 0xFFFF;
+            int commentLength = headerBuffer.getShort( 32 ) & 0xFFFF;
+            long localHeaderOffset = headerBuffer.getInt( 42 ) & ZIP64_MAGIC;
+
+            byte[] name = new byte[nameLength];
+            readFully( in, name );
+            byte[] extra = new byte[extraLength];
+            readFully( in, extra );
+            byte[] comment = new byte[commentLength];
+            readFully( in, comment );
+
+            ByteBuffer extraBuffer = ByteBuffer.wrap( extra ).order( ByteOrder.LITTLE_ENDIAN );
+            while ( extraBuffer.remaining() >= 4 ) {
+                int id = extraBuffer.getShort() & 0xFFFF;
+                int length = extraBuffer.getShort() & 0xFFFF;
+                int next = extraBuffer.position() + Math.min( length, extraBuffer.remaining() );
+                if ( id == ZIP64_EXTRA ) {
+                    if ( uncompressedSize == ZIP64_MAGIC && extraBuffer.position() + 8 <= next )
+                        uncompressedSize = extraBuffer.getLong();
+                    if ( compressedSize == ZIP64_MAGIC && extraBuffer.position() + 8 <= next )
+                        compressedSize = extraBuffer.getLong();
+                    if ( localHeaderOffset == ZIP64_MAGIC && extraBuffer.position() + 8 <= next )
+                        localHeaderOffset = extraBuffer.getLong();
+                }
+                extraBuffer.position( next );
+            }
+            result.add( new Entry( new String( name, StandardCharsets.UTF_8 ), flags, method, crc, compressedSize,
+                    uncompressedSize, localHeaderOffset, new String( comment, StandardCharsets.UTF_8 ) ) );
+        }
+        return result;
+    }
+
+    /**
+     * Reads the comment of a zip file, which follows its end of central directory record
+     *
+     * @param zip the zip file
+     * @return the comment, empty if there is none
+     * @throws ZipException when the file is not a zip file
+     * @throws IOException  when reading fails
+     */
+    static String readComment( Path zip ) throws IOException {
+        try ( FileChannel channel = FileChannel.open( zip, READ ) ) {
+            ByteBuffer tail = readTail( channel );
+            int eocd = findEnd( tail );
+            int length = Math.min( tail.getShort( eocd + 20 ) & 0xFFFF,
+                    tail.limit() - eocd - END_OF_CENTRAL_DIRECTORY_SIZE );
+            byte[] comment = new byte[length];
+            tail.position( eocd + END_OF_CENTRAL_DIRECTORY_SIZE );
+            tail.get( comment );
+            return new String( comment, StandardCharsets.UTF_8 );
+        }
+    }
+
+    /**
+     * @return the end of a zip file, long enough to hold the end of central directory record and the longest comment
+     */
+    private static ByteBuffer readTail( SeekableByteChannel channel ) throws IOException {
+        long size = channel.size();
+        int tailSize = ( int ) Math.min( size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE );
+        return readFully( channel, size - tailSize, tailSize );
+    }
+
+    /**
+     * @return the position of the end of central directory record in the tail of a zip file
+     * @throws ZipException when there is none
+     */
+    private static int findEnd( ByteBuffer tail ) throws ZipException {
+        for ( int i = tail.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i-- ) {
+            if ( tail.getInt( i ) == END_OF_CENTRAL_DIRECTORY )
+                return i;
+        }
+        throw new ZipException( "End of central directory not found" );
+    }
+
+    /**
+     * Finds where the data of an entry starts by reading its local file header, whose extra field may differ from the
+     * one in the central directory
+     *
+     * @param channel the zip file
+     * @param entry   an entry of the zip file
+     * @return the position of the first byte of the entry data
+     * @throws ZipException when there is no local file header at the offset of the entry
+     */
+    static long dataOffset( SeekableByteChannel channel, Entry entry ) throws IOException {
+        ByteBuffer header = readFully( channel, entry.getLocalHeaderOffset(), LOCAL_FILE_HEADER_SIZE );
+        if ( header.getInt( 0 ) != LOCAL_FILE_HEADER )
+            throw new ZipException( "Invalid local file header for entry '" + entry + "'" );
+        int nameLength = header.getShort( 26 ) & 0xFFFF;
+        int extraLength = header.getShort( 28 ) & 0xFFFF;
+        return entry.getLocalHeaderOffset() + LOCAL_FILE_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    private static ByteBuffer readFully( SeekableByteChannel channel, long position, int length ) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate( length ).order( ByteOrder.LITTLE_ENDIAN );
+        channel.position( position );
+        while ( buffer.hasRemaining() ) {
+            if ( channel.read( buffer ) < 0 )
+                throw new EOFException( "Unexpected end of zip file" );
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void readFully( InputStream in, byte[] bytes ) throws IOException {
+        int offset = 0;
+        while ( offset < bytes.length ) {
+            int read = in.read( bytes, offset, bytes.length - offset );
+            if ( read < 0 )
+                throw new EOFException( "Unexpected end of central directory" );
+            offset += read;
+        }
+    }
+
+    /**
+     * An entry of a central directory
+     */
+    static final class Entry {
+
+        private final String name;
+
+        private final int flags;
+
+        private final int method;
+
+        private final long crc;
+
+        private final long compressedSize;
+
+        private final long size;
+
+        private final long localHeaderOffset;
+
+        private final String comment;
+
+        Entry( String name, int flags, int method, long crc, long compressedSize, long size,
+                long localHeaderOffset, String comment ) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+            this.comment = comment;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getFlags() {
+            return flags;
+        }
+
+        /**
+         * @return The compression method, see {@link java.util.zip.ZipEntry#STORED} and
+         * {@link java.util.zip.ZipEntry#DEFLATED}
+         */
+        int getMethod() {
+            return method;
+        }
+
+        long getCrc() {
+            return crc;
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+
+        /**
+         * @return The uncompressed size of the entry
+         */
+        long getSize() {
+            return size;
+        }
+
+        long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+
+        /**
+         * @return The comment of the entry, empty if there is none
+         */
+        String getComment() {
+            return comment;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith( "/" );
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
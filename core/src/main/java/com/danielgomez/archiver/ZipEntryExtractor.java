@@ -0,0 +1,207 @@
+package com.danielgomez.archiver;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Extracts a single entry of a zip file with positional reads, given its central directory record. Nothing before the
+ * entry is read, so entries can be extracted in any order and from several threads over the same file. Data goes
+ * through the buffers of the calling thread, see {@link Buffers}.
+ */
+final class ZipEntryExtractor {
+
+    private ZipEntryExtractor() {}
+
+    /**
+     * Inflates an entry into a file, or only checks it
+     *
+     * @param zip        the zip file
+     * @param entry      the entry to extract
+     * @param dictionary the preset dictionary the zip file is deflated with, null for none, see
+     *                   {@link PresetDictionary}
+     * @param output     the file to write to, null to only check the size and checksum of the entry
+     * @param position   where the entry starts in the output file
+     * @param bufferSize size of the read and write buffers
+     * @throws ZipException when the entry is corrupt or uses an unsupported compression method
+     * @throws IOException  when reading or writing fails
+     */
+    static void extract( FileChannel zip, ZipCentralDirectory.Entry entry, byte[] dictionary, FileChannel output,
+            long position, int bufferSize ) throws IOException {
+        long dataOffset = ZipCentralDirectory.dataOffset( zip, entry );
+        CRC32 crc = new CRC32();
+        long size;
+        if ( entry.getMethod() == ZipEntry.STORED )
+            size = copy( zip, dataOffset, entry.getCompressedSize(), output, position, crc, bufferSize );
+        else if ( entry.getMethod() == ZipEntry.DEFLATED )
+            size = inflate( zip, dataOffset, entry.getCompressedSize(), dictionary, output, position, crc,
+                    bufferSize );
+        else
+            throw new ZipException( "Unsupported compression method " + entry.getMethod() + " of entry '" + entry
+                    + "'" );
+        if ( size != entry.getSize() || crc.getValue() != entry.getCrc() )
+            throw new ZipException( "Entry '" + entry + "' is corrupt" );
+    }
+
+    /**
+     * Opens an entry as a stream. Its compressed data is read at once, so this is meant for entries of bounded size
+     * like solid blocks, see {@link SolidBlocks}.
+     *
+     * @param zip        the zip file
+     * @param entry      the entry to read
+     * @param dictionary the preset dictionary the zip file is deflated with, null for none
+     * @return the uncompressed data, which throws a {@link ZipException} at its end if it does not match the size or
+     * checksum of the entry
+     * @throws ZipException when the entry uses an unsupported compression method
+     * @throws IOException  when reading fails
+     */
+    static InputStream open( FileChannel zip, ZipCentralDirectory.Entry entry, byte[] dictionary )
+            throws IOException {
+        if ( entry.getCompressedSize() >= Integer.MAX_VALUE )
+            throw new ZipException( "Entry '" + entry + "' is too large to be read at once" );
+        long dataOffset = ZipCentralDirectory.dataOffset( zip, entry );
+        // One byte more than the data, since the inflater may ask for a byte past the end of the deflate stream
+        byte[] compressed = new byte[( int ) entry.getCompressedSize() + 1];
+        ByteBuffer buffer = ByteBuffer.wrap( compressed, 0, compressed.length - 1 );
+        while ( buffer.hasRemaining() ) {
+            if ( zip.read( buffer, dataOffset + buffer.position() ) < 0 )
+                throw new EOFException( "Unexpected end of zip file" );
+        }
+        InputStream data;
+        if ( entry.getMethod() == ZipEntry.STORED ) {
+            data = new ByteArrayInputStream( compressed, 0, compressed.length - 1 );
+        } else if ( entry.getMethod() == ZipEntry.DEFLATED ) {
+            Inflater inflater = new Inflater( true );
+            if ( dictionary != null )
+                inflater.setDictionary( dictionary );
+            data = new InflaterInputStream( new ByteArrayInputStream( compressed ), inflater ) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inf.end();
+                }
+            };
+        } else {
+            throw new ZipException( "Unsupported compression method " + entry.getMethod() + " of entry '" + entry
+                    + "'" );
+        }
+        return new CheckedEntryStream( data, entry );
+    }
+
+    private static long copy( FileChannel zip, long offset, long length, FileChannel output, long position,
+            CRC32 crc, int bufferSize ) throws IOException {
+        byte[] bytes = Buffers.input( bufferSize );
+        ByteBuffer buffer = ByteBuffer.wrap( bytes );
+        long copied = 0;
+        while ( copied < length ) {
+            buffer.clear();
+            buffer.limit( ( int ) Math.min( bufferSize, length - copied ) );
+            int read = zip.read( buffer, offset + copied );
+            if ( read < 0 )
+                throw new EOFException( "Unexpected end of zip file" );
+            crc.update( bytes, 0, read );
+            buffer.flip();
+            if ( output != null )
+                writeFully( output, buffer, position + copied );
+            copied += read;
+        }
+        return copied;
+    }
+
+    private static long inflate( FileChannel zip, long offset, long length, byte[] dictionary, FileChannel output,
+            long position, CRC32 crc, int bufferSize ) throws IOException {
+        Inflater inflater = new Inflater( true );
+        try {
+            if ( dictionary != null )
+                inflater.setDictionary( dictionary );
+            byte[] inputBytes = Buffers.input( bufferSize );
+            ByteBuffer input = ByteBuffer.wrap( inputBytes );
+            byte[] buffer = Buffers.output( bufferSize );
+            long read = 0;
+            long written = 0;
+            while ( !inflater.finished() ) {
+                if ( inflater.needsInput() ) {
+                    if ( read >= length )
+                        throw new EOFException( "Unexpected end of deflated data" );
+                    input.clear();
+                    input.limit( ( int ) Math.min( bufferSize, length - read ) );
+                    int count = zip.read( input, offset + read );
+                    if ( count < 0 )
+                        throw new EOFException( "Unexpected end of zip file" );
+                    read += count;
+                    inflater.setInput( inputBytes, 0, count );
+                }
+                int count = inflater.inflate( buffer, 0, bufferSize );
+                if ( count == 0 && inflater.needsDictionary() )
+                    throw new ZipException( "Deflated data needs a preset dictionary" );
+                crc.update( buffer, 0, count );
+                if ( output != null )
+                    writeFully( output, ByteBuffer.wrap( buffer, 0, count ), position + written );
+                written += count;
+            }
+            return written;
+        } catch ( DataFormatException e ) {
+            throw new ZipException( e.getMessage() );
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeFully( FileChannel channel, ByteBuffer buffer, long position ) throws IOException {
+        while ( buffer.hasRemaining() )
+            position += channel.write( buffer, position );
+    }
+
+    /**
+     * Checks the uncompressed data of an entry against its size and checksum once its end is read
+     */
+    private static final class CheckedEntryStream extends FilterInputStream {
+
+        private final ZipCentralDirectory.Entry entry;
+
+        private final CRC32 crc = new CRC32();
+
+        private long size;
+
+        private CheckedEntryStream( InputStream in, ZipCentralDirectory.Entry entry ) {
+            super( in );
+            this.entry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read( b, 0, 1 ) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read( byte[] b, int off, int len ) throws IOException {
+            int read = in.read( b, off, len );
+            if ( read < 0 ) {
+                if ( size != entry.getSize() || crc.getValue() != entry.getCrc() )
+                    throw new ZipException( "Entry '" + entry + "' is corrupt" );
+                return -1;
+            }
+            crc.update( b, off, read );
+            size += read;
+            return read;
+        }
+
+        @Override
+        public long skip( long n ) throws IOException {
+            byte[] b = new byte[( int ) Math.min( n, 8192 )];
+            int read = read( b, 0, b.length );
+            return Math.max( read, 0 );
+        }
+    }
+}
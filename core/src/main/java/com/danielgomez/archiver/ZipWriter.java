@@ -0,0 +1,536 @@
+package com.danielgomez.archiver;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes the zip format around entry data that is compressed by the caller. Unlike
+ * {@link java.util.zip.ZipOutputStream}, entries can be filled with data that was deflated elsewhere, e.g. in
+ * parallel, as long as the checksum and sizes are given when the entry ends.
+ * <p>
+ * Entries with unknown sizes are followed by a data descriptor, so the output is never seeked and can be any channel.
+ * Data whose size is known up front can be transferred from a file channel without going through the heap. Zip64
+ * records are written when sizes, offsets or the number of entries exceed the limits of the classic format.
+ */
+final class ZipWriter implements Closeable {
+
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+
+    private static final int CENTRAL_FILE_HEADER = 0x02014b50;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+
+    private static final int FLAG_UTF8 = 1 << 11;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    /**
+     * Longest comment of the zip file or of an entry, for which room is always kept in the projected size
+     */
+    static final int MAX_COMMENT_SIZE = 40;
+
+    /**
+     * Largest size of the records written after the central directory, with the comment of the zip file
+     */
+    private static final int END_RECORDS_SIZE = 56 + 20 + 22 + MAX_COMMENT_SIZE;
+
+    /**
+     * Largest size of an entry's data descriptor, zip64 extra fields and comment
+     */
+    private static final int MAX_ENTRY_EXTRAS = 24 + 20 + 28 + MAX_COMMENT_SIZE;
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+
+    private final OutputStream out;
+
+    private final OutputStream entryStream = new OutputStream() {
+        @Override
+        public void write( int b ) throws IOException {
+            ZipWriter.this.write( new byte[] { ( byte ) b }, 0, 1 );
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len ) throws IOException {
+            ZipWriter.this.write( b, off, len );
+        }
+    };
+
+    private final String name;
+
+    private final ProgressTracker progress;
+
+    private final List<Record> records = new ArrayList<>();
+
+    private final Map<String, byte[]> entryComments = new HashMap<>();
+
+    private byte[] comment = new byte[0];
+
+    private final byte[] scratch = new byte[64];
+
+    private long position;
+
+    private long centralDirectorySize;
+
+    private Record current;
+
+    private boolean finished;
+
+    /**
+     * @param channel  where the zip is written, through a buffer
+     * @param name     the name of the zip file, as reported to the progress tracker
+     * @param progress notified as entries are written and when the zip is finished
+     */
+    ZipWriter( WritableByteChannel channel, String name, ProgressTracker progress ) {
+        this.channel = channel;
+        this.out = new BufferedOutputStream( Channels.newOutputStream( channel ), OUTPUT_BUFFER_SIZE );
+        this.name = name;
+        this.progress = progress;
+    }
+
+    /**
+     * @return The number of bytes written so far
+     */
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return true if no entry has been started yet
+     */
+    boolean isEmpty() {
+        return records.isEmpty() && current == null;
+    }
+
+    /**
+     * @return The largest size the zip can have if it was finished after ending the current entry
+     */
+    long getProjectedSize() {
+        long size = position + centralDirectorySize + END_RECORDS_SIZE;
+        if ( current != null )
+            size += MAX_ENTRY_EXTRAS + 46 + current.name.length;
+        return size;
+    }
+
+    /**
+     * @return The largest number of bytes an entry adds to a zip, besides its data
+     */
+    static long getEntryOverhead( String name ) {
+        return 30 + 46 + 2L * name.getBytes( StandardCharsets.UTF_8 ).length + MAX_ENTRY_EXTRAS;
+    }
+
+    /**
+     * Sets the comment of the zip file, written after its end of central directory record
+     *
+     * @throws IllegalArgumentException when the comment is longer than {@link #MAX_COMMENT_SIZE} bytes
+     */
+    void setComment( String comment ) {
+        this.comment = commentBytes( comment );
+    }
+
+    /**
+     * Sets the comment of an entry, which is written with the central directory. The entry may be added before or
+     * after.
+     *
+     * @throws IllegalArgumentException when the comment is longer than {@link #MAX_COMMENT_SIZE} bytes
+     */
+    void setEntryComment( String name, String comment ) {
+        byte[] bytes = commentBytes( comment );
+        byte[] previous = entryComments.put( name, bytes );
+        centralDirectorySize += bytes.length - ( previous == null ? 0 : previous.length );
+    }
+
+    private static byte[] commentBytes( String comment ) {
+        byte[] bytes = comment.getBytes( StandardCharsets.UTF_8 );
+        if ( bytes.length > MAX_COMMENT_SIZE )
+            throw new IllegalArgumentException( "Comment '" + comment + "' is longer than " + MAX_COMMENT_SIZE
+                    + " bytes" );
+        return bytes;
+    }
+
+    /**
+     * Writes an empty directory entry. A '/' is appended to the name if it is missing.
+     */
+    void putDirectory( String name ) throws IOException {
+        Record record = newRecord( name.endsWith( "/" ) ? name : name + "/", ZipEntry.STORED, 0 );
+        writeLocalHeader( record );
+        addRecord( record );
+    }
+
+    /**
+     * Writes a stored entry whose whole content is in memory
+     */
+    void putContent( String name, byte[] content ) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update( content, 0, content.length );
+        beginStoredEntry( name, crc.getValue(), content.length );
+        write( content, 0, content.length );
+        endEntry( crc.getValue(), content.length, content.length );
+    }
+
+    /**
+     * Starts a deflated entry whose checksum and sizes are given in {@link #endEntry(long, long, long)}. The
+     * compressed data is written with {@link #write(byte[], int, int)} in between.
+     */
+    void beginEntry( String name ) throws IOException {
+        if ( current != null )
+            throw new IllegalStateException( "Entry '" + current + "' is not ended" );
+        current = newRecord( name, ZipEntry.DEFLATED, FLAG_DATA_DESCRIPTOR );
+        writeLocalHeader( current );
+        startProgress( current );
+    }
+
+    /**
+     * Starts an entry that is written as is. Since stored entries have no data descriptor, the checksum and size must
+     * be known up front and exactly that many bytes must be written before {@link #endEntry(long, long, long)}.
+     */
+    void beginStoredEntry( String name, long crc, long size ) throws IOException {
+        beginRawEntry( name, ZipEntry.STORED, crc, size, size );
+    }
+
+    /**
+     * Starts an entry whose data is already compressed with the given method, e.g. copied from another zip file. Like
+     * stored entries, exactly {@code compressedSize} bytes must be written before {@link #endEntry(long, long, long)}.
+     */
+    void beginRawEntry( String name, int method, long crc, long compressedSize, long size ) throws IOException {
+        if ( current != null )
+            throw new IllegalStateException( "Entry '" + current + "' is not ended" );
+        current = newRecord( name, method, 0 );
+        current.crc = crc;
+        current.compressedSize = compressedSize;
+        current.size = size;
+        writeLocalHeader( current );
+        current.dataOffset = position;
+        startProgress( current );
+    }
+
+    /**
+     * Writes compressed data of the current entry
+     */
+    void write( byte[] bytes, int offset, int length ) throws IOException {
+        if ( current == null )
+            throw new IllegalStateException( "No entry is started" );
+        writeBytes( bytes, offset, length );
+        progress.written( length );
+    }
+
+    /**
+     * Writes compressed data of the current entry straight from a file with {@link FileChannel#transferTo}, which the
+     * operating system can do without copying the data to the heap
+     *
+     * @param source the file to read from
+     * @param offset where the data starts in the file
+     * @param length the number of bytes to write
+     * @throws EOFException when the file ends before {@code length} bytes are written
+     */
+    void transfer( FileChannel source, long offset, long length ) throws IOException {
+        if ( current == null )
+            throw new IllegalStateException( "No entry is started" );
+        out.flush();
+        long transferred = 0;
+        while ( transferred < length ) {
+            long count = source.transferTo( offset + transferred, length - transferred, channel );
+            if ( count <= 0 && offset + transferred >= source.size() )
+                throw new EOFException( "Unexpected end of file while writing entry '" + current + "'" );
+            transferred += count;
+        }
+        position += length;
+        progress.written( length );
+    }
+
+    /**
+     * @return a stream of the compressed data of the current entry. Closing it does nothing.
+     */
+    OutputStream entryStream() {
+        return entryStream;
+    }
+
+    /**
+     * Ends the current entry by writing its data descriptor
+     *
+     * @param crc            CRC-32 of the uncompressed data
+     * @param compressedSize number of bytes written for the entry
+     * @param size           number of uncompressed bytes
+     */
+    void endEntry( long crc, long compressedSize, long size ) throws IOException {
+        if ( current == null )
+            throw new IllegalStateException( "No entry is started" );
+        if ( ( current.flags & FLAG_DATA_DESCRIPTOR ) == 0 ) {
+            if ( current.crc != crc || current.size != size || current.compressedSize != compressedSize
+                    || position - current.dataOffset != compressedSize )
+                throw new ZipException( "Entry '" + current + "' does not match its header" );
+            endProgress( current );
+            addRecord( current );
+            current = null;
+            return;
+        }
+        current.crc = crc;
+        current.compressedSize = compressedSize;
+        current.size = size;
+        int length;
+        putInt( 0, DATA_DESCRIPTOR );
+        putInt( 4, crc );
+        if ( compressedSize >= ZIP64_MAGIC || size >= ZIP64_MAGIC ) {
+            putLong( 8, compressedSize );
+            putLong( 16, size );
+            length = 24;
+        } else {
+            putInt( 8, compressedSize );
+            putInt( 12, size );
+            length = 16;
+        }
+        writeBytes( scratch, 0, length );
+        endProgress( current );
+        addRecord( current );
+        current = null;
+    }
+
+    /**
+     * Writes the central directory. No entry can be added afterwards.
+     */
+    void finish() throws IOException {
+        if ( finished )
+            return;
+        if ( current != null )
+            throw new IllegalStateException( "Entry '" + current + "' is not ended" );
+        finished = true;
+        long directoryOffset = position;
+        for ( Record record : records )
+            writeCentralHeader( record );
+        long directorySize = position - directoryOffset;
+
+        long count = records.size();
+        if ( count >= ZIP64_MAGIC_COUNT || directorySize >= ZIP64_MAGIC || directoryOffset >= ZIP64_MAGIC ) {
+            long zip64Offset = position;
+            putInt( 0, ZIP64_END_OF_CENTRAL_DIRECTORY );
+            putLong( 4, 44 );
+            putShort( 12, 45 );
+            putShort( 14, 45 );
+            putInt( 16, 0 );
+            putInt( 20, 0 );
+            putLong( 24, count );
+            putLong( 32, count );
+            putLong( 40, directorySize );
+            putLong( 48, directoryOffset );
+            writeBytes( scratch, 0, 56 );
+
+            putInt( 0, ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR );
+            putInt( 4, 0 );
+            putLong( 8, zip64Offset );
+            putInt( 16, 1 );
+            writeBytes( scratch, 0, 20 );
+        }
+
+        putInt( 0, END_OF_CENTRAL_DIRECTORY );
+        putShort( 4, 0 );
+        putShort( 6, 0 );
+        putShort( 8, ( int ) Math.min( count, ZIP64_MAGIC_COUNT ) );
+        putShort( 10, ( int ) Math.min( count, ZIP64_MAGIC_COUNT ) );
+        putInt( 12, Math.min( directorySize, ZIP64_MAGIC ) );
+        putInt( 16, Math.min( directoryOffset, ZIP64_MAGIC ) );
+        putShort( 20, comment.length );
+        writeBytes( scratch, 0, 22 );
+        writeBytes( comment, 0, comment.length );
+        out.flush();
+    }
+
+    /**
+     * Finishes the zip file and closes the underlying stream
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+            progress.partFinished( name, position );
+        } finally {
+            out.close();
+        }
+    }
+
+    private Record newRecord( String name, int method, int flags ) {
+        Record record = new Record();
+        record.name = name.getBytes( StandardCharsets.UTF_8 );
+        record.method = method;
+        record.flags = flags | FLAG_UTF8;
+        record.time = dosTime( LocalDateTime.now() );
+        record.offset = position;
+        return record;
+    }
+
+    private void startProgress( Record record ) {
+        record.started = System.nanoTime();
+        progress.entryStarted( record.toString() );
+    }
+
+    private void endProgress( Record record ) {
+        progress.entryFinished( record.toString(), record.size, record.compressedSize,
+                System.nanoTime() - record.started );
+    }
+
+    private void addRecord( Record record ) {
+        records.add( record );
+        centralDirectorySize += 46 + record.name.length + zip64ExtraLength( record );
+    }
+
+    private static int zip64ExtraLength( Record record ) {
+        int length = 0;
+        if ( record.size >= ZIP64_MAGIC )
+            length += 8;
+        if ( record.compressedSize >= ZIP64_MAGIC )
+            length += 8;
+        if ( record.offset >= ZIP64_MAGIC )
+            length += 8;
+        return length > 0 ? length + 4 : 0;
+    }
+
+    private void writeLocalHeader( Record record ) throws IOException {
+        boolean zip64 = record.size >= ZIP64_MAGIC || record.compressedSize >= ZIP64_MAGIC;
+        putInt( 0, LOCAL_FILE_HEADER );
+        putShort( 4, zip64 ? 45 : 20 );
+        putShort( 6, record.flags );
+        putShort( 8, record.method );
+        putInt( 10, record.time );
+        putInt( 14, record.crc );
+        putInt( 18, Math.min( record.compressedSize, ZIP64_MAGIC ) );
+        putInt( 22, Math.min( record.size, ZIP64_MAGIC ) );
+        putShort( 26, record.name.length );
+        putShort( 28, zip64 ? 20 : 0 );
+        writeBytes( scratch, 0, 30 );
+        writeBytes( record.name, 0, record.name.length );
+        if ( zip64 ) {
+            putShort( 0, 0x0001 );
+            putShort( 2, 16 );
+            putLong( 4, record.size );
+            putLong( 12, record.compressedSize );
+            writeBytes( scratch, 0, 20 );
+        }
+    }
+
+    private void writeCentralHeader( Record record ) throws IOException {
+        ByteArrayOutputStream zip64 = new ByteArrayOutputStream();
+        if ( record.size >= ZIP64_MAGIC )
+            writeLong( zip64, record.size );
+        if ( record.compressedSize >= ZIP64_MAGIC )
+            writeLong( zip64, record.compressedSize );
+        if ( record.offset >= ZIP64_MAGIC )
+            writeLong( zip64, record.offset );
+        int extraLength = zip64.size() > 0 ? zip64.size() + 4 : 0;
+        byte[] entryComment = entryComments.getOrDefault( record.toString(), new byte[0] );
+
+        putInt( 0, CENTRAL_FILE_HEADER );
+        putShort( 4, extraLength > 0 ? 45 : 20 );
+        putShort( 6, extraLength > 0 ? 45 : 20 );
+        putShort( 8, record.flags );
+        putShort( 10, record.method );
+        putInt( 12, record.time );
+        putInt( 16, record.crc );
+        putInt( 20, Math.min( record.compressedSize, ZIP64_MAGIC ) );
+        putInt( 24, Math.min( record.size, ZIP64_MAGIC ) );
+        putShort( 28, record.name.length );
+        putShort( 30, extraLength );
+        putShort( 32, entryComment.length );
+        putShort( 34, 0 );
+        putShort( 36, 0 );
+        putInt( 38, 0 );
+        putInt( 42, Math.min( record.offset, ZIP64_MAGIC ) );
+        writeBytes( scratch, 0, 46 );
+        writeBytes( record.name, 0, record.name.length );
+        if ( extraLength > 0 ) {
+            putShort( 0, 0x0001 );
+            putShort( 2, zip64.size() );
+            writeBytes( scratch, 0, 4 );
+            writeBytes( zip64.toByteArray(), 0, zip64.size() );
+        }
+        writeBytes( entryComment, 0, entryComment.length );
+    }
+
+    private void writeBytes( byte[] bytes, int offset, int length ) throws IOException {
+        out.write( bytes, offset, length );
+        position += length;
+    }
+
+    private void putShort( int index, int value ) {
+        scratch[index] = ( byte ) value;
+        scratch[index + 1] = ( byte ) ( value >>> 8 );
+    }
+
+    private void putInt( int index, long value ) {
+        putShort( index, ( int ) value );
+        putShort( index + 2, ( int ) ( value >>> 16 ) );
+    }
+
+    private void putLong( int index, long value ) {
+        putInt( index, value );
+        putInt( index + 4, value >>> 32 );
+    }
+
+    private static void writeLong( OutputStream out, long value ) throws IOException {
+        for ( int i = 0; i < 8; i++ )
+            out.write( ( int ) ( value >>> ( i * 8 ) ) );
+    }
+
+    private static long dosTime( LocalDateTime time ) {
+        if ( time.getYear() < 1980 )
+            return ( 1 << 21 ) | ( 1 << 16 );
+        return ( time.getYear() - 1980 ) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    /**
+     * What the central directory needs to know about a written entry
+     */
+    private static class Record {
+
+        private byte[] name;
+
+        private int method;
+
+        private int flags;
+
+        private long time;
+
+        private long crc;
+
+        private long compressedSize;
+
+        private long size;
+
+        private long offset;
+
+        private long dataOffset;
+
+        private long started;
+
+        @Override
+        public String toString() {
+            return new String( name, StandardCharsets.UTF_8 );
+        }
+    }
+}
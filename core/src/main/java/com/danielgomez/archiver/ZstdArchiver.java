@@ -0,0 +1,175 @@
+package com.danielgomez.archiver;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * Implements archive operations with tar files compressed with Zstandard, named with a '.tar.zst' extension. Chunking
+ * and part naming work like {@link ZipArchiver}, see {@link TarArchiver}.
+ * <p>
+ * The compression level of the options is used as the zstd level, up to 22, -1 and 0 meaning zstd's default level 3.
+ * A single compressed file is compressed with as many zstd workers as the parallelism of the options when parallel
+ * deflate is set, see {@link CompressionOptions#isParallelDeflate()}.
+ * <p>
+ * Trees of many small similar files compress better with a dictionary, see {@link #ZstdArchiver(int)}, which
+ * {@link CompressionOptions#isPresetDictionary()} asks for too. The dictionary is written at the start of each
+ * compressed file as a skippable frame, so each file can be decompressed on its own.
+ */
+public class ZstdArchiver extends TarArchiver {
+
+    private static Logger LOGGER = LoggerFactory.getLogger( ZstdArchiver.class );
+
+    private static final int DEFAULT_LEVEL = 3;
+
+    private static final int MAX_LEVEL = 22;
+
+    /**
+     * Size of the dictionary trained when the options ask for a preset dictionary
+     */
+    private static final int DEFAULT_DICTIONARY_SIZE = 100 * 1024;
+
+    /**
+     * Magic number of the skippable frame that holds the dictionary, one of the 16 that zstd reserves for skippable
+     * frames
+     */
+    private static final int DICTIONARY_FRAME = 0x184D2A5A;
+
+    /**
+     * Largest file used as a sample to train the dictionary
+     */
+    private static final int MAX_SAMPLE_SIZE = 128 * 1024;
+
+    /**
+     * Ratio of sample bytes to dictionary size that zstd recommends for training
+     */
+    private static final int SAMPLES_PER_DICTIONARY = 100;
+
+    private final int dictionarySize;
+
+    public ZstdArchiver() {
+        this( 0 );
+    }
+
+    /**
+     * @param dictionarySize the size of a dictionary trained from the small files of each compression, 0 to compress
+     *                       without a dictionary unless the options ask for a preset dictionary, which trains one of
+     *                       100 KB. Around 100 KB is a good size.
+     */
+    public ZstdArchiver( int dictionarySize ) {
+        if ( dictionarySize < 0 )
+            throw new IllegalArgumentException( "Dictionary size must not be negative" );
+        this.dictionarySize = dictionarySize;
+    }
+
+    @Override
+    String getExtension() {
+        return ".tar.zst";
+    }
+
+    @Override
+    void checkCompression( CompressionOptions options ) {
+        ZipArchiver.checkCompressionLevel( options, MAX_LEVEL );
+    }
+
+    @Override
+    Encoder encoder( List<ChunkEntry> entries, CompressionOptions options, Workers workers ) throws IOException {
+        int level = options.getCompressionLevel() <= 0 ? DEFAULT_LEVEL : options.getCompressionLevel();
+        int size = dictionarySize > 0 ? dictionarySize : options.isPresetDictionary() ? DEFAULT_DICTIONARY_SIZE : 0;
+        byte[] dictionary = size > 0 ? train( entries, size, options ) : null;
+        return ( out, parallel ) -> {
+            if ( dictionary != null )
+                writeDictionary( out, dictionary );
+            ZstdOutputStream zstd = new ZstdOutputStream( out, level );
+            if ( parallel )
+                zstd.setWorkers( workers.getParallelism() );
+            if ( dictionary != null )
+                zstd.setDict( dictionary );
+            return zstd;
+        };
+    }
+
+    @Override
+    InputStream decode( InputStream in ) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream( in );
+        buffered.mark( 8 );
+        DataInputStream data = new DataInputStream( buffered );
+        byte[] dictionary = null;
+        try {
+            if ( Integer.reverseBytes( data.readInt() ) == DICTIONARY_FRAME ) {
+                dictionary = new byte[Integer.reverseBytes( data.readInt() )];
+                data.readFully( dictionary );
+            } else {
+                buffered.reset();
+            }
+        } catch ( EOFException e ) {
+            buffered.reset();
+        }
+        ZstdInputStream zstd = new ZstdInputStream( buffered );
+        if ( dictionary != null )
+            zstd.setDict( dictionary );
+        return zstd;
+    }
+
+    /**
+     * Trains a dictionary from the small files of a compression
+     *
+     * @param dictionarySize the size of the dictionary
+     * @return the dictionary, null if there are too few samples to train one
+     */
+    private static byte[] train( List<ChunkEntry> entries, int dictionarySize, CompressionOptions options )
+            throws IOException {
+        int sampleBufferSize = dictionarySize * SAMPLES_PER_DICTIONARY;
+        ZstdDictTrainer trainer = new ZstdDictTrainer( sampleBufferSize, dictionarySize );
+        long sampled = 0;
+        for ( ChunkEntry entry : entries ) {
+            if ( entry.isDirectory() || entry.isRange() || entry.getLength() == 0
+                    || entry.getLength() > MAX_SAMPLE_SIZE )
+                continue;
+            if ( sampled + entry.getLength() > sampleBufferSize )
+                break;
+            byte[] sample = new byte[( int ) entry.getLength()];
+            try ( SourceReader reader = SourceReader.open( entry.getSource(), options ) ) {
+                int length = 0;
+                int read;
+                while ( length < sample.length && ( read = reader.read( sample, length, sample.length - length,
+                        length ) ) >= 0 )
+                    length += read;
+            }
+            trainer.addSample( sample );
+            sampled += sample.length;
+        }
+        try {
+            byte[] dictionary = trainer.trainSamples();
+            LOGGER.debug( "Trained a dictionary of {} bytes from {} bytes of samples", dictionary.length, sampled );
+            return dictionary;
+        } catch ( RuntimeException e ) {
+            LOGGER.debug( "Compressing without dictionary since training failed on {} bytes of samples", sampled, e );
+            return null;
+        }
+    }
+
+    private static void writeDictionary( OutputStream out, byte[] dictionary ) throws IOException {
+        byte[] header = new byte[8];
+        putInt( header, 0, DICTIONARY_FRAME );
+        putInt( header, 4, dictionary.length );
+        out.write( header );
+        out.write( dictionary );
+    }
+
+    private static void putInt( byte[] bytes, int offset, int value ) {
+        for ( int i = 0; i < 4; i++ )
+            bytes[offset + i] = ( byte ) ( value >>> ( i * 8 ) );
+    }
+}
@@ -0,0 +1,61 @@
+package com.danielgomez.archiver;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.jimfs.Jimfs;
+
+public class TarGzArchiverTest {
+
+    @Test
+    @DisplayName( "Compressing in parallel writes a tar.gz that gzip readers decompress" )
+    public void compressInParallel() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path inputDir = fileSystem.getPath( "input" );
+            Files.createDirectories( inputDir );
+            byte[] content = new byte[3 * ParallelDeflater.DEFAULT_BLOCK_SIZE + 1];
+            Random random = new Random( 1 );
+            for ( int i = 0; i < content.length; i++ )
+                content[i] = ( byte ) ( 'a' + random.nextInt( 4 ) );
+            Files.write( inputDir.resolve( "file" ), content );
+            Path outputDir = fileSystem.getPath( "output" );
+            Files.createDirectories( outputDir );
+
+            TarGzArchiver archiver = new TarGzArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( inputDir )
+                    .output( outputDir )
+                    .parallelDeflate( true )
+                    .build() );
+            Path archive = outputDir.resolve( "input.tar.gz" );
+            assertTrue( Files.exists( archive ) );
+            try ( InputStream in = new GZIPInputStream( Files.newInputStream( archive ) ) ) {
+                byte[] header = new byte[TarWriter.BLOCK_SIZE];
+                assertEquals( header.length, in.read( header ) );
+                assertEquals( "file", new String( header, 0, 4, StandardCharsets.US_ASCII ) );
+                assertEquals( "ustar", new String( header, 257, 5, StandardCharsets.US_ASCII ) );
+            }
+
+            Path decompressedDir = fileSystem.getPath( "decompressed" );
+            Files.createDirectories( decompressedDir );
+            archiver.decompress( DecompressionOptionsBuilder.create()
+                    .input( outputDir )
+                    .output( decompressedDir )
+                    .build() );
+            assertArrayEquals( content, Files.readAllBytes( decompressedDir.resolve( "file" ) ) );
+        }
+    }
+}
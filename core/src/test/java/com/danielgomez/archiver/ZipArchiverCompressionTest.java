@@ -6,20 +6,51 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.io.TempDir;
 
 import com.google.common.jimfs.Jimfs;
 
@@ -90,6 +121,26 @@ public class ZipArchiverCompressionTest {
         }
     }
 
+    @Test
+    @DisplayName( "Compressing throws exception when input holds a name reserved for the entries the archiver adds" )
+    public void compressReservedName() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            for ( String reserved : new String[] { Duplicates.INDEX_NAME, SolidBlocks.INDEX_NAME + ".0" } ) {
+                Path inputDir = fileSystem.getPath( "input" + reserved );
+                Files.createDirectories( inputDir );
+                Files.createFile( inputDir.resolve( reserved ) );
+
+                ZipArchiver archiver = new ZipArchiver();
+                IllegalArgumentException exception = assertThrows( IllegalArgumentException.class,
+                        () -> archiver.compress( CompressionOptionsBuilder.create()
+                                .input( inputDir )
+                                .output( fileSystem.getPath( "output" ) )
+                                .build() ) );
+                assertTrue( exception.getMessage().contains( "'" + reserved + "', a name reserved" ) );
+            }
+        }
+    }
+
     @Test
     @DisplayName( "Compressing generates a zip file with files inside it" )
     public void compressWithFiles() throws IOException {
@@ -185,4 +236,728 @@ public class ZipArchiverCompressionTest {
         }
     }
 
+    @Test
+    @DisplayName( "Balanced chunk planner spreads files evenly without exceeding max file size" )
+    public void compressWithBalancedChunkPlanner() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input );
+            int maxFileSize = 1000;
+
+            int[] sizes = { 100, 600, 200, 500, 300, 400 };
+            for ( int i = 0; i < sizes.length; i++ )
+                Files.write( input.resolve( "file" + i ), new byte[sizes[i]] );
+
+            Path output = fileSystem.getPath( "output" );
+
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( output )
+                    .maxFileSize( maxFileSize )
+                    .chunkPlanner( ChunkPlanner.balanced() )
+                    .build() );
+
+            assertFalse( Files.exists( output.resolve( "input.part.3.zip" ) ) );
+            for ( int i = 0; i < 3; i++ ) {
+                Path part = output.resolve( "input.part." + i + ".zip" );
+                assertTrue( Files.exists( part ) );
+                assertTrue( Files.size( part ) < maxFileSize );
+                try ( FileSystem zipFs = ZipTestUtils.openZipFileSystem( part ) ) {
+                    assertEquals( 2, ZipTestUtils.list( zipFs ).size() );
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName( "Parallel deflate generates a single zip file with files split into blocks" )
+    public void compressWithParallelDeflate() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input.resolve( "dir" ) );
+
+            StringBuilder text = new StringBuilder();
+            for ( int i = 0; text.length() < 3 * 1024 * 1024; i++ )
+                text.append( "line " ).append( i ).append( '\n' );
+            byte[] large = text.toString().getBytes();
+            Files.write( input.resolve( "dir/large.txt" ), large );
+            Files.write( input.resolve( "small.txt" ), "small".getBytes() );
+
+            Path output = fileSystem.getPath( "output" );
+
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( output )
+                    .parallelDeflate( true )
+                    .build() );
+
+            try ( FileSystem zipFs = ZipTestUtils.openZipFileSystem( output.resolve( "input.zip" ) ) ) {
+                assertEquals( 2, ZipTestUtils.list( zipFs ).size() );
+                assertArrayEquals( large, Files.readAllBytes( zipFs.getPath( "dir/large.txt" ) ) );
+                assertArrayEquals( "small".getBytes(), Files.readAllBytes( zipFs.getPath( "small.txt" ) ) );
+            }
+        }
+    }
+
+    @Test
+    @DisplayName( "Parallel deflate fails instead of cutting off a file whose size changed since the scan" )
+    public void compressWithParallelDeflateChangedSize() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path file = fileSystem.getPath( "changed.bin" );
+            byte[] content = new byte[5000];
+            new Random( 0 ).nextBytes( content );
+            Files.write( file, content );
+
+            CompressionOptions options = CompressionOptionsBuilder.create()
+                    .input( fileSystem.getPath( "input" ) )
+                    .output( fileSystem.getPath( "output" ) )
+                    .parallelDeflate( true )
+                    .build();
+            for ( long scannedSize : new long[] { 3000, 7000 } ) {
+                List<ChunkEntry> entries = Arrays.asList( ChunkEntry.file( file, "changed.bin", scannedSize ) );
+                try ( Workers workers = Workers.of( options ) ) {
+                    ParallelDeflater deflater = new ParallelDeflater( options, 1024, workers );
+                    ZipWriter zip = new ZipWriter( Channels.newChannel( new ByteArrayOutputStream() ), "changed.zip",
+                            new ProgressTracker( options.getListener(), -1, true ) );
+                    IOException exception = assertThrows( IOException.class,
+                            () -> deflater.write( entries, null, zip ) );
+                    assertTrue( exception.getMessage().contains( "changed size" ) );
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName( "Storing fails instead of writing a wrong CRC-32 when a file changed since it was checksummed" )
+    public void compressStoredChangedContent() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path file = fileSystem.getPath( "changed.bin" );
+            Files.write( file, "before".getBytes() );
+            CRC32 crc = new CRC32();
+            crc.update( "before".getBytes() );
+            Files.write( file, "after!".getBytes() );
+
+            CompressionOptions options = CompressionOptionsBuilder.create()
+                    .input( fileSystem.getPath( "input" ) )
+                    .output( fileSystem.getPath( "output" ) )
+                    .build();
+            ZipWriter zip = new ZipWriter( Channels.newChannel( new ByteArrayOutputStream() ), "changed.zip",
+                    new ProgressTracker( options.getListener(), -1, true ) );
+            assertThrows( ZipException.class,
+                    () -> ZipArchiver.putStored( "changed.bin", file, 0, 6, crc.getValue(), zip, options ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Adaptive compression policy stores incompressible files and deflates the rest" )
+    public void compressWithAdaptivePolicy() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input );
+
+            byte[] random = new byte[16 * 1024];
+            new Random( 0 ).nextBytes( random );
+            Files.write( input.resolve( "random.bin" ), random );
+            byte[] zeros = new byte[16 * 1024];
+            Files.write( input.resolve( "zeros.bin" ), zeros );
+
+            Path output = fileSystem.getPath( "output" );
+
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( output )
+                    .compressionLevel( Deflater.BEST_SPEED )
+                    .compressionPolicy( CompressionPolicy.adaptive() )
+                    .build() );
+
+            Map<String, Integer> methods = new HashMap<>();
+            for ( ZipCentralDirectory.Entry entry : ZipCentralDirectory.read( output.resolve( "input.zip" ) ) )
+                methods.put( entry.getName(), entry.getMethod() );
+            assertEquals( ZipEntry.STORED, methods.get( "random.bin" ) );
+            assertEquals( ZipEntry.DEFLATED, methods.get( "zeros.bin" ) );
+
+            try ( FileSystem zipFs = ZipTestUtils.openZipFileSystem( output.resolve( "input.zip" ) ) ) {
+                assertArrayEquals( random, Files.readAllBytes( zipFs.getPath( "random.bin" ) ) );
+                assertArrayEquals( zeros, Files.readAllBytes( zipFs.getPath( "zeros.bin" ) ) );
+            }
+        }
+    }
+
+    @Test
+    @DisplayName( "Compression policies can be asked about entries built outside the archiver" )
+    public void compressionPolicyOnPublicEntries() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path file = fileSystem.getPath( "mixed.bin" );
+            byte[] content = new byte[32 * 1024];
+            new Random( 0 ).nextBytes( content );
+            Arrays.fill( content, 16 * 1024, content.length, ( byte ) 0 );
+            Files.write( file, content );
+
+            CompressionPolicy policy = CompressionPolicy.adaptive();
+            assertFalse( policy.shouldDeflate( ChunkEntry.file( file, "mixed.bin", content.length ) ) );
+            assertTrue( policy.shouldDeflate( ChunkEntry.range( file, "mixed.part.1.bin", 16 * 1024, 16 * 1024 ) ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Compressing with split on output size keeps every zip file within the max file size" )
+    public void compressSplitOnOutputSize() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input.resolve( "dir" ) );
+
+            byte[] random = new byte[200 * 1024];
+            new Random( 0 ).nextBytes( random );
+            Files.write( input.resolve( "dir/random.bin" ), random );
+            StringBuilder text = new StringBuilder();
+            for ( int i = 0; text.length() < 300 * 1024; i++ )
+                text.append( "line " ).append( i ).append( '\n' );
+            byte[] textBytes = text.toString().getBytes();
+            Files.write( input.resolve( "text.txt" ), textBytes );
+
+            Path output = fileSystem.getPath( "output" );
+            long maxFileSize = 64 * 1024;
+
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( output )
+                    .maxFileSize( maxFileSize )
+                    .splitOnOutputSize( true )
+                    .build() );
+
+            List<Path> zipFiles;
+            try ( Stream<Path> children = Files.list( output ) ) {
+                zipFiles = children.collect( Collectors.toList() );
+            }
+            assertTrue( zipFiles.size() >= 4 );
+            for ( Path zipFile : zipFiles )
+                assertTrue( Files.size( zipFile ) <= maxFileSize, zipFile + " exceeds max file size" );
+
+            Path extracted = fileSystem.getPath( "extracted" );
+            archiver.decompress( DecompressionOptionsBuilder.create()
+                    .input( output )
+                    .output( extracted )
+                    .build() );
+            assertArrayEquals( random, Files.readAllBytes( extracted.resolve( "dir/random.bin" ) ) );
+            assertArrayEquals( textBytes, Files.readAllBytes( extracted.resolve( "text.txt" ) ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Compressing incrementally copies unchanged files from the previous compression" )
+    public void compressIncremental() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input );
+            StringBuilder text = new StringBuilder();
+            for ( int i = 0; text.length() < 64 * 1024; i++ )
+                text.append( "line " ).append( i ).append( '\n' );
+            Files.write( input.resolve( "unchanged.txt" ), text.toString().getBytes() );
+            Files.write( input.resolve( "changed.txt" ), text.toString().getBytes() );
+
+            Path output = fileSystem.getPath( "output" );
+            ZipArchiver archiver = new ZipArchiver();
+            CompressionOptionsBuilder options = CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( output )
+                    .incremental( true );
+            archiver.compress( options.compressionLevel( Deflater.NO_COMPRESSION ).build() );
+            assertTrue( Files.exists( output.resolve( "input.manifest" ) ) );
+
+            byte[] changed = ( text + "appended" ).getBytes();
+            Files.write( input.resolve( "changed.txt" ), changed );
+            Files.write( input.resolve( "added.txt" ), text.toString().getBytes() );
+            archiver.compress( options.compressionLevel( Deflater.BEST_COMPRESSION ).build() );
+
+            Map<String, Long> compressedSizes = new HashMap<>();
+            for ( ZipCentralDirectory.Entry entry : ZipCentralDirectory.read( output.resolve( "input.zip" ) ) )
+                compressedSizes.put( entry.getName(), entry.getCompressedSize() );
+            assertTrue( compressedSizes.get( "unchanged.txt" ) > text.length() );
+            assertTrue( compressedSizes.get( "changed.txt" ) < text.length() / 2 );
+            assertTrue( compressedSizes.get( "added.txt" ) < text.length() / 2 );
+
+            try ( FileSystem zipFs = ZipTestUtils.openZipFileSystem( output.resolve( "input.zip" ) ) ) {
+                assertArrayEquals( text.toString().getBytes(), Files.readAllBytes( zipFs.getPath( "unchanged.txt" ) ) );
+                assertArrayEquals( changed, Files.readAllBytes( zipFs.getPath( "changed.txt" ) ) );
+            }
+        }
+    }
+
+    @Test
+    @DisplayName( "Compressing to a part sink streams every zip file and decompressing from channels restores them" )
+    public void compressToPartSink() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input.resolve( "dir" ) );
+            byte[] content = new byte[5000];
+            new Random( 0 ).nextBytes( content );
+            Files.write( input.resolve( "dir/file.bin" ), content );
+            Files.write( input.resolve( "small.txt" ), "small".getBytes() );
+
+            Map<Integer, ByteArrayOutputStream> parts = new TreeMap<>();
+            int[] partCount = { -1 };
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .maxFileSize( 1000 )
+                    .build(), new PartSink() {
+                @Override
+                public WritableByteChannel open( int part, String name ) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    synchronized ( parts ) {
+                        parts.put( part, out );
+                    }
+                    return Channels.newChannel( out );
+                }
+
+                @Override
+                public void finish( int count ) {
+                    partCount[0] = count;
+                }
+            } );
+            assertEquals( 6, partCount[0] );
+            assertEquals( 6, parts.size() );
+            assertFalse( Files.exists( fileSystem.getPath( "output" ) ) );
+
+            List<ReadableByteChannel> channels = parts.values().stream()
+                    .map( part -> Channels.newChannel( new ByteArrayInputStream( part.toByteArray() ) ) )
+                    .collect( Collectors.toList() );
+            Path output = fileSystem.getPath( "output" );
+            archiver.decompress( DecompressionOptionsBuilder.create()
+                    .output( output )
+                    .build(), channels );
+            assertArrayEquals( content, Files.readAllBytes( output.resolve( "dir/file.bin" ) ) );
+            assertEquals( "small", new String( Files.readAllBytes( output.resolve( "small.txt" ) ) ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Compressing to an output stream writes a single zip file" )
+    public void compressToOutputStream() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input );
+            Files.write( input.resolve( "file.txt" ), "content".getBytes() );
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .build(), out );
+
+            try ( ZipInputStream zis = new ZipInputStream( new ByteArrayInputStream( out.toByteArray() ) ) ) {
+                ZipEntry entry = zis.getNextEntry();
+                assertEquals( "file.txt", entry.getName() );
+                assertEquals( "content", new String( readAll( zis ) ) );
+            }
+            assertThrows( IllegalArgumentException.class, () -> archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .maxFileSize( 1000 )
+                    .build(), out ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Compressing reports its progress to the listener" )
+    public void compressWithListener() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input );
+            Files.write( input.resolve( "file1" ), new byte[900] );
+            Files.write( input.resolve( "file2" ), new byte[300] );
+
+            Path output = fileSystem.getPath( "output" );
+            ArchiveListener listener = mock( ArchiveListener.class );
+
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( output )
+                    .listener( listener )
+                    .build() );
+
+            verify( listener ).scanCompleted( 2, 1200 );
+            verify( listener ).chunkPlanned( 0, 2, 1200 );
+            verify( listener ).entryStarted( "file1" );
+            verify( listener ).entryFinished( eq( "file1" ), eq( 900L ), anyLong(), anyLong() );
+            verify( listener ).entryFinished( eq( "file2" ), eq( 300L ), anyLong(), anyLong() );
+            verify( listener ).partFinished( "input.zip", Files.size( output.resolve( "input.zip" ) ) );
+            verify( listener, atLeastOnce() ).throughput( any( Throughput.class ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Compressing reads files above the memory map threshold through mapped windows" )
+    public void compressWithMemoryMapThreshold( @TempDir Path tempDir ) throws IOException {
+        Path input = tempDir.resolve( "input" );
+        Files.createDirectories( input );
+        byte[] big = new byte[300 * 1024];
+        new Random( 1 ).nextBytes( big );
+        Files.write( input.resolve( "big.bin" ), big );
+        Files.write( input.resolve( "small.txt" ), "small".getBytes() );
+
+        Path output = tempDir.resolve( "output" );
+        ZipArchiver archiver = new ZipArchiver();
+        archiver.compress( CompressionOptionsBuilder.create()
+                .input( input )
+                .output( output )
+                .bufferSize( 1000 )
+                .memoryMapThreshold( 1024 )
+                .build() );
+
+        Map<String, byte[]> contents = new HashMap<>();
+        try ( ZipInputStream zis = new ZipInputStream( Files.newInputStream( output.resolve( "input.zip" ) ) ) ) {
+            ZipEntry entry;
+            while ( ( entry = zis.getNextEntry() ) != null )
+                contents.put( entry.getName(), readAll( zis ) );
+        }
+        assertArrayEquals( big, contents.get( "big.bin" ) );
+        assertArrayEquals( "small".getBytes(), contents.get( "small.txt" ) );
+    }
+
+    @Test
+    @DisplayName( "Compressing writes entries in name order whatever order the files were created in" )
+    public void compressInNameOrder() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            for ( String name : new String[] { "c/2", "a", "c/1", "b/x", "d" } ) {
+                Path file = input.resolve( name );
+                Files.createDirectories( file.getParent() );
+                Files.write( file, name.getBytes() );
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .build(), out );
+
+            List<String> names = new ArrayList<>();
+            try ( ZipInputStream zis = new ZipInputStream( new ByteArrayInputStream( out.toByteArray() ) ) ) {
+                ZipEntry entry;
+                while ( ( entry = zis.getNextEntry() ) != null )
+                    names.add( entry.getName() );
+            }
+            assertEquals( Arrays.asList( "a", "b/", "b/x", "c/", "c/1", "c/2", "d" ), names );
+        }
+    }
+
+    @Test
+    @DisplayName( "Compressing writes chunks while scanning and names a single chunk after the input" )
+    public void compressWhileScanning() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Map<String, byte[]> files = new TreeMap<>();
+            Random random = new Random( 1 );
+            for ( int i = 0; i < 60; i++ ) {
+                byte[] content = new byte[100 + random.nextInt( 200 )];
+                random.nextBytes( content );
+                Path file = input.resolve( "dir" + i % 7 ).resolve( "file" + i );
+                Files.createDirectories( file.getParent() );
+                Files.write( file, content );
+                files.put( input.relativize( file ).toString(), content );
+            }
+
+            Path output = fileSystem.getPath( "output" );
+            ArchiveListener listener = mock( ArchiveListener.class );
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( output )
+                    .maxFileSize( 1000 )
+                    .listener( listener )
+                    .build() );
+
+            assertFalse( Files.exists( output.resolve( "input.zip" ) ) );
+            assertTrue( Files.exists( output.resolve( "input.part.0.zip" ) ) );
+            verify( listener ).scanCompleted( eq( 60 ), anyLong() );
+            Path extracted = fileSystem.getPath( "extracted" );
+            archiver.decompress( DecompressionOptionsBuilder.create()
+                    .input( output )
+                    .output( extracted )
+                    .build() );
+            for ( Map.Entry<String, byte[]> file : files.entrySet() )
+                assertArrayEquals( file.getValue(), Files.readAllBytes( extracted.resolve( file.getKey() ) ) );
+
+            Path single = fileSystem.getPath( "single" );
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( single )
+                    .maxFileSize( 1024 * 1024 )
+                    .build() );
+            assertTrue( Files.exists( single.resolve( "input.zip" ) ) );
+            assertFalse( Files.exists( single.resolve( "input.part.0.zip" ) ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Compressing with deduplication stores identical files once and lists the others in an index" )
+    public void compressWithDeduplication() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input.resolve( "copy" ) );
+            byte[] content = new byte[2000];
+            new Random( 1 ).nextBytes( content );
+            Files.write( input.resolve( "a.jar" ), content );
+            Files.write( input.resolve( "copy/a.jar" ), content );
+            byte[] sameSize = content.clone();
+            sameSize[0]++;
+            Files.write( input.resolve( "b.jar" ), sameSize );
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .deduplicate( true )
+                    .build(), out );
+
+            Map<String, byte[]> contents = new TreeMap<>();
+            try ( ZipInputStream zis = new ZipInputStream( new ByteArrayInputStream( out.toByteArray() ) ) ) {
+                ZipEntry entry;
+                while ( ( entry = zis.getNextEntry() ) != null )
+                    contents.put( entry.getName(), readAll( zis ) );
+            }
+            assertEquals( Arrays.asList( Duplicates.INDEX_NAME, "a.jar", "b.jar", "copy/" ),
+                    new ArrayList<>( contents.keySet() ) );
+            assertTrue( new String( contents.get( Duplicates.INDEX_NAME ) ).contains( "copy/a.jar\ta.jar\n" ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Compressing asynchronously writes zip files on the executor of the options" )
+    public void compressAsyncWithExecutor() throws Exception {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Map<String, byte[]> files = new TreeMap<>();
+            Random random = new Random( 1 );
+            for ( int i = 0; i < 20; i++ ) {
+                byte[] content = new byte[100 + random.nextInt( 200 )];
+                random.nextBytes( content );
+                Path file = input.resolve( "dir" + i % 3 ).resolve( "file" + i );
+                Files.createDirectories( file.getParent() );
+                Files.write( file, content );
+                files.put( input.relativize( file ).toString(), content );
+            }
+
+            ExecutorService single = Executors.newSingleThreadExecutor();
+            AtomicInteger tasks = new AtomicInteger();
+            Executor executor = task -> {
+                tasks.incrementAndGet();
+                single.execute( task );
+            };
+            try {
+                Path output = fileSystem.getPath( "output" );
+                ZipArchiver archiver = new ZipArchiver();
+                archiver.compressAsync( CompressionOptionsBuilder.create()
+                        .input( input )
+                        .output( output )
+                        .maxFileSize( 1000 )
+                        .executor( executor )
+                        .build() ).get( 1, TimeUnit.MINUTES );
+                assertTrue( tasks.get() > 1 );
+
+                Path extracted = fileSystem.getPath( "extracted" );
+                archiver.decompressAsync( DecompressionOptionsBuilder.create()
+                        .input( output )
+                        .output( extracted )
+                        .parallel( true )
+                        .executor( executor )
+                        .build() ).get( 1, TimeUnit.MINUTES );
+                for ( Map.Entry<String, byte[]> file : files.entrySet() )
+                    assertArrayEquals( file.getValue(), Files.readAllBytes( extracted.resolve( file.getKey() ) ) );
+            } finally {
+                single.shutdown();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName( "Resuming a failed resumable compression keeps the zip files it finished and writes the rest" )
+    public void compressResume() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Map<String, byte[]> files = new TreeMap<>();
+            Random random = new Random( 1 );
+            for ( int i = 0; i < 20; i++ ) {
+                byte[] content = new byte[1000];
+                random.nextBytes( content );
+                files.put( "dir" + i % 2 + "/file" + i, content );
+                Files.createDirectories( input.resolve( "dir" + i % 2 ) );
+                Files.write( input.resolve( "dir" + i % 2 + "/file" + i ), content );
+            }
+            Path output = fileSystem.getPath( "output" );
+            ZipArchiver archiver = new ZipArchiver();
+            AtomicInteger finishedParts = new AtomicInteger();
+            ArchiveListener failing = new ArchiveListener() {
+                @Override
+                public void partFinished( String name, long bytes ) {
+                    if ( finishedParts.incrementAndGet() == 3 )
+                        throw new IllegalStateException( "Failed" );
+                }
+            };
+            assertThrows( IllegalStateException.class, () -> archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( output )
+                    .maxFileSize( 4000 )
+                    .parallelism( 1 )
+                    .listener( failing )
+                    .build() ) );
+            assertFalse( Files.exists( output.resolve( "input.journal" ) ) );
+
+            finishedParts.set( 0 );
+            assertThrows( IllegalStateException.class, () -> archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( output )
+                    .maxFileSize( 4000 )
+                    .resume( true )
+                    .parallelism( 1 )
+                    .listener( failing )
+                    .build() ) );
+            assertTrue( Files.exists( output.resolve( "input.journal" ) ) );
+
+            ArchiveListener listener = mock( ArchiveListener.class );
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( output )
+                    .maxFileSize( 4000 )
+                    .resume( true )
+                    .listener( listener )
+                    .build() );
+            verify( listener, times( 12 ) ).entryStarted( any() );
+            assertFalse( Files.exists( output.resolve( "input.journal" ) ) );
+
+            Path extracted = fileSystem.getPath( "extracted" );
+            archiver.decompress( DecompressionOptionsBuilder.create()
+                    .input( output )
+                    .output( extracted )
+                    .build() );
+            for ( Map.Entry<String, byte[]> file : files.entrySet() )
+                assertArrayEquals( file.getValue(), Files.readAllBytes( extracted.resolve( file.getKey() ) ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Solid blocks pack small files into a few entries that decompress and extract back" )
+    public void compressSolidBlocks() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Map<String, byte[]> files = new TreeMap<>();
+            Random random = new Random( 2 );
+            for ( int i = 0; i < 100; i++ ) {
+                byte[] content = new byte[random.nextInt( 500 )];
+                random.nextBytes( content );
+                files.put( "dir" + i % 3 + "/file" + i, content );
+                Files.createDirectories( input.resolve( "dir" + i % 3 ) );
+                Files.write( input.resolve( "dir" + i % 3 + "/file" + i ), content );
+            }
+            byte[] large = new byte[10_000];
+            random.nextBytes( large );
+            files.put( "large", large );
+            Files.write( input.resolve( "large" ), large );
+
+            Path output = fileSystem.getPath( "output" );
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( output )
+                    .solidBlockSize( 8192 )
+                    .build() );
+            List<String> names = new ArrayList<>();
+            try ( ZipInputStream zis = new ZipInputStream( Files.newInputStream( output.resolve( "input.zip" ) ) ) ) {
+                for ( ZipEntry entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry() )
+                    names.add( entry.getName() );
+            }
+            assertEquals( SolidBlocks.INDEX_NAME, names.get( 0 ) );
+            assertTrue( names.contains( "large" ) );
+            assertFalse( names.contains( "dir0/file0" ) );
+            assertTrue( names.size() < 20 );
+
+            for ( boolean parallel : new boolean[] { false, true } ) {
+                Path extracted = fileSystem.getPath( "extracted" + parallel );
+                archiver.decompress( DecompressionOptionsBuilder.create()
+                        .input( output )
+                        .output( extracted )
+                        .parallel( parallel )
+                        .build() );
+                for ( Map.Entry<String, byte[]> file : files.entrySet() )
+                    assertArrayEquals( file.getValue(), Files.readAllBytes( extracted.resolve( file.getKey() ) ) );
+                assertFalse( Files.exists( extracted.resolve( SolidBlocks.INDEX_NAME ) ) );
+            }
+
+            Path single = fileSystem.getPath( "single" );
+            archiver.extract( ExtractionOptionsBuilder.create()
+                    .input( output )
+                    .output( single )
+                    .pattern( "dir1/file4" )
+                    .build() );
+            assertArrayEquals( files.get( "dir1/file4" ), Files.readAllBytes( single.resolve( "dir1/file4" ) ) );
+            assertFalse( Files.exists( single.resolve( "dir1/file1" ) ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Preset dictionary shrinks similar small files, which decompress back" )
+    public void compressPresetDictionary() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Map<String, byte[]> files = new TreeMap<>();
+            Random random = new Random( 3 );
+            for ( int i = 0; i < 200; i++ ) {
+                byte[] content = ( "{\n  \"id\": " + i + ",\n  \"name\": \"item-" + random.nextInt( 1000 )
+                        + "\",\n  \"type\": \"widget\",\n  \"tags\": [\"alpha\", \"beta\", \"gamma\"]\n}\n" )
+                        .getBytes();
+                files.put( "dir" + i % 4 + "/file" + i + ".json", content );
+                Files.createDirectories( input.resolve( "dir" + i % 4 ) );
+                Files.write( input.resolve( "dir" + i % 4 + "/file" + i + ".json" ), content );
+            }
+
+            ZipArchiver archiver = new ZipArchiver();
+            Path plain = fileSystem.getPath( "plain" );
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( plain )
+                    .build() );
+            Path output = fileSystem.getPath( "output" );
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( output )
+                    .maxFileSize( 10_000 )
+                    .presetDictionary( true )
+                    .build() );
+            long size = 0;
+            try ( Stream<Path> zipFiles = Files.list( output ) ) {
+                for ( Path zipFile : zipFiles.collect( Collectors.toList() ) ) {
+                    assertEquals( PresetDictionary.ENTRY_NAME, ZipCentralDirectory.read( zipFile ).get( 0 ).getName() );
+                    size += Files.size( zipFile );
+                }
+            }
+            assertTrue( size < Files.size( plain.resolve( "input.zip" ) ) );
+
+            for ( boolean parallel : new boolean[] { false, true } ) {
+                Path extracted = fileSystem.getPath( "extracted" + parallel );
+                archiver.decompress( DecompressionOptionsBuilder.create()
+                        .input( output )
+                        .output( extracted )
+                        .parallel( parallel )
+                        .build() );
+                for ( Map.Entry<String, byte[]> file : files.entrySet() )
+                    assertArrayEquals( file.getValue(), Files.readAllBytes( extracted.resolve( file.getKey() ) ) );
+                assertFalse( Files.exists( extracted.resolve( PresetDictionary.ENTRY_NAME ) ) );
+            }
+        }
+    }
+
+    private static byte[] readAll( InputStream in ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ( ( read = in.read( buffer ) ) > 0 )
+            out.write( buffer, 0, read );
+        return out.toByteArray();
+    }
+
 }
@@ -1,6 +1,8 @@
 package com.danielgomez.archiver;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
@@ -12,6 +14,10 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.zip.ZipException;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -136,4 +142,338 @@ public class ZipArchiverDecompressionTest {
         }
     }
 
+    @Test
+    @DisplayName( "Decompress restores stored and deflated pieces through buffers smaller than the entries" )
+    public void decompressWithSmallBuffers() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input.resolve( "dir" ) );
+            byte[] random = new byte[20_000];
+            new Random( 0 ).nextBytes( random );
+            Files.write( input.resolve( "dir/random.bin" ), random );
+            StringBuilder text = new StringBuilder();
+            for ( int i = 0; text.length() < 20_000; i++ )
+                text.append( "line " ).append( i ).append( '\n' );
+            Files.write( input.resolve( "dir/text.txt" ), text.toString().getBytes() );
+
+            Path compressed = fileSystem.getPath( "compressed" );
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( compressed )
+                    .maxFileSize( 7000 )
+                    .bufferSize( 100 )
+                    .compressionPolicy( CompressionPolicy.adaptive() )
+                    .build() );
+
+            for ( int bufferSize : new int[] { 7, 4096 } ) {
+                Path output = fileSystem.getPath( "output" + bufferSize );
+                archiver.decompress( DecompressionOptionsBuilder.create()
+                        .input( compressed )
+                        .output( output )
+                        .bufferSize( bufferSize )
+                        .build() );
+                assertArrayEquals( random, Files.readAllBytes( output.resolve( "dir/random.bin" ) ) );
+                assertEquals( text.toString(), new String( Files.readAllBytes( output.resolve( "dir/text.txt" ) ) ) );
+            }
+        }
+    }
+
+    @Test
+    @DisplayName( "Parallel decompress writes pieces of split files at their offsets" )
+    public void decompressParallelConsolidatesChunkedFile() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input.resolve( "dir" ) );
+            byte[] content = new byte[12_500];
+            new Random( 0 ).nextBytes( content );
+            Files.write( input.resolve( "dir/file" ), content );
+            Files.write( input.resolve( "small.txt" ), "small".getBytes() );
+
+            Path compressed = fileSystem.getPath( "compressed" );
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( compressed )
+                    .maxFileSize( 1000 )
+                    .build() );
+
+            Path output = fileSystem.getPath( "output" );
+            archiver.decompress( DecompressionOptionsBuilder.create()
+                    .input( compressed )
+                    .output( output )
+                    .parallel( true )
+                    .build() );
+            assertArrayEquals( content, Files.readAllBytes( output.resolve( "dir/file" ) ) );
+            assertEquals( "small", new String( Files.readAllBytes( output.resolve( "small.txt" ) ) ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Parallel decompress extracts the entries of a single zip file concurrently" )
+    public void decompressParallelSingleZip() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input.resolve( "empty/nested" ) );
+            byte[][] contents = new byte[64][];
+            Random random = new Random( 0 );
+            for ( int i = 0; i < contents.length; i++ ) {
+                contents[i] = new byte[100_000];
+                random.nextBytes( contents[i] );
+                Path file = input.resolve( "dir" + i % 4 ).resolve( "sub" + i % 3 ).resolve( "file" + i );
+                Files.createDirectories( file.getParent() );
+                Files.write( file, contents[i] );
+            }
+
+            Path compressed = fileSystem.getPath( "compressed" );
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( compressed )
+                    .build() );
+            assertEquals( 1, Files.list( compressed ).count() );
+
+            Path output = fileSystem.getPath( "output" );
+            archiver.decompress( DecompressionOptionsBuilder.create()
+                    .input( compressed )
+                    .output( output )
+                    .parallel( true )
+                    .parallelism( 4 )
+                    .build() );
+            assertTrue( Files.isDirectory( output.resolve( "empty/nested" ) ) );
+            for ( int i = 0; i < contents.length; i++ )
+                assertArrayEquals( contents[i], Files.readAllBytes( output.resolve( "dir" + i % 4 )
+                        .resolve( "sub" + i % 3 ).resolve( "file" + i ) ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Extract restores only the files matching the patterns, including split files" )
+    public void extractSelectedPaths() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input.resolve( "dir" ) );
+            byte[] content = new byte[12_500];
+            new Random( 0 ).nextBytes( content );
+            Files.write( input.resolve( "dir/file.bin" ), content );
+            Files.write( input.resolve( "dir/other.txt" ), "other".getBytes() );
+            Files.write( input.resolve( "small.txt" ), "small".getBytes() );
+
+            Path compressed = fileSystem.getPath( "compressed" );
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( compressed )
+                    .maxFileSize( 1000 )
+                    .build() );
+
+            Path output = fileSystem.getPath( "output" );
+            archiver.extract( ExtractionOptionsBuilder.create()
+                    .input( compressed )
+                    .output( output )
+                    .pattern( "dir/*.bin", "small.txt" )
+                    .build() );
+            assertArrayEquals( content, Files.readAllBytes( output.resolve( "dir/file.bin" ) ) );
+            assertEquals( "small", new String( Files.readAllBytes( output.resolve( "small.txt" ) ) ) );
+            assertFalse( Files.exists( output.resolve( "dir/other.txt" ) ) );
+
+            assertThrows( NoSuchFileException.class, () -> archiver.extract( ExtractionOptionsBuilder.create()
+                    .input( compressed )
+                    .output( output )
+                    .pattern( "missing" )
+                    .build() ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Decompress and extract restore files left out as duplicates" )
+    public void decompressRestoresDuplicates() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            byte[] content = new byte[5000];
+            new Random( 0 ).nextBytes( content );
+            for ( String dir : new String[] { "a", "b", "c" } ) {
+                Files.createDirectories( input.resolve( dir ) );
+                Files.write( input.resolve( dir ).resolve( "lib.jar" ), content );
+            }
+
+            Path compressed = fileSystem.getPath( "compressed" );
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( compressed )
+                    .maxFileSize( 6000 )
+                    .deduplicate( true )
+                    .build() );
+
+            for ( boolean parallel : new boolean[] { false, true } ) {
+                Path output = fileSystem.getPath( "output" + parallel );
+                archiver.decompress( DecompressionOptionsBuilder.create()
+                        .input( compressed )
+                        .output( output )
+                        .parallel( parallel )
+                        .build() );
+                for ( String dir : new String[] { "a", "b", "c" } )
+                    assertArrayEquals( content, Files.readAllBytes( output.resolve( dir ).resolve( "lib.jar" ) ) );
+                assertFalse( Files.exists( output.resolve( Duplicates.INDEX_NAME ) ) );
+            }
+
+            Path extracted = fileSystem.getPath( "extracted" );
+            archiver.extract( ExtractionOptionsBuilder.create()
+                    .input( compressed )
+                    .output( extracted )
+                    .pattern( "c/*" )
+                    .build() );
+            assertArrayEquals( content, Files.readAllBytes( extracted.resolve( "c/lib.jar" ) ) );
+            assertFalse( Files.exists( extracted.resolve( "a/lib.jar" ) ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Decompress restores duplicates whose names hold tabs and line breaks" )
+    public void decompressRestoresDuplicatesWithEscapedNames() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            byte[] content = new byte[5000];
+            new Random( 0 ).nextBytes( content );
+            String[] dirs = { "a", "tab\there", "line\nbreak", "back\\slash" };
+            for ( String dir : dirs ) {
+                Files.createDirectories( input.resolve( dir ) );
+                Files.write( input.resolve( dir ).resolve( "lib.jar" ), content );
+            }
+
+            Path compressed = fileSystem.getPath( "compressed" );
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( compressed )
+                    .deduplicate( true )
+                    .build() );
+
+            for ( boolean parallel : new boolean[] { false, true } ) {
+                Path output = fileSystem.getPath( "output" + parallel );
+                archiver.decompress( DecompressionOptionsBuilder.create()
+                        .input( compressed )
+                        .output( output )
+                        .parallel( parallel )
+                        .build() );
+                for ( String dir : dirs )
+                    assertArrayEquals( content, Files.readAllBytes( output.resolve( dir ).resolve( "lib.jar" ) ) );
+            }
+        }
+    }
+
+    @Test
+    @DisplayName( "Verify finds corrupt entries and missing zip files without writing anything" )
+    public void verifyFindsProblems() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input.resolve( "dir" ) );
+            byte[] content = new byte[12_500];
+            new Random( 0 ).nextBytes( content );
+            Files.write( input.resolve( "dir/file" ), content );
+            Files.write( input.resolve( "small.txt" ), "small".getBytes() );
+
+            Path compressed = fileSystem.getPath( "compressed" );
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( compressed )
+                    .maxFileSize( 1000 )
+                    .build() );
+            long zipCount = Files.list( compressed ).count();
+            assertTrue( archiver.verify( IOOptionsBuilder.create().input( compressed ).build() ).isEmpty() );
+            assertEquals( zipCount, Files.list( compressed ).count() );
+
+            Path part = compressed.resolve( "input.part.1.zip" );
+            byte[] bytes = Files.readAllBytes( part );
+            bytes[200] ^= 1;
+            Files.write( part, bytes );
+            List<String> problems = archiver.verify( IOOptionsBuilder.create().input( compressed ).build() );
+            assertEquals( 1, problems.size() );
+            assertTrue( problems.get( 0 ).contains( "corrupt" ) );
+
+            Files.delete( part );
+            problems = archiver.verify( IOOptionsBuilder.create().input( compressed ).build() );
+            assertTrue( problems.contains( "Expected zip file 1 of 'input.zip' but found 'input.part.2.zip'" ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Verify and list find a missing last zip file of a split file" )
+    public void verifyFindsMissingLastZipFile() throws IOException {
+        assertMissingLastZipFileFound( false );
+    }
+
+    @Test
+    @DisplayName( "Verify and list find a missing last zip file when splitting on output size" )
+    public void verifyFindsMissingLastZipFileSplitOnOutputSize() throws IOException {
+        assertMissingLastZipFileFound( true );
+    }
+
+    private static void assertMissingLastZipFileFound( boolean splitOnOutputSize ) throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input );
+            byte[] content = new byte[5000];
+            new Random( 0 ).nextBytes( content );
+            Files.write( input.resolve( "big.bin" ), content );
+
+            Path compressed = fileSystem.getPath( "compressed" );
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( compressed )
+                    .maxFileSize( 2000 )
+                    .splitOnOutputSize( splitOnOutputSize )
+                    .build() );
+            IOOptions options = IOOptionsBuilder.create().input( compressed ).build();
+            assertTrue( archiver.verify( options ).isEmpty() );
+            assertEquals( content.length, archiver.list( options ).get( 0 ).getSize() );
+
+            long zipCount = Files.list( compressed ).count();
+            assertTrue( zipCount > 2 );
+            Files.delete( compressed.resolve( "input.part." + ( zipCount - 1 ) + ".zip" ) );
+            List<String> problems = archiver.verify( options );
+            assertTrue( problems.contains( "Last zip file of 'input.zip' is missing" ) );
+            assertTrue( problems.stream().anyMatch( problem -> problem.startsWith( "Pieces of 'big.bin' hold " )
+                    && problem.endsWith( " of its 5000 bytes" ) ) );
+            assertThrows( ZipException.class, () -> archiver.list( options ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "List adds up the pieces of split files and lists the files of solid blocks" )
+    public void listReassemblesSplitFiles() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path input = fileSystem.getPath( "input" );
+            Files.createDirectories( input.resolve( "dir" ) );
+            Files.createDirectories( input.resolve( "empty" ) );
+            byte[] content = new byte[12_500];
+            new Random( 0 ).nextBytes( content );
+            Files.write( input.resolve( "dir/file" ), content );
+            Files.write( input.resolve( "small.txt" ), "small".getBytes() );
+
+            Path compressed = fileSystem.getPath( "compressed" );
+            ZipArchiver archiver = new ZipArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( input )
+                    .output( compressed )
+                    .maxFileSize( 5000 )
+                    .solidBlockSize( 1024 )
+                    .build() );
+
+            List<ArchiveEntry> entries = archiver.list( IOOptionsBuilder.create().input( compressed ).build() );
+            assertEquals( "dir/, dir/file, empty/, small.txt", entries.stream()
+                    .map( ArchiveEntry::getName )
+                    .collect( Collectors.joining( ", " ) ) );
+            ArchiveEntry file = entries.get( 1 );
+            assertEquals( content.length, file.getSize() );
+            assertTrue( file.getPieces() > 1 );
+            assertTrue( file.getCompressedSize() > 0 );
+            assertEquals( 5, entries.get( 3 ).getSize() );
+            assertTrue( entries.get( 2 ).isDirectory() );
+        }
+    }
+
 }
@@ -0,0 +1,137 @@
+package com.danielgomez.archiver;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.jimfs.Jimfs;
+
+public class ZstdArchiverTest {
+
+    @Test
+    @DisplayName( "Compressing to parts and decompressing them restores the files" )
+    public void compressAndDecompressParts() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path inputDir = fileSystem.getPath( "input" );
+            Files.createDirectories( inputDir.resolve( "empty" ) );
+            byte[][] contents = new byte[10][];
+            Random random = new Random( 1 );
+            for ( int i = 0; i < contents.length; i++ ) {
+                contents[i] = new byte[10_000];
+                random.nextBytes( contents[i] );
+                Path file = inputDir.resolve( "dir" + i % 3 ).resolve( "file" + i );
+                Files.createDirectories( file.getParent() );
+                Files.write( file, contents[i] );
+            }
+            Path outputDir = fileSystem.getPath( "output" );
+            Files.createDirectories( outputDir );
+
+            ZstdArchiver archiver = new ZstdArchiver( 1024 );
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( inputDir )
+                    .output( outputDir )
+                    .maxFileSize( 30_000 )
+                    .build() );
+            try ( Stream<Path> parts = Files.list( outputDir ) ) {
+                assertTrue( parts.allMatch( part -> part.getFileName().toString()
+                        .matches( "input\\.part\\.\\d+\\.tar\\.zst" ) ) );
+            }
+
+            Path decompressedDir = fileSystem.getPath( "decompressed" );
+            Files.createDirectories( decompressedDir );
+            archiver.decompress( DecompressionOptionsBuilder.create()
+                    .input( outputDir )
+                    .output( decompressedDir )
+                    .build() );
+            assertTrue( Files.isDirectory( decompressedDir.resolve( "empty" ) ) );
+            for ( int i = 0; i < contents.length; i++ )
+                assertArrayEquals( contents[i], Files.readAllBytes( decompressedDir.resolve( "dir" + i % 3 )
+                        .resolve( "file" + i ) ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Compressing takes zstd levels above 9 and a dictionary from the options" )
+    public void compressWithZstdLevelAndDictionary() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path inputDir = fileSystem.getPath( "input" );
+            Files.createDirectories( inputDir );
+            byte[][] contents = new byte[200][];
+            for ( int i = 0; i < contents.length; i++ ) {
+                contents[i] = ( "{\"id\": " + i + ", \"name\": \"item " + i + "\", \"tags\": [\"a\", \"b\"]}" )
+                        .getBytes();
+                Files.write( inputDir.resolve( "file" + i + ".json" ), contents[i] );
+            }
+            Path outputDir = fileSystem.getPath( "output" );
+            Files.createDirectories( outputDir );
+
+            ZstdArchiver archiver = new ZstdArchiver();
+            archiver.compress( CompressionOptionsBuilder.create()
+                    .input( inputDir )
+                    .output( outputDir )
+                    .compressionLevel( 19 )
+                    .presetDictionary( true )
+                    .build() );
+            // The dictionary leads the file as a skippable frame
+            byte[] compressed = Files.readAllBytes( outputDir.resolve( "input.tar.zst" ) );
+            assertArrayEquals( new byte[] { 0x5A, 0x2A, 0x4D, 0x18 }, Arrays.copyOf( compressed, 4 ) );
+
+            Path decompressedDir = fileSystem.getPath( "decompressed" );
+            Files.createDirectories( decompressedDir );
+            archiver.decompress( DecompressionOptionsBuilder.create()
+                    .input( outputDir )
+                    .output( decompressedDir )
+                    .build() );
+            for ( int i = 0; i < contents.length; i++ )
+                assertArrayEquals( contents[i], Files.readAllBytes( decompressedDir.resolve( "file" + i + ".json" ) ) );
+
+            IllegalArgumentException exception = assertThrows( IllegalArgumentException.class,
+                    () -> archiver.compress( CompressionOptionsBuilder.create()
+                            .input( inputDir )
+                            .output( outputDir )
+                            .compressionLevel( 23 )
+                            .build() ) );
+            assertEquals( "Compression level must be between -1 and 22", exception.getMessage() );
+            CompressionOptions deflateOptions = CompressionOptionsBuilder.create()
+                    .input( inputDir )
+                    .output( outputDir )
+                    .compressionLevel( 19 )
+                    .build();
+            assertThrows( IllegalArgumentException.class, () -> new TarGzArchiver().compress( deflateOptions ) );
+            assertThrows( IllegalArgumentException.class, () -> new ZipArchiver().compress( deflateOptions ) );
+        }
+    }
+
+    @Test
+    @DisplayName( "Compressing with deduplication is not supported" )
+    public void compressWithDeduplication() throws IOException {
+        try ( FileSystem fileSystem = Jimfs.newFileSystem() ) {
+            Path inputDir = fileSystem.getPath( "input" );
+            Files.createDirectories( inputDir );
+            Files.createFile( inputDir.resolve( "file" ) );
+            Path outputDir = fileSystem.getPath( "output" );
+            Files.createDirectories( outputDir );
+
+            IllegalArgumentException exception = assertThrows( IllegalArgumentException.class,
+                    () -> new ZstdArchiver().compress( CompressionOptionsBuilder.create()
+                            .input( inputDir )
+                            .output( outputDir )
+                            .deduplicate( true )
+                            .build() ) );
+            assertEquals( 0, Files.list( outputDir ).count() );
+            assertTrue( exception.getMessage().contains( "dedup" ) );
+        }
+    }
+}